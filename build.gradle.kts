@@ -35,6 +35,35 @@ repositories {
     mavenCentral()
 }
 
+// JMH microbenchmarks of the CPU-side hot paths, on the (enhanced) entities of the test model
+sourceSets {
+    create("jmh") {
+        compileClasspath += sourceSets.main.get().output + sourceSets.test.get().output
+        runtimeClasspath += sourceSets.main.get().output + sourceSets.test.get().output
+    }
+    // Only the service file that registers the AccessorProcessor. It is kept out of the main jar, so that javac doesn't
+    // discover the processor on the compile classpath of every project that uses flat fetcher.
+    create("processor")
+}
+
+// The annotation processor, for the annotation processor path: flat-fetcher-<version>-processor.jar
+val processorJar by tasks.registering(Jar::class) {
+    archiveClassifier.set("processor")
+    from(sourceSets.main.get().output) {
+        include("link/klauser/flatfetcher/processor/**")
+    }
+    from(sourceSets["processor"].output)
+}
+
+tasks.assemble {
+    dependsOn(processorJar)
+}
+
+val jmhImplementation: Configuration by configurations.getting {
+    extendsFrom(configurations.testImplementation.get())
+}
+configurations["jmhRuntimeOnly"].extendsFrom(configurations.testRuntimeOnly.get())
+
 tasks.test {
     useJUnitPlatform()
     testLogging {
@@ -46,6 +75,8 @@ dependencies {
     api("jakarta.persistence:jakarta.persistence-api:2.2.3")
     compileOnly("org.hibernate:hibernate-core:5.4.18.Final")
     implementation("org.slf4j:slf4j-api:1.7.30")
+    // optional, for MicrometerFetchListener
+    compileOnly("io.micrometer:micrometer-core")
 
     testImplementation("org.springframework.boot:spring-boot-starter")
     testImplementation("org.springframework.boot:spring-boot-starter-data-jpa")
@@ -54,15 +85,38 @@ dependencies {
     testImplementation("org.junit.jupiter:junit-jupiter:5.6.2")
     testImplementation("org.springframework.boot:spring-boot-starter-test")
     testImplementation("org.mapstruct:mapstruct:1.4.0.Beta1")
+    testImplementation("io.micrometer:micrometer-core")
     testRuntimeOnly("com.h2database:h2") {
         exclude(group="org.junit.vintage", module="junit-vintage-engine")
     }
     testCompileOnly("org.hibernate:hibernate-jpamodelgen")
+    // Generates the Xxx_Accessors of the test entities (link.klauser.flatfetcher.processor.AccessorProcessor)
+    testAnnotationProcessor(sourceSets.main.get().output + sourceSets["processor"].output)
+    testAnnotationProcessor("jakarta.persistence:jakarta.persistence-api:2.2.3")
     testRuntimeOnly("ch.qos.logback:logback-core:1.2.3")
+
+    jmhImplementation("org.openjdk.jmh:jmh-core:1.23")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:1.23")
+}
+
+// ./gradlew jmh -Pjmh.include=FleetBenchmarks -Pjmh.args="-p roots=1000000 -p depth=1 -t 4 -prof gc"
+tasks.register<JavaExec>("jmh") {
+    group = "verification"
+    description = "Runs the JMH benchmarks. Results go to build/reports/jmh/results.json."
+    val resultFile = file("$buildDir/reports/jmh/results.json")
+    classpath = sourceSets["jmh"].runtimeClasspath
+    main = "org.openjdk.jmh.Main"
+    args("-rf", "json", "-rff", resultFile)
+    project.findProperty("jmh.include")?.let { args(it) }
+    project.findProperty("jmh.args")?.let { args((it as String).split(" ").filter(String::isNotBlank)) }
+    doFirst {
+        resultFile.parentFile.mkdirs()
+    }
 }
 
 tasks.compileTestJava.configure {
     options.annotationProcessorGeneratedSourcesDirectory = file("$buildDir/generated/sources/java")
+    options.compilerArgs.add("-Aflatfetcher.strictEntityGraphs=true")
 }
 
 configure<JavaPluginConvention> {
@@ -71,6 +125,8 @@ configure<JavaPluginConvention> {
 
 configure<org.hibernate.orm.tooling.gradle.HibernateExtension> {
     sourceSet(project.sourceSets.findByName("test"))
+    // the fleet model of the end-to-end benchmarks
+    sourceSet(project.sourceSets.findByName("jmh"))
     enhance(closureOf<org.hibernate.orm.tooling.gradle.EnhanceExtension> {
         enableLazyInitialization = true
     })
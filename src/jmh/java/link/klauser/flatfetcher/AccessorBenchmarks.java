@@ -0,0 +1,191 @@
+// Copyright 2020 Christian Klauser
+//
+// Licensed under the Apache License,Version2.0(the"License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,software
+// distributed under the License is distributed on an"AS IS"BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package link.klauser.flatfetcher;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import javax.persistence.EntityManager;
+
+import link.klauser.flatfetcher.model.Car;
+import link.klauser.flatfetcher.model.Door;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * <p>
+ * {@link Accessor} get and set on all doors of a {@link Fleet}: {@code Door#carId} is a field, {@code Door#car} a property.
+ * Reported per pass over all doors.
+ * </p>
+ * <p>
+ *     {@link #setManaged} goes through {@link Accessor.BulkSetter}, which also patches the loaded state of the entity in the
+ *     persistence context ({@code Accessor.setLoadedStatus}).
+ * </p>
+ * <p>
+ *     The {@code *Reflective} benchmarks are the baseline: {@link Field#get} and {@link Method#invoke}, which is what
+ *     {@link Accessor} used before it generated its getters and setters.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccessorBenchmarks {
+
+	@State(Scope.Benchmark)
+	public static class Accessors {
+		Accessor<? super Door, UUID> carId;
+		Accessor<? super Door, Car> car;
+
+		@Setup(Level.Trial)
+		public void setUp(Fleet fleet) {
+			carId = Accessor.of(fleet.doorType.getSingularAttribute("carId", UUID.class));
+			car = Accessor.of(fleet.doorType.getSingularAttribute("car", Car.class));
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class Reflection {
+		Field carIdField;
+		Method getCar;
+		Method setCar;
+
+		@Setup(Level.Trial)
+		public void setUp() throws ReflectiveOperationException {
+			carIdField = Door.class.getDeclaredField("carId");
+			carIdField.setAccessible(true);
+			getCar = Door.class.getMethod("getCar");
+			setCar = Door.class.getMethod("setCar", Car.class);
+		}
+	}
+
+	/**
+	 * One car with {@link Fleet#doorsPerCar} times {@link Fleet#cars} doors, persisted in an open session, so that the doors
+	 * have an entry in its persistence context.
+	 */
+	@State(Scope.Benchmark)
+	public static class ManagedDoors {
+		EntityManager em;
+		Car car;
+		List<Door> doors;
+
+		@Setup(Level.Trial)
+		public void setUp(Fleet fleet) {
+			em = fleet.sessionFactory.createEntityManager();
+			em.getTransaction().begin();
+			car = new Car("managed");
+			em.persist(car);
+			for (var i = 0; i < fleet.doorList.size(); i++) {
+				var door = new Door(i % 2 == 0);
+				door.setCar(car);
+				em.persist(door);
+			}
+			em.flush();
+			em.getTransaction().commit();
+			em.clear();
+			doors = em.createQuery("select d from Door d", Door.class).getResultList();
+			car = em.find(Car.class, car.getId());
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			em.close();
+		}
+	}
+
+	@Benchmark
+	public void getField(Fleet fleet, Accessors accessors, Blackhole blackhole) {
+		for (var door : fleet.doorList) {
+			blackhole.consume(accessors.carId.get(door));
+		}
+	}
+
+	@Benchmark
+	public void getFieldReflective(Fleet fleet, Reflection reflection, Blackhole blackhole) throws IllegalAccessException {
+		for (var door : fleet.doorList) {
+			blackhole.consume(reflection.carIdField.get(door));
+		}
+	}
+
+	@Benchmark
+	public void setField(Fleet fleet, Accessors accessors) {
+		var setter = accessors.carId.bulkSetter(null);
+		for (var door : fleet.doorList) {
+			setter.set(door, door.getCarId());
+		}
+	}
+
+	@Benchmark
+	public void setFieldReflective(Fleet fleet, Reflection reflection) throws IllegalAccessException {
+		for (var door : fleet.doorList) {
+			reflection.carIdField.set(door, door.getCarId());
+		}
+	}
+
+	@Benchmark
+	public void getProperty(Fleet fleet, Accessors accessors, Blackhole blackhole) {
+		for (var door : fleet.doorList) {
+			blackhole.consume(accessors.car.get(door));
+		}
+	}
+
+	@Benchmark
+	public void getPropertyReflective(Fleet fleet, Reflection reflection, Blackhole blackhole)
+			throws ReflectiveOperationException {
+		for (var door : fleet.doorList) {
+			blackhole.consume(reflection.getCar.invoke(door));
+		}
+	}
+
+	@Benchmark
+	public void setProperty(Fleet fleet, Accessors accessors) {
+		var setter = accessors.car.bulkSetter(null);
+		var car = fleet.carList.get(0);
+		for (var door : fleet.doorList) {
+			setter.set(door, car);
+		}
+	}
+
+	@Benchmark
+	public void setPropertyReflective(Fleet fleet, Reflection reflection) throws ReflectiveOperationException {
+		var car = fleet.carList.get(0);
+		for (var door : fleet.doorList) {
+			reflection.setCar.invoke(door, car);
+		}
+	}
+
+	@Benchmark
+	public void setManaged(ManagedDoors managed, Accessors accessors) {
+		var setter = accessors.car.bulkSetter(managed.em);
+		for (var door : managed.doors) {
+			setter.set(door, managed.car);
+		}
+	}
+}
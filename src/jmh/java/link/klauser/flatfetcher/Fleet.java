@@ -0,0 +1,122 @@
+// Copyright 2020 Christian Klauser
+//
+// Licensed under the Apache License,Version2.0(the"License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,software
+// distributed under the License is distributed on an"AS IS"BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package link.klauser.flatfetcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import javax.persistence.metamodel.EntityType;
+
+import link.klauser.flatfetcher.model.Car;
+import link.klauser.flatfetcher.model.Door;
+import link.klauser.flatfetcher.model.Driver;
+import link.klauser.flatfetcher.model.Engine;
+import link.klauser.flatfetcher.model.Manufacturer;
+import link.klauser.flatfetcher.model.Mirror;
+import link.klauser.flatfetcher.model.Wheel;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.dialect.H2Dialect;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * <p>
+ * Synthetic cars with doors and engines, built from the (bytecode-enhanced) entities of the test model. The entities are not
+ * managed by any persistence context, but have their ids and id "companion" attributes set, like freshly loaded detached
+ * entities. The session factory runs on an in-memory H2 database and is only needed for the metamodel.
+ * </p>
+ */
+@State(Scope.Benchmark)
+public class Fleet {
+
+	@Param({ "1000" })
+	public int cars;
+
+	@Param({ "4" })
+	public int doorsPerCar;
+
+	SessionFactory sessionFactory;
+	EntityType<Car> carType;
+	EntityType<Door> doorType;
+	EntityType<Engine> engineType;
+
+	List<Car> carList;
+	List<Door> doorList;
+	List<Engine> engineList;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		sessionFactory = sessionFactory();
+		var metamodel = sessionFactory.getMetamodel();
+		carType = metamodel.entity(Car.class);
+		doorType = metamodel.entity(Door.class);
+		engineType = metamodel.entity(Engine.class);
+
+		carList = new ArrayList<>(cars);
+		doorList = new ArrayList<>(cars * doorsPerCar);
+		engineList = new ArrayList<>(cars);
+		for (var i = 0; i < cars; i++) {
+			var car = new Car("car" + i);
+			car.setId(UUID.randomUUID());
+			var engine = new Engine();
+			engine.setId(UUID.randomUUID());
+			engine.setPower(50 + i % 200);
+			car.setEngineId(engine.getId());
+			for (var j = 0; j < doorsPerCar; j++) {
+				var door = new Door(j % 2 == 0);
+				door.setId(UUID.randomUUID());
+				door.setCarId(car.getId());
+				doorList.add(door);
+			}
+			carList.add(car);
+			engineList.add(engine);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		sessionFactory.close();
+	}
+
+	/**
+	 * A session factory for the test model on an in-memory H2 database that is dropped on close.
+	 */
+	static SessionFactory sessionFactory() {
+		var registry = new StandardServiceRegistryBuilder()
+				.applySetting(AvailableSettings.URL, "jdbc:h2:mem:flatfetcher-jmh-" + UUID.randomUUID())
+				.applySetting(AvailableSettings.USER, "sa")
+				.applySetting(AvailableSettings.DIALECT, H2Dialect.class.getName())
+				.applySetting(AvailableSettings.HBM2DDL_AUTO, "create-drop")
+				.build();
+		return new MetadataSources(registry)
+				.addAnnotatedClass(Car.class)
+				.addAnnotatedClass(Door.class)
+				.addAnnotatedClass(Driver.class)
+				.addAnnotatedClass(Engine.class)
+				.addAnnotatedClass(Manufacturer.class)
+				.addAnnotatedClass(Mirror.class)
+				.addAnnotatedClass(Wheel.class)
+				.buildMetadata()
+				.buildSessionFactory();
+	}
+}
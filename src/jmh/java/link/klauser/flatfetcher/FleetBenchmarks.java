@@ -0,0 +1,282 @@
+// Copyright 2020 Christian Klauser
+//
+// Licensed under the Apache License,Version2.0(the"License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,software
+// distributed under the License is distributed on an"AS IS"BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package link.klauser.flatfetcher;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import javax.persistence.EntityManager;
+
+import link.klauser.flatfetcher.fleet.Compartment;
+import link.klauser.flatfetcher.fleet.FleetGenerator;
+import link.klauser.flatfetcher.fleet.Operator;
+import link.klauser.flatfetcher.fleet.Seat;
+import link.klauser.flatfetcher.fleet.Train;
+import link.klauser.flatfetcher.fleet.Wagon;
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.dialect.H2Dialect;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * <p>
+ * End-to-end: loads a random page of {@link #pageSize} trains from a generated fleet ({@link FleetGenerator}) on an in-memory
+ * H2 database, plus their graph down to {@link FleetDatabase#depth} levels, and reads every entity of the graph. Compares flat
+ * fetcher with Hibernate's own ways to avoid N+1 queries ({@link Strategy}).
+ * </p>
+ * <ul>
+ *     <li>Throughput and latency percentiles: the {@code thrpt} and {@code sample} modes.</li>
+ *     <li>Statements: the {@code statements} and {@code pages} counters. Their ratio is the number of SQL statements per
+ *     page.</li>
+ *     <li>Heap allocated: run with {@code -prof gc} ({@code gc.alloc.rate.norm} is bytes per page).</li>
+ *     <li>Concurrency scaling: run with {@code -t 1}, {@code -t 4}, ... All threads share one {@link FlatFetcher}.</li>
+ * </ul>
+ * <p>
+ *     For example: {@code ./gradlew jmh -Pjmh.include=FleetBenchmarks -Pjmh.args="-p roots=1000000 -p depth=1 -t 4 -prof gc"}
+ * </p>
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FleetBenchmarks {
+
+	/**
+	 * <p>How the graph of a page of trains gets loaded.</p>
+	 * <p>With bytecode enhancement ({@code NO_PROXY}), Hibernate 5.4 does not consider {@code Train#operator} initialized
+	 * after a {@code join fetch} or a batch load. The first access costs one more select per train. This is part of the cost
+	 * of the baselines with the mapping that flat fetcher needs.</p>
+	 */
+	public enum Strategy {
+		/**
+		 * {@link FlatFetcher#fetch} with the {@code Train.depthN} entity graph.
+		 */
+		FLAT_FETCHER(Train::getWagons, Wagon::getCompartments, Compartment::getSeats),
+		/**
+		 * A single query that {@code join fetch}es the whole graph.
+		 */
+		JOIN_FETCH(Train::getWagons, Wagon::getCompartments, Compartment::getSeats),
+		/**
+		 * Lazy loading of collections annotated with {@code @BatchSize}.
+		 */
+		BATCH_SIZE(Train::getWagonsBatched, Wagon::getCompartmentsBatched, Compartment::getSeatsBatched),
+		/**
+		 * Lazy loading of collections annotated with {@code @Fetch(SUBSELECT)}.
+		 */
+		SUBSELECT(Train::getWagonsSubselect, Wagon::getCompartmentsSubselect, Compartment::getSeatsSubselect);
+
+		final Function<Train, Set<Wagon>> wagons;
+		final Function<Wagon, Set<Compartment>> compartments;
+		final Function<Compartment, Set<Seat>> seats;
+
+		Strategy(Function<Train, Set<Wagon>> wagons, Function<Wagon, Set<Compartment>> compartments,
+				Function<Compartment, Set<Seat>> seats) {
+			this.wagons = wagons;
+			this.compartments = compartments;
+			this.seats = seats;
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class FleetDatabase {
+
+		@Param({ "1000", "100000" })
+		public long roots;
+
+		@Param({ "4" })
+		public int fanOut;
+
+		@Param({ "1", "3" })
+		public int depth;
+
+		SessionFactory sessionFactory;
+
+		/**
+		 * The entity manager of the current benchmark thread, for the shared {@link #flatFetcher}.
+		 */
+		final ThreadLocal<EntityManager> currentEntityManager = new ThreadLocal<>();
+
+		FlatFetcher flatFetcher;
+
+		@Setup(Level.Trial)
+		public void setUp() {
+			var registry = new StandardServiceRegistryBuilder()
+					.applySetting(AvailableSettings.URL, "jdbc:h2:mem:flatfetcher-fleet;DB_CLOSE_DELAY=-1")
+					.applySetting(AvailableSettings.USER, "sa")
+					.applySetting(AvailableSettings.DIALECT, H2Dialect.class.getName())
+					.applySetting(AvailableSettings.HBM2DDL_AUTO, "create-drop")
+					.applySetting(AvailableSettings.POOL_SIZE, "64")
+					.applySetting(AvailableSettings.INTERCEPTOR, StatementCounter.class.getName())
+					.build();
+			sessionFactory = new MetadataSources(registry)
+					.addAnnotatedClass(Operator.class)
+					.addAnnotatedClass(Train.class)
+					.addAnnotatedClass(Wagon.class)
+					.addAnnotatedClass(Compartment.class)
+					.addAnnotatedClass(Seat.class)
+					.buildMetadata()
+					.buildSessionFactory();
+			new FleetGenerator(roots, fanOut, depth).generate(sessionFactory);
+			flatFetcher = new FlatFetcher(threadBoundEntityManager());
+			flatFetcher.warmUp();
+		}
+
+		/**
+		 * An entity manager that forwards to {@link #currentEntityManager}, like the shared entity manager of a container.
+		 */
+		private EntityManager threadBoundEntityManager() {
+			return (EntityManager) Proxy.newProxyInstance(EntityManager.class.getClassLoader(),
+					new Class<?>[] { EntityManager.class }, (proxy, method, args) -> {
+						var em = currentEntityManager.get();
+						if (em == null) {
+							switch (method.getName()) {
+							case "getEntityManagerFactory":
+								return sessionFactory;
+							case "getMetamodel":
+								return sessionFactory.getMetamodel();
+							default:
+								throw new IllegalStateException("No entity manager bound to the current thread.");
+							}
+						}
+						try {
+							return method.invoke(em, args);
+						}
+						catch (InvocationTargetException e) {
+							throw e.getCause();
+						}
+					});
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown() {
+			sessionFactory.close();
+		}
+	}
+
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	@State(Scope.Thread)
+	public static class Counters {
+		public long statements;
+		public long pages;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			statements = 0;
+			pages = 0;
+		}
+	}
+
+	@Param({ "100", "1000" })
+	public int pageSize;
+
+	@Param
+	public Strategy strategy;
+
+	@Benchmark
+	public void loadPage(FleetDatabase fleet, Counters counters, Blackhole blackhole) {
+		var firstId = ThreadLocalRandom.current().nextLong(Math.max(1, fleet.roots - pageSize + 1)) + 1;
+		var ids = LongStream.range(firstId, Math.min(firstId + pageSize, fleet.roots + 1)).boxed()
+				.collect(Collectors.toList());
+		var statementsBefore = StatementCounter.current();
+		var em = fleet.sessionFactory.createEntityManager();
+		fleet.currentEntityManager.set(em);
+		try {
+			em.getTransaction().begin();
+			List<Train> trains;
+			if (strategy == Strategy.JOIN_FETCH) {
+				trains = em.createQuery(joinFetchQuery(fleet.depth), Train.class).setParameter("ids", ids).getResultList();
+			}
+			else {
+				trains = em.createQuery("select t from Train t where t.id in (:ids)", Train.class).setParameter("ids", ids)
+						.getResultList();
+				if (strategy == Strategy.FLAT_FETCHER) {
+					fleet.flatFetcher.fetch(Train.class, trains, "Train.depth" + fleet.depth);
+				}
+			}
+			blackhole.consume(readGraph(trains, fleet.depth));
+			em.getTransaction().commit();
+		}
+		finally {
+			fleet.currentEntityManager.remove();
+			em.close();
+		}
+		counters.statements += StatementCounter.current() - statementsBefore;
+		counters.pages += 1;
+	}
+
+	private static String joinFetchQuery(int depth) {
+		var jpql = new StringBuilder("select distinct t from Train t left join fetch t.operator");
+		var joins = new String[] { " left join fetch t.wagons w", " left join fetch w.compartments c",
+				" left join fetch c.seats s" };
+		for (var level = 0; level < depth; level++) {
+			jpql.append(joins[level]);
+		}
+		return jpql.append(" where t.id in (:ids)").toString();
+	}
+
+	/**
+	 * Touches every entity of the graph, so that the lazy strategies load all of it.
+	 */
+	private long readGraph(Iterable<Train> trains, int depth) {
+		var sum = 0L;
+		for (var train : trains) {
+			sum += train.getOperator().getName().length();
+			if (depth < 1) {
+				continue;
+			}
+			for (var wagon : strategy.wagons.apply(train)) {
+				sum += wagon.getNumber();
+				if (depth < 2) {
+					continue;
+				}
+				for (var compartment : strategy.compartments.apply(wagon)) {
+					sum += compartment.getNumber();
+					if (depth < 3) {
+						continue;
+					}
+					for (var seat : strategy.seats.apply(compartment)) {
+						sum += seat.getNumber();
+					}
+				}
+			}
+		}
+		return sum;
+	}
+}
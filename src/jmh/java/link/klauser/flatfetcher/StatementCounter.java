@@ -0,0 +1,40 @@
+// Copyright 2020 Christian Klauser
+//
+// Licensed under the Apache License,Version2.0(the"License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,software
+// distributed under the License is distributed on an"AS IS"BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package link.klauser.flatfetcher;
+
+import org.hibernate.EmptyInterceptor;
+
+/**
+ * Counts the SQL statements that Hibernate prepares, per thread. Registered as session factory interceptor, like the
+ * {@code StatementInterceptor} of the tests, but without keeping the SQL text around.
+ */
+public class StatementCounter extends EmptyInterceptor {
+
+	private static final ThreadLocal<long[]> COUNT = ThreadLocal.withInitial(() -> new long[1]);
+
+	@Override
+	public String onPrepareStatement(String sql) {
+		COUNT.get()[0] += 1;
+		return super.onPrepareStatement(sql);
+	}
+
+	/**
+	 * The number of statements prepared on the current thread so far.
+	 */
+	static long current() {
+		return COUNT.get()[0];
+	}
+}
@@ -0,0 +1,115 @@
+// Copyright 2020 Christian Klauser
+//
+// Licensed under the Apache License,Version2.0(the"License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,software
+// distributed under the License is distributed on an"AS IS"BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package link.klauser.flatfetcher;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.persistence.metamodel.PluralAttribute;
+
+import link.klauser.flatfetcher.model.Car;
+import link.klauser.flatfetcher.model.Door;
+import link.klauser.flatfetcher.model.Engine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * <p>
+ * The in-memory part of a fetch: {@link FetchPlan#stitch} for each kind of plan, on detached entities (no persistence
+ * context), plus {@link PlanUtils#chunks} for splitting keys into chunk queries. Reported per call, that is per
+ * {@link Fleet}.
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StitchBenchmarks {
+
+	@State(Scope.Benchmark)
+	public static class Plans {
+		FetchPlan<Car, Door> carDoors;
+		FetchPlan<Door, Car> doorCar;
+		FetchPlan<Car, Engine> carEngine;
+		FetchPlan<Engine, Car> engineCar;
+		List<?> carIds;
+
+		@Setup(Level.Trial)
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		public void setUp(Fleet fleet) {
+			carDoors = new OneToManyPlan(fleet.carType, (PluralAttribute) fleet.carType.getAttribute("doors"));
+			doorCar = new ManyToOnePlan(fleet.doorType.getSingularAttribute("car", Car.class));
+			carEngine = new OneToOneOwningPlan(fleet.carType, fleet.carType.getSingularAttribute("engine", Engine.class));
+			engineCar = new OneToOneOppositePlan(fleet.engineType, fleet.engineType.getSingularAttribute("car", Car.class),
+					"engine");
+			carIds = carDoors.keys(fleet.carList);
+		}
+	}
+
+	/**
+	 * {@code Car#doors}: groups the doors by {@code carId} and assigns each car a fresh collection.
+	 */
+	@Benchmark
+	public void oneToMany(Fleet fleet, Plans plans, Blackhole blackhole) {
+		blackhole.consume(plans.carDoors.stitch(null, fleet.carList, fleet.doorList));
+	}
+
+	/**
+	 * {@code Door#car}: looks up the car of each door by id.
+	 */
+	@Benchmark
+	public void manyToOne(Fleet fleet, Plans plans, Blackhole blackhole) {
+		blackhole.consume(plans.doorCar.stitch(null, fleet.doorList, fleet.carList));
+	}
+
+	/**
+	 * {@code Car#engine}, owning side: looks up the engine of each car by id and sets the back reference.
+	 */
+	@Benchmark
+	public void oneToOneOwning(Fleet fleet, Plans plans, Blackhole blackhole) {
+		blackhole.consume(plans.carEngine.stitch(null, fleet.carList, fleet.engineList));
+	}
+
+	/**
+	 * {@code Engine#car}, {@code mappedBy} side: looks up the car of each engine by the car's {@code engineId}.
+	 */
+	@Benchmark
+	public void oneToOneOpposite(Fleet fleet, Plans plans, Blackhole blackhole) {
+		blackhole.consume(plans.engineCar.stitch(null, fleet.engineList, fleet.carList));
+	}
+
+	@State(Scope.Benchmark)
+	public static class ChunkSize {
+		@Param({ "100", "500" })
+		public int batchSize;
+	}
+
+	@Benchmark
+	public void chunks(Plans plans, ChunkSize chunkSize, Blackhole blackhole) {
+		PlanUtils.chunks(plans.carIds.stream(), chunkSize.batchSize).forEach(blackhole::consume);
+	}
+}
@@ -0,0 +1,75 @@
+// Copyright 2020 Christian Klauser
+//
+// Licensed under the Apache License,Version2.0(the"License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,software
+// distributed under the License is distributed on an"AS IS"BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package link.klauser.flatfetcher.fleet;
+
+import java.util.Set;
+import javax.persistence.Access;
+import javax.persistence.AccessType;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.OneToMany;
+import javax.persistence.Table;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Fetch;
+import org.hibernate.annotations.FetchMode;
+import org.hibernate.annotations.LazyToOne;
+import org.hibernate.annotations.LazyToOneOption;
+
+@Entity
+@Table(name = "compartment", indexes = @Index(columnList = "wagonId"))
+@Getter
+@Setter
+@ToString(of = { "id", "number" })
+public class Compartment {
+
+    @Id
+    Long id;
+
+    @Column(name = "number")
+    int number;
+
+    @JoinColumn(name = "wagonId")
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @LazyToOne(LazyToOneOption.NO_PROXY)
+    @Access(AccessType.PROPERTY)
+    Wagon wagon;
+
+    @Column(name = "wagonId", insertable = false, updatable = false)
+    Long wagonId;
+
+    @OneToMany(mappedBy = "compartment")
+    @Access(AccessType.PROPERTY)
+    Set<Seat> seats;
+
+    @OneToMany(mappedBy = "compartment")
+    @Access(AccessType.PROPERTY)
+    @BatchSize(size = FleetGenerator.BATCH_SIZE)
+    Set<Seat> seatsBatched;
+
+    @OneToMany(mappedBy = "compartment")
+    @Access(AccessType.PROPERTY)
+    @Fetch(FetchMode.SUBSELECT)
+    Set<Seat> seatsSubselect;
+}
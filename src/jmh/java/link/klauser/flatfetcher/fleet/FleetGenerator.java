@@ -0,0 +1,88 @@
+// Copyright 2020 Christian Klauser
+//
+// Licensed under the Apache License,Version2.0(the"License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,software
+// distributed under the License is distributed on an"AS IS"BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package link.klauser.flatfetcher.fleet;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+
+/**
+ * <p>
+ * Fills an (empty) H2 schema with a synthetic fleet: {@link #roots} trains, each with {@link #fanOut} wagons, each wagon with
+ * {@link #fanOut} compartments and each compartment with {@link #fanOut} seats, down to {@link #depth} levels below the
+ * trains. There is one operator per 100 trains.
+ * </p>
+ * <p>
+ *     The rows are generated by {@code insert ... select ... from system_range(...)} statements inside H2, so even a million
+ *     trains only take a few seconds. Ids are dense and start at 1: the children of the parent with id {@code p} have the
+ *     ids {@code (p - 1) * fanOut + 1} to {@code p * fanOut}.
+ * </p>
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class FleetGenerator {
+
+	/**
+	 * {@code @BatchSize} of the batched baseline collections and of {@link Operator}.
+	 */
+	public static final int BATCH_SIZE = 100;
+
+	public static final int TRAINS_PER_OPERATOR = 100;
+
+	private static final String[] LEVELS = { "wagon (id, number, trainId)", "compartment (id, number, wagonId)",
+			"seat (id, number, compartmentId)" };
+
+	/**
+	 * The number of trains.
+	 */
+	final long roots;
+	/**
+	 * The number of children per parent on each level.
+	 */
+	final int fanOut;
+	/**
+	 * The number of levels below the trains, between {@code 0} (only trains) and {@code 3} (down to seats).
+	 */
+	final int depth;
+
+	public void generate(SessionFactory sessionFactory) {
+		if (depth < 0 || depth > 3) {
+			throw new IllegalArgumentException("Depth must be between 0 and 3.");
+		}
+		var start = System.nanoTime();
+		var operators = Math.max(1, roots / TRAINS_PER_OPERATOR);
+		try (var session = sessionFactory.openSession()) {
+			session.doWork(connection -> {
+				try (var statement = connection.createStatement()) {
+					statement.executeUpdate("insert into operator (id, name) select x, 'operator ' || x"
+							+ " from system_range(1, " + operators + ")");
+					statement.executeUpdate("insert into train (id, name, operatorId) select x, 'train ' || x, mod(x, "
+							+ operators + ") + 1 from system_range(1, " + roots + ")");
+					var parents = roots;
+					for (var level = 0; level < depth; level++) {
+						var rows = parents * fanOut;
+						statement.executeUpdate("insert into " + LEVELS[level] + " select x, mod(x - 1, " + fanOut + "), (x - 1) / "
+								+ fanOut + " + 1 from system_range(1, " + rows + ")");
+						parents = rows;
+					}
+				}
+				connection.commit();
+			});
+		}
+		log.info("Generated fleet of {} trains (fan-out {}, depth {}) in {} ms", roots, fanOut, depth,
+				(System.nanoTime() - start) / 1_000_000);
+	}
+}
@@ -0,0 +1,44 @@
+// Copyright 2020 Christian Klauser
+//
+// Licensed under the Apache License,Version2.0(the"License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,software
+// distributed under the License is distributed on an"AS IS"BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package link.klauser.flatfetcher.fleet;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import org.hibernate.annotations.BatchSize;
+
+/**
+ * Shared by many trains ({@code @ManyToOne}). Batched for the {@code @BatchSize} and {@code @Fetch(SUBSELECT)} baselines.
+ */
+@Entity
+@Table(name = "operator")
+@Getter
+@Setter
+@ToString
+@BatchSize(size = FleetGenerator.BATCH_SIZE)
+public class Operator {
+
+    @Id
+    Long id;
+
+    @Column(name = "name")
+    String name;
+}
@@ -0,0 +1,104 @@
+// Copyright 2020 Christian Klauser
+//
+// Licensed under the Apache License,Version2.0(the"License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,software
+// distributed under the License is distributed on an"AS IS"BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package link.klauser.flatfetcher.fleet;
+
+import java.util.Set;
+import javax.persistence.Access;
+import javax.persistence.AccessType;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.NamedAttributeNode;
+import javax.persistence.NamedEntityGraph;
+import javax.persistence.NamedSubgraph;
+import javax.persistence.OneToMany;
+import javax.persistence.Table;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Fetch;
+import org.hibernate.annotations.FetchMode;
+import org.hibernate.annotations.LazyToOne;
+import org.hibernate.annotations.LazyToOneOption;
+
+/**
+ * <p>
+ * The root of the fleet: train, wagons, compartments and seats, plus the operator of the train.
+ * </p>
+ * <p>
+ *     Each collection is mapped three times on the same foreign key: plain (for flat fetcher and {@code join fetch}), with
+ *     {@code @BatchSize} and with {@code @Fetch(SUBSELECT)}. The baselines only differ in which of them they navigate.
+ * </p>
+ */
+@Entity
+@Table(name = "train", indexes = @Index(columnList = "operatorId"))
+@Getter
+@Setter
+@ToString(of = { "id", "name" })
+@NamedEntityGraph(name = "Train.depth1", attributeNodes = {
+        @NamedAttributeNode("operator"),
+        @NamedAttributeNode("wagons")
+})
+@NamedEntityGraph(name = "Train.depth2", attributeNodes = {
+        @NamedAttributeNode("operator"),
+        @NamedAttributeNode(value = "wagons", subgraph = "wagons")
+}, subgraphs = {
+        @NamedSubgraph(name = "wagons", attributeNodes = @NamedAttributeNode("compartments"))
+})
+@NamedEntityGraph(name = "Train.depth3", attributeNodes = {
+        @NamedAttributeNode("operator"),
+        @NamedAttributeNode(value = "wagons", subgraph = "wagons")
+}, subgraphs = {
+        @NamedSubgraph(name = "wagons", attributeNodes = @NamedAttributeNode(value = "compartments", subgraph = "compartments")),
+        @NamedSubgraph(name = "compartments", attributeNodes = @NamedAttributeNode("seats"))
+})
+public class Train {
+
+    @Id
+    Long id;
+
+    @Column(name = "name")
+    String name;
+
+    @JoinColumn(name = "operatorId")
+    @ManyToOne(fetch = FetchType.LAZY)
+    @LazyToOne(LazyToOneOption.NO_PROXY)
+    @Access(AccessType.PROPERTY)
+    Operator operator;
+
+    @Column(name = "operatorId", insertable = false, updatable = false)
+    Long operatorId;
+
+    @OneToMany(mappedBy = "train")
+    @Access(AccessType.PROPERTY)
+    Set<Wagon> wagons;
+
+    @OneToMany(mappedBy = "train")
+    @Access(AccessType.PROPERTY)
+    @BatchSize(size = FleetGenerator.BATCH_SIZE)
+    Set<Wagon> wagonsBatched;
+
+    @OneToMany(mappedBy = "train")
+    @Access(AccessType.PROPERTY)
+    @Fetch(FetchMode.SUBSELECT)
+    Set<Wagon> wagonsSubselect;
+}
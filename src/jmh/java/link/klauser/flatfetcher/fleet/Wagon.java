@@ -0,0 +1,75 @@
+// Copyright 2020 Christian Klauser
+//
+// Licensed under the Apache License,Version2.0(the"License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,software
+// distributed under the License is distributed on an"AS IS"BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package link.klauser.flatfetcher.fleet;
+
+import java.util.Set;
+import javax.persistence.Access;
+import javax.persistence.AccessType;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.OneToMany;
+import javax.persistence.Table;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Fetch;
+import org.hibernate.annotations.FetchMode;
+import org.hibernate.annotations.LazyToOne;
+import org.hibernate.annotations.LazyToOneOption;
+
+@Entity
+@Table(name = "wagon", indexes = @Index(columnList = "trainId"))
+@Getter
+@Setter
+@ToString(of = { "id", "number" })
+public class Wagon {
+
+    @Id
+    Long id;
+
+    @Column(name = "number")
+    int number;
+
+    @JoinColumn(name = "trainId")
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @LazyToOne(LazyToOneOption.NO_PROXY)
+    @Access(AccessType.PROPERTY)
+    Train train;
+
+    @Column(name = "trainId", insertable = false, updatable = false)
+    Long trainId;
+
+    @OneToMany(mappedBy = "wagon")
+    @Access(AccessType.PROPERTY)
+    Set<Compartment> compartments;
+
+    @OneToMany(mappedBy = "wagon")
+    @Access(AccessType.PROPERTY)
+    @BatchSize(size = FleetGenerator.BATCH_SIZE)
+    Set<Compartment> compartmentsBatched;
+
+    @OneToMany(mappedBy = "wagon")
+    @Access(AccessType.PROPERTY)
+    @Fetch(FetchMode.SUBSELECT)
+    Set<Compartment> compartmentsSubselect;
+}
@@ -14,17 +14,28 @@
 package link.klauser.flatfetcher;
 
 import java.io.Serializable;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 import javax.persistence.EntityManager;
 import javax.persistence.metamodel.Attribute;
 import javax.persistence.metamodel.EntityType;
 import javax.persistence.metamodel.PluralAttribute;
 import javax.persistence.metamodel.SingularAttribute;
 
+import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
-import org.hibernate.internal.SessionImpl;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.PersistenceContext;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.engine.spi.Status;
+import org.hibernate.persister.entity.EntityPersister;
 import org.hibernate.persister.entity.UniqueKeyLoadable;
 
 /**
@@ -45,8 +56,16 @@ abstract class Accessor<X, A> {
 	public abstract A get(X owner);
 
 	public void set(EntityManager entityManager, X owner, A value) {
-		set(owner, value);
-		setLoadedStatus(entityManager, owner, value);
+		bulkSetter(entityManager).set(owner, value);
+	}
+
+	/**
+	 * Like {@link #set(EntityManager, Object, Object)}, but for many owners. Use this in loops.
+	 * @param entityManager The entity manager that the owners belong to. {@code null} for detached graphs.
+	 */
+	public BulkSetter bulkSetter(EntityManager entityManager) {
+		return new BulkSetter(entityManager == null ? null
+				: ((SessionImplementor) entityManager.getDelegate()).getPersistenceContext());
 	}
 
 	protected abstract void set(X owner, A value);
@@ -124,6 +143,10 @@ abstract class Accessor<X, A> {
 	 * @return a fresh accessor for the supplied attribute. Never {@code null}.
 	 */
 	public static <C, T> Accessor<? super C, T> of(Attribute<? super C, T> attr) {
+		var generated = GeneratedAccessorRegistry.find(attr);
+		if (generated.isPresent()) {
+			return generatedAccessor(attr, generated.get());
+		}
 		var m = attr.getJavaMember();
 		if (m instanceof Field) {
 			var field = (Field) m;
@@ -136,6 +159,40 @@ abstract class Accessor<X, A> {
 		throw new FlatFetcherException("Members of type " + m.getClass().getSimpleName() + " are not supported.");
 	}
 
+	/**
+	 * Uses the getter and setter generated by {@link link.klauser.flatfetcher.processor.AccessorProcessor}. No reflection
+	 * involved.
+	 */
+	private static <C, T> Accessor<? super C, T> generatedAccessor(Attribute<? super C, T> attr, GeneratedAttribute generated) {
+		var getterFunction = generated.getter;
+		var setterFunction = generated.setter;
+		return new Accessor<>() {
+			@SuppressWarnings("unchecked")
+			@Override
+			public T get(C owner) {
+				return (T) getterFunction.apply(owner);
+			}
+
+			@Override
+			public void set(C owner, T value) {
+				setterFunction.accept(owner, value);
+			}
+
+			@Override
+			public String toString() {
+				return "generatedAccessor(" + attr.getDeclaringType().getJavaType().getSimpleName() + "#" + attr.getName() + ")";
+			}
+
+			@SuppressWarnings({ "unchecked", "rawtypes" })
+			@Override
+			public Attribute<C, T> attr() {
+				// This is safe because we have the same bounds when we return the Accessor;
+				// We just can't _instantiate_ the the Accessor with the wildcard type. Because Java.
+				return (Attribute) attr;
+			}
+		};
+	}
+
 	private static <C, T> Accessor<? super C, T> getterSetterAccessor(Attribute<? super C, T> attr, Method getter) {
 		var setterName = "s" + getter.getName().substring(1);
 		Method setter;
@@ -146,20 +203,26 @@ abstract class Accessor<X, A> {
 			throw FlatFetcherException.onAttr("Cannot find setter " + setterName + "(" + getter.getReturnType() +
 					") on " + getter.getDeclaringClass() + ". Needed to access attribute ", attr);
 		}
-		getter.setAccessible(true);
-		setter.setAccessible(true);
+		var lookup = lookupIn(getter.getDeclaringClass(), attr);
+		Function<Object, Object> getterFunction;
+		BiConsumer<Object, Object> setterFunction;
+		try {
+			getterFunction = getterFunction(lookup, lookup.unreflect(getter));
+			setterFunction = setterFunction(lookup, lookup.unreflect(setter));
+		}
+		catch (IllegalAccessException e) {
+			throw FlatFetcherException.onAttr("Cannot access getter/setter of ", attr, e);
+		}
 		return new Accessor<>() {
 			@SuppressWarnings("unchecked")
-			@SneakyThrows
 			@Override
 			public T get(C owner) {
-				return (T) getter.invoke(owner);
+				return (T) getterFunction.apply(owner);
 			}
 
-			@SneakyThrows
 			@Override
 			public void set(C owner, T value) {
-				setter.invoke(owner, value);
+				setterFunction.accept(owner, value);
 			}
 
 			@Override
@@ -179,19 +242,30 @@ abstract class Accessor<X, A> {
 	}
 
 	private static <C, T> Accessor<? super C, T> fieldAccessor(Attribute<? super C, T> attr, Field field) {
-		field.setAccessible(true);
+		var lookup = lookupIn(field.getDeclaringClass(), attr);
+		MethodHandle getterHandle;
+		MethodHandle setterHandle;
+		try {
+			// LambdaMetafactory only implements interfaces with methods, not with fields. Handles with erased types still
+			// avoid the access checks and argument arrays of reflection.
+			getterHandle = lookup.unreflectGetter(field).asType(GETTER_TYPE);
+			setterHandle = lookup.unreflectSetter(field).asType(SETTER_TYPE);
+		}
+		catch (IllegalAccessException e) {
+			throw FlatFetcherException.onAttr("Cannot access field of ", attr, e);
+		}
 		return new Accessor<>() {
 			@SuppressWarnings("unchecked")
 			@Override
 			@SneakyThrows
 			public T get(C owner) {
-				return (T) field.get(owner);
+				return (T) (Object) getterHandle.invokeExact((Object) owner);
 			}
 
 			@Override
 			@SneakyThrows
 			public void set(C owner, T value) {
-				field.set(owner, value);
+				setterHandle.invokeExact((Object) owner, (Object) value);
 			}
 
 			@Override
@@ -209,23 +283,121 @@ abstract class Accessor<X, A> {
 		};
 	}
 
-	void setLoadedStatus(EntityManager em, X owner, A value) {
-		var session = (SessionImpl) em.getDelegate();
-		if(!session.contains(owner)){
-			return;
+	private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+	private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+	private static MethodHandles.Lookup lookupIn(Class<?> declaringClass, Attribute<?, ?> attr) {
+		try {
+			return MethodHandles.privateLookupIn(declaringClass, MethodHandles.lookup());
 		}
-		var entityEntry = session.getPersistenceContext().getEntry(owner);
-		if (entityEntry == null) {
-			if(log.isTraceEnabled()) {
-				log.trace("Skip {}.setLoadedStatus because the entity manager didn't return an entry for this entity.", this);
+		catch (IllegalAccessException e) {
+			throw FlatFetcherException.onAttr("Cannot access " + declaringClass + " (is its package open to flat fetcher?)"
+					+ ". Needed to access attribute ", attr, e);
+		}
+	}
+
+	/**
+	 * Implements {@link Function} with a call to {@code getter}, like the method reference {@code Entity::getFoo} would.
+	 * The JIT can inline through such a function, but not through {@link Method#invoke}. Primitive return values are boxed.
+	 */
+	@SuppressWarnings("unchecked")
+	private static Function<Object, Object> getterFunction(MethodHandles.Lookup lookup, MethodHandle getter) {
+		try {
+			var site = LambdaMetafactory.metafactory(lookup, "apply", MethodType.methodType(Function.class),
+					GETTER_TYPE, getter, getter.type().wrap());
+			return (Function<Object, Object>) site.getTarget().invoke();
+		}
+		catch (Throwable e) {
+			log.debug("Cannot generate getter function for {}, falling back to method handle.", getter, e);
+			var handle = getter.asType(GETTER_TYPE);
+			return owner -> invokeGetter(handle, owner);
+		}
+	}
+
+	/**
+	 * Like {@link #getterFunction}, but implements {@link BiConsumer} with a call to {@code setter}. Primitive arguments are
+	 * unboxed.
+	 */
+	@SuppressWarnings("unchecked")
+	private static BiConsumer<Object, Object> setterFunction(MethodHandles.Lookup lookup, MethodHandle setter) {
+		try {
+			var site = LambdaMetafactory.metafactory(lookup, "accept", MethodType.methodType(BiConsumer.class),
+					SETTER_TYPE, setter, setter.type().wrap().changeReturnType(void.class));
+			return (BiConsumer<Object, Object>) site.getTarget().invoke();
+		}
+		catch (Throwable e) {
+			log.debug("Cannot generate setter function for {}, falling back to method handle.", setter, e);
+			var handle = setter.asType(SETTER_TYPE);
+			return (owner, value) -> invokeSetter(handle, owner, value);
+		}
+	}
+
+	@SneakyThrows
+	private static Object invokeGetter(MethodHandle handle, Object owner) {
+		return handle.invokeExact(owner);
+	}
+
+	@SneakyThrows
+	private static void invokeSetter(MethodHandle handle, Object owner, Object value) {
+		handle.invokeExact(owner, value);
+	}
+
+	/**
+	 * Sets the values of many owners in the same persistence context. The persistence context is resolved once for all
+	 * owners, and the property index once per entity persister.
+	 */
+	public final class BulkSetter {
+		/**
+		 * {@code null} for detached graphs.
+		 */
+		private final PersistenceContext persistenceContext;
+
+		private BulkSetter(PersistenceContext persistenceContext) {
+			this.persistenceContext = persistenceContext;
+		}
+
+		public void set(X owner, A value) {
+			Accessor.this.set(owner, value);
+			if (persistenceContext != null) {
+				setLoadedStatus(persistenceContext.getEntry(owner), value);
 			}
 		}
-		else {
-			var propIndex = ((UniqueKeyLoadable) entityEntry.getPersister()).getPropertyIndex(attr().getName());
-			var loadedState = entityEntry.getLoadedState();
-			if(loadedState != null) {
-				loadedState[propIndex] = value;
+	}
+
+	/**
+	 * The index of {@link #attr()} in the loaded state of the most recently used persister. There is usually only one.
+	 */
+	@RequiredArgsConstructor
+	private static class PropertyIndex {
+		final EntityPersister persister;
+		final int index;
+	}
+
+	private volatile PropertyIndex propertyIndex;
+
+	private int propertyIndex(EntityPersister persister) {
+		var cached = propertyIndex;
+		if (cached == null || cached.persister != persister) {
+			cached = new PropertyIndex(persister, ((UniqueKeyLoadable) persister).getPropertyIndex(attr().getName()));
+			propertyIndex = cached;
+		}
+		return cached.index;
+	}
+
+	/**
+	 * Makes the persistence context believe that {@code value} has been loaded from the database, so that the assignment is
+	 * not considered a change.
+	 */
+	private void setLoadedStatus(EntityEntry entityEntry, A value) {
+		if (entityEntry == null || entityEntry.getStatus() == Status.DELETED || entityEntry.getStatus() == Status.GONE) {
+			if(log.isTraceEnabled()) {
+				log.trace("Skip {}.setLoadedStatus because the entity is not managed by the persistence context.", this);
 			}
+			return;
+		}
+		var loadedState = entityEntry.getLoadedState();
+		if(loadedState != null) {
+			loadedState[propertyIndex(entityEntry.getPersister())] = value;
 		}
 	}
 }
@@ -0,0 +1,186 @@
+// Copyright 2020 Christian Klauser
+//
+// Licensed under the Apache License,Version2.0(the"License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,software
+// distributed under the License is distributed on an"AS IS"BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package link.klauser.flatfetcher;
+
+import java.io.Serializable;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.List;
+import java.util.Objects;
+
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.type.AbstractStandardBasicType;
+import org.hibernate.type.CustomType;
+import org.hibernate.type.Type;
+import org.hibernate.usertype.UserType;
+
+/**
+ * {@code select {t.*} from Target t where t.key = any(?)}. Transports with the same condition template are equal, so that
+ * they share compiled queries.
+ */
+@EqualsAndHashCode(callSuper = false)
+final class ArrayParameterTransport extends NativeSqlTransport {
+
+	static final ArrayParameterTransport DIALECT_DEFAULT = new ArrayParameterTransport(null);
+
+	static final String KEY_PLACEHOLDER = "{key}";
+
+	/**
+	 * {@code null} means that the template is derived from the dialect.
+	 */
+	private final String conditionTemplate;
+
+	ArrayParameterTransport(String conditionTemplate) {
+		if (conditionTemplate != null && !conditionTemplate.contains(KEY_PLACEHOLDER)) {
+			throw new IllegalArgumentException("Condition template must contain " + KEY_PLACEHOLDER + ": " + conditionTemplate);
+		}
+		this.conditionTemplate = conditionTemplate;
+	}
+
+	static String defaultConditionTemplate(Dialect dialect) {
+		if (dialect instanceof H2Dialect) {
+			return "array_contains(?, " + KEY_PLACEHOLDER + ")";
+		}
+		return KEY_PLACEHOLDER + " = any(?)";
+	}
+
+	@Override
+	protected String keySetClause(SessionFactoryImplementor factory, KeyColumn keyColumn) {
+		var template = conditionTemplate != null
+				? conditionTemplate
+				: defaultConditionTemplate(factory.getJdbcServices().getDialect());
+		return "where " + template.replace(KEY_PLACEHOLDER, keyColumn.getQualifiedName());
+	}
+
+	@Override
+	protected void bindKeys(NativeQuery<?> query, SharedSessionContractImplementor session, KeyColumn keyColumn, List<?> keys) {
+		var elementTypeName = keyColumn.getSqlTypeName();
+		var sizeStart = elementTypeName.indexOf('(');
+		if (sizeStart >= 0) {
+			elementTypeName = elementTypeName.substring(0, sizeStart);
+		}
+		query.setParameter(1, jdbcValues(session, keyColumn.getType(), keys),
+				new CustomType(new KeyArrayType(elementTypeName)));
+	}
+
+	/**
+	 * Converts the distinct, non-null keys to the representation that the JDBC driver expects for the key column
+	 * (e.g., {@code byte[]} for a {@link java.util.UUID} mapped to a binary column).
+	 */
+	@SuppressWarnings("unchecked")
+	private static Object[] jdbcValues(SharedSessionContractImplementor session, Type keyType, List<?> keys) {
+		var distinctKeys = keys.stream().filter(Objects::nonNull).distinct();
+		if (!(keyType instanceof AbstractStandardBasicType)) {
+			return distinctKeys.toArray();
+		}
+		var basicType = (AbstractStandardBasicType<Object>) keyType;
+		Class<?> jdbcClass;
+		switch (basicType.getSqlTypeDescriptor().getSqlType()) {
+			case Types.BINARY:
+			case Types.VARBINARY:
+			case Types.LONGVARBINARY:
+				jdbcClass = byte[].class;
+				break;
+			case Types.CHAR:
+			case Types.VARCHAR:
+			case Types.LONGVARCHAR:
+			case Types.NCHAR:
+			case Types.NVARCHAR:
+				jdbcClass = String.class;
+				break;
+			default:
+				return distinctKeys.toArray();
+		}
+		return distinctKeys.map(key -> basicType.getJavaTypeDescriptor().unwrap(key, jdbcClass, session)).toArray();
+	}
+
+	@Override
+	public String toString() {
+		return "arrayParameter(" + (conditionTemplate == null ? "<dialect default>" : conditionTemplate) + ")";
+	}
+
+	/**
+	 * Binds an {@code Object[]} of JDBC values as an SQL array. Can only be used for parameters.
+	 */
+	@RequiredArgsConstructor
+	static class KeyArrayType implements UserType {
+
+		final String elementTypeName;
+
+		@Override
+		public int[] sqlTypes() {
+			return new int[] { Types.ARRAY };
+		}
+
+		@Override
+		public Class<?> returnedClass() {
+			return Object[].class;
+		}
+
+		@Override
+		public boolean equals(Object x, Object y) {
+			return Objects.deepEquals(x, y);
+		}
+
+		@Override
+		public int hashCode(Object x) {
+			return Objects.hashCode(x);
+		}
+
+		@Override
+		public Object nullSafeGet(ResultSet rs, String[] names, SharedSessionContractImplementor session, Object owner) {
+			throw new UnsupportedOperationException("Key arrays can only be used as parameters.");
+		}
+
+		@Override
+		public void nullSafeSet(PreparedStatement st, Object value, int index, SharedSessionContractImplementor session)
+				throws SQLException {
+			st.setArray(index, st.getConnection().createArrayOf(elementTypeName, (Object[]) value));
+		}
+
+		@Override
+		public Object deepCopy(Object value) {
+			return value;
+		}
+
+		@Override
+		public boolean isMutable() {
+			return false;
+		}
+
+		@Override
+		public Serializable disassemble(Object value) {
+			return (Serializable) value;
+		}
+
+		@Override
+		public Object assemble(Serializable cached, Object owner) {
+			return cached;
+		}
+
+		@Override
+		public Object replace(Object original, Object target, Object owner) {
+			return original;
+		}
+	}
+}
@@ -0,0 +1,107 @@
+// Copyright 2020 Christian Klauser
+//
+// Licensed under the Apache License,Version2.0(the"License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,software
+// distributed under the License is distributed on an"AS IS"BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package link.klauser.flatfetcher;
+
+import java.lang.annotation.Annotation;
+import java.util.List;
+import javax.persistence.ElementCollection;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToMany;
+import javax.persistence.ManyToOne;
+import javax.persistence.OneToMany;
+import javax.persistence.OneToOne;
+import javax.persistence.metamodel.Attribute;
+
+import lombok.Value;
+
+/**
+ * The parts of the mapping annotations of an attribute that the {@link FetchPlan}s need. Taken from the
+ * {@link GeneratedAccessors} if there are any for the attribute, otherwise read from the annotations via reflection.
+ */
+@Value
+class AttributeMapping {
+
+	private static final List<Class<? extends Annotation>> ASSOCIATIONS = List.of(ManyToOne.class, OneToOne.class,
+			OneToMany.class, ManyToMany.class, ElementCollection.class);
+
+	Attribute<?, ?> attr;
+	/**
+	 * {@code null} for basic attributes.
+	 */
+	Class<? extends Annotation> association;
+	String mappedBy;
+	/**
+	 * {@code null} without {@code @JoinColumn}.
+	 */
+	String referencedColumnName;
+
+	static AttributeMapping of(Attribute<?, ?> attr) {
+		return GeneratedAccessorRegistry.find(attr)
+				.map(generated -> new AttributeMapping(attr, generated.association, generated.mappedBy,
+						generated.referencedColumnName))
+				.orElseGet(() -> introspect(attr));
+	}
+
+	private static AttributeMapping introspect(Attribute<?, ?> attr) {
+		for (var associationClass : ASSOCIATIONS) {
+			var annotation = PlanUtils.findAnnotationOpt(attr, associationClass);
+			if (annotation.isPresent()) {
+				var referencedColumnName = PlanUtils.findAnnotationOpt(attr, JoinColumn.class)
+						.map(JoinColumn::referencedColumnName)
+						.orElse(null);
+				return new AttributeMapping(attr, associationClass, mappedByOf(annotation.get()), referencedColumnName);
+			}
+		}
+		return new AttributeMapping(attr, null, "", null);
+	}
+
+	private static String mappedByOf(Annotation association) {
+		if (association instanceof OneToMany) {
+			return ((OneToMany) association).mappedBy();
+		}
+		if (association instanceof OneToOne) {
+			return ((OneToOne) association).mappedBy();
+		}
+		if (association instanceof ManyToMany) {
+			return ((ManyToMany) association).mappedBy();
+		}
+		return "";
+	}
+
+	boolean is(Class<? extends Annotation> associationClass) {
+		return associationClass.equals(association);
+	}
+
+	/**
+	 * The {@code mappedBy} of the association annotation.
+	 * @throws FlatFetcherException if the attribute is not annotated with {@code associationClass}.
+	 */
+	String mappedBy(Class<? extends Annotation> associationClass) {
+		if (!is(associationClass)) {
+			throw FlatFetcherException.onAttr("Expected @" + associationClass.getSimpleName() + " annotation on ", attr);
+		}
+		return mappedBy;
+	}
+
+	/**
+	 * The {@code referencedColumnName} of the {@code @JoinColumn}, {@code ""} for the primary key.
+	 * @throws FlatFetcherException if the attribute doesn't have a {@code @JoinColumn}.
+	 */
+	String joinColumnReferencedColumnName() {
+		if (referencedColumnName == null) {
+			throw FlatFetcherException.onAttr("Expected @" + JoinColumn.class.getSimpleName() + " annotation on ", attr);
+		}
+		return referencedColumnName;
+	}
+}
@@ -0,0 +1,138 @@
+// Copyright 2020 Christian Klauser
+//
+// Licensed under the Apache License,Version2.0(the"License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,software
+// distributed under the License is distributed on an"AS IS"BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package link.klauser.flatfetcher;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.persistence.EntityManagerFactory;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <p>
+ * Picks the number of keys per chunk query for each attribute of a fetch: a
+ * {@link FetchOptions#getBatchSizeOverrides() per-attribute override}, an {@link FetchOptions#isAdaptiveBatchSize() adaptive}
+ * size or {@link FetchOptions#getBatchSize()}, in that order. Never more than the {@link KeySetTransport} supports on the
+ * database ({@link KeySetTransport#maxKeysPerQuery}).
+ * </p>
+ * <p>
+ *     Adaptive sizes are based on exponentially weighted moving averages of the rows per key and the time per key of the
+ *     earlier chunk queries of the same {@link FetchPlan}.
+ * </p>
+ */
+@Slf4j
+class BatchSizing {
+
+	/**
+	 * Weight of the latest chunk in the moving averages.
+	 */
+	static final double SMOOTHING = 0.3;
+
+	/**
+	 * Moving averages for the chunk queries of one plan. Updates race, but a lost update only costs a bit of accuracy.
+	 */
+	static class Observations {
+		volatile double rowsPerKey;
+		volatile double nanosPerKey;
+		volatile long chunks;
+
+		void record(int keys, int rows, long nanos) {
+			var chunkRowsPerKey = (double) rows / keys;
+			var chunkNanosPerKey = (double) nanos / keys;
+			if (chunks == 0) {
+				rowsPerKey = chunkRowsPerKey;
+				nanosPerKey = chunkNanosPerKey;
+			}
+			else {
+				rowsPerKey += SMOOTHING * (chunkRowsPerKey - rowsPerKey);
+				nanosPerKey += SMOOTHING * (chunkNanosPerKey - nanosPerKey);
+			}
+			chunks += 1;
+		}
+	}
+
+	final Map<FetchPlan<?, ?>, Observations> observations = new ConcurrentHashMap<>();
+	private final Map<KeySetTransport, Integer> maxKeysPerTransport = new ConcurrentHashMap<>();
+
+	/**
+	 * The number of keys per chunk query for the attribute {@code attributeName} of {@code plan}.
+	 * @param attributeName JPA entity name and attribute name, such as {@code "Car.doors"}.
+	 */
+	int batchSize(EntityManagerFactory emf, FetchPlan<?, ?> plan, String attributeName, FetchOptions options) {
+		var maxKeys = maxKeysPerQuery(emf, options.getKeySetTransport());
+		var override = options.getBatchSizeOverrides().get(attributeName);
+		int batchSize;
+		if (override != null) {
+			batchSize = override;
+		}
+		else if (options.isAdaptiveBatchSize()) {
+			batchSize = adaptiveBatchSize(plan, options, maxKeys);
+		}
+		else {
+			batchSize = options.getBatchSize();
+		}
+		return clamp(batchSize, maxKeys);
+	}
+
+	/**
+	 * {@link FetchOptions#getBatchSize()}, but never more than the {@link KeySetTransport} supports.
+	 */
+	int batchSize(EntityManagerFactory emf, FetchOptions options) {
+		return clamp(options.getBatchSize(), maxKeysPerQuery(emf, options.getKeySetTransport()));
+	}
+
+	private int adaptiveBatchSize(FetchPlan<?, ?> plan, FetchOptions options, int maxKeys) {
+		var observed = observations.get(plan);
+		if (observed == null || observed.chunks == 0) {
+			return options.getBatchSize();
+		}
+		var targetRows = options.getAdaptiveTargetRows();
+		var byRows = observed.rowsPerKey <= 0 ? targetRows : targetRows / observed.rowsPerKey;
+		var byLatency = observed.nanosPerKey <= 0
+				? targetRows
+				: options.getAdaptiveTargetLatency().toNanos() / observed.nanosPerKey;
+		var batchSize = (int) Math.max(1, Math.min(targetRows, Math.min(byRows, byLatency)));
+		batchSize = clamp(batchSize, maxKeys);
+		if (options.isInListPadding()) {
+			// padding fills chunks up to powers of two anyway, so these are the only sizes that don't waste keys
+			batchSize = Integer.highestOneBit(batchSize);
+		}
+		if (log.isTraceEnabled()) {
+			log.trace("Adaptive batch size for {}: {} ({} rows/key, {} ns/key)", plan, batchSize, observed.rowsPerKey,
+					observed.nanosPerKey);
+		}
+		return batchSize;
+	}
+
+	/**
+	 * Feeds the outcome of a chunk query of {@code plan} into the adaptive batch sizes.
+	 * @param keys The number of distinct keys in the chunk.
+	 * @param rows The number of entities that the chunk query returned.
+	 */
+	void record(FetchPlan<?, ?> plan, int keys, int rows, long nanos) {
+		if (keys > 0) {
+			observations.computeIfAbsent(plan, p -> new Observations()).record(keys, rows, nanos);
+		}
+	}
+
+	private int maxKeysPerQuery(EntityManagerFactory emf, KeySetTransport transport) {
+		return maxKeysPerTransport.computeIfAbsent(transport, t -> t.maxKeysPerQuery(emf));
+	}
+
+	private static int clamp(int batchSize, int maxKeys) {
+		return maxKeys > 0 ? Math.min(batchSize, maxKeys) : batchSize;
+	}
+}
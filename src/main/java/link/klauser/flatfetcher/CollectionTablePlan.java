@@ -0,0 +1,167 @@
+// Copyright 2020 Christian Klauser
+//
+// Licensed under the Apache License,Version2.0(the"License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,software
+// distributed under the License is distributed on an"AS IS"BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package link.klauser.flatfetcher;
+
+import static java.util.stream.Collectors.toList;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import javax.persistence.EntityManager;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.PluralAttribute;
+import javax.persistence.metamodel.SingularAttribute;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.persister.collection.QueryableCollection;
+
+/**
+ * <p>
+ * Base class for the {@link LinkTablePlan}s of collections that Hibernate stores in a table of their own (a join table or
+ * the collection table of an {@code @ElementCollection}) or in a foreign key column of the targets that no attribute of
+ * the targets maps. The links are read from that table, by the
+ * key of the collection: the primary key of the roots or the {@code referencedColumnName} of the join column.
+ * </p>
+ * <p>
+ *     Such collections are the owning side of their association. In a persistence context, they are therefore registered
+ *     as if Hibernate had initialized them, with the current elements as the snapshot. A plain collection would replace
+ *     the collection of the root, and Hibernate would rewrite the links on flush.
+ * </p>
+ */
+abstract class CollectionTablePlan<X, C extends Collection<A>, A> implements LinkTablePlan<X, A> {
+
+	final Accessor<? super X, C> rootField;
+	final Accessor<? super X, ?> rootKeyAccessor;
+
+	final Supplier<C> emptyCollectionSupplier;
+
+	final String collectionRole;
+	final QueryableCollection persister;
+
+	CollectionTablePlan(EntityType<X> rootType, PluralAttribute<? super X, C, A> fetchAttr,
+			SessionFactoryImplementor factory) {
+		rootField = Accessor.of(fetchAttr);
+		emptyCollectionSupplier = PlanUtils.emptyCollectionSupplierFor(fetchAttr);
+		collectionRole = PlanUtils.collectionRole(rootType, fetchAttr);
+		var collectionPersister = factory.getMetamodel().collectionPersister(collectionRole);
+		if (collectionPersister.hasIndex()) {
+			throw FlatFetcherException.onAttr("FlatFetcher does not support indexed collections (@OrderColumn, maps). "
+					+ "Cannot fetch ", fetchAttr);
+		}
+		persister = (QueryableCollection) collectionPersister;
+		var rootKeyName = persister.getCollectionType().getLHSPropertyName();
+		rootKeyAccessor = rootKeyName == null
+				? Accessor.forPrimaryKeyOf(rootType)
+				: Accessor.of(rootType.getSingularAttribute(rootKeyName));
+	}
+
+	@Override
+	public List<?> keys(Collection<? extends X> roots) {
+		return roots.stream().map(rootKeyAccessor::get).collect(toList());
+	}
+
+	@Override
+	public SingularAttribute<? super X, ?> rootKeyAttribute() {
+		return rootKeyAccessor.singularAttr();
+	}
+
+	@Override
+	public Accessor<? super X, ?> rootAttribute() {
+		return rootField;
+	}
+
+	/**
+	 * Groups the targets by the key of the root they belong to.
+	 */
+	abstract Map<Object, List<A>> targetsByRootKey(Collection<A> loaded, List<Link> links);
+
+	/**
+	 * {@code select r.key, t from Root r join r.attribute t where r.key in (:keys)}, for plans that
+	 * {@link #loadsTargetsWithLinks() load the targets with the links}. Hibernate renders the join via the collection table.
+	 */
+	String joinJpql(EntityType<X> rootType, PluralAttribute<? super X, C, A> fetchAttr) {
+		var rootKeyName = rootKeyAccessor.attr().getName();
+		return "select r." + rootKeyName + ", t from " + rootType.getName() + " r join r." + fetchAttr.getName()
+				+ " t where r." + rootKeyName + " in (:" + InListTransport.KEYS_PARAMETER + ")";
+	}
+
+	/**
+	 * Runs a {@link #joinJpql join query} for a chunk of root keys. Each row becomes a link that holds the target itself.
+	 */
+	static List<Link> loadJoined(SharedSessionContractImplementor session, String joinJpql, List<?> rootKeys,
+			FetchOptions options) {
+		var query = session.createQuery(joinJpql, Object[].class)
+				.setParameterList(InListTransport.KEYS_PARAMETER, rootKeys);
+		PlanUtils.applyExecutionProfile(query, session, options);
+		var rows = query.getResultList();
+		var links = new ArrayList<Link>(rows.size());
+		for (var row : rows) {
+			links.add(new Link(row[0], row[1]));
+		}
+		return links;
+	}
+
+	/**
+	 * {@link #targetsByRootKey} for links that hold the targets themselves. Keeps duplicates, in the order of the links.
+	 */
+	@SuppressWarnings("unchecked")
+	static <A> Map<Object, List<A>> joinedTargetsByRootKey(List<Link> links) {
+		Map<Object, List<A>> byRootKey = new HashMap<>();
+		for (var link : links) {
+			byRootKey.computeIfAbsent(link.getRootKey(), k -> new ArrayList<>()).add((A) link.getTarget());
+		}
+		return byRootKey;
+	}
+
+	@Override
+	public Collection<A> stitch(EntityManager em, Collection<? extends X> roots, Collection<A> loaded, List<Link> links) {
+		var byRootKey = targetsByRootKey(loaded, links);
+		var session = em == null ? null : em.unwrap(SessionImplementor.class);
+		var fetched = Collections.<A>newSetFromMap(new IdentityHashMap<>());
+		var rootSetter = rootField.bulkSetter(em);
+		for (X root : roots) {
+			var rootCollection = emptyCollectionSupplier.get();
+			var targets = byRootKey.getOrDefault(rootKeyAccessor.get(root), Collections.emptyList());
+			rootCollection.addAll(targets);
+			fetched.addAll(targets);
+			rootSetter.set(root, session == null ? rootCollection : initializedCollection(session, root, rootCollection));
+		}
+		return fetched;
+	}
+
+	/**
+	 * Wraps {@code elements} in a Hibernate collection that the persistence context considers initialized.
+	 */
+	@SuppressWarnings("unchecked")
+	private C initializedCollection(SessionImplementor session, X root, C elements) {
+		var persistenceContext = session.getPersistenceContext();
+		if (persistenceContext.getEntry(root) == null) {
+			return elements;
+		}
+		var collection = persister.getCollectionType().wrap(session, elements);
+		collection.setOwner(root);
+		persistenceContext.addInitializedCollection(persister, collection, (Serializable) rootKeyAccessor.get(root));
+		return (C) collection;
+	}
+}
@@ -0,0 +1,98 @@
+// Copyright 2020 Christian Klauser
+//
+// Licensed under the Apache License,Version2.0(the"License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,software
+// distributed under the License is distributed on an"AS IS"BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package link.klauser.flatfetcher;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import javax.persistence.EntityManager;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.PluralAttribute;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+
+/**
+ * <p>
+ * Fetches an {@code @ElementCollection} of basic values or embeddables. Each chunk query reads the collection table for a
+ * chunk of roots: {@code select r.key, e from Root r join r.attribute e where r.key in (:keys)}. Hibernate would otherwise
+ * load one collection per root.
+ * </p>
+ * <p>
+ *     The elements are values, not entities. They have no key of their own, there is nothing to look up in the persistence
+ *     context or the second-level cache, and there are no subgraphs to fetch for them.
+ * </p>
+ */
+class ElementCollectionPlan<X, C extends Collection<A>, A> extends CollectionTablePlan<X, C, A> {
+
+	final String linkJpql;
+
+	ElementCollectionPlan(EntityType<X> rootType, PluralAttribute<? super X, C, A> fetchAttr,
+			SessionFactoryImplementor factory) {
+		super(rootType, fetchAttr, factory);
+		if (persister.isOneToMany() || persister.isManyToMany()) {
+			throw FlatFetcherException.onAttr("Expected a collection of basic values or embeddables. Cannot fetch ",
+					fetchAttr);
+		}
+		linkJpql = joinJpql(rootType, fetchAttr);
+	}
+
+	@Override
+	public boolean loadsTargetsWithLinks() {
+		return true;
+	}
+
+	@Override
+	public EntityType<A> targetType() {
+		throw new IllegalStateException("The elements of " + collectionRole + " are not entities.");
+	}
+
+	@Override
+	public Accessor<? super A, ?> keyAccessor() {
+		throw new IllegalStateException("The elements of " + collectionRole + " have no key.");
+	}
+
+	@Override
+	public Map<KeySetTransport, KeySetQuery<A>> keySetQueries() {
+		return Map.of();
+	}
+
+	/**
+	 * Values are not associated entities.
+	 */
+	@Override
+	public Collection<A> associated(Collection<? extends X> roots) {
+		return List.of();
+	}
+
+	@Override
+	public List<Link> loadLinks(SharedSessionContractImplementor session, List<?> rootKeys, FetchOptions options) {
+		return loadJoined(session, linkJpql, rootKeys, options);
+	}
+
+	@Override
+	Map<Object, List<A>> targetsByRootKey(Collection<A> loaded, List<Link> links) {
+		return joinedTargetsByRootKey(links);
+	}
+
+	/**
+	 * @return Nothing, the elements are not roots for subgraphs.
+	 */
+	@Override
+	public Collection<A> stitch(EntityManager em, Collection<? extends X> roots, Collection<A> loaded, List<Link> links) {
+		super.stitch(em, roots, loaded, links);
+		return List.of();
+	}
+}
@@ -0,0 +1,171 @@
+// Copyright 2020 Christian Klauser
+//
+// Licensed under the Apache License,Version2.0(the"License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,software
+// distributed under the License is distributed on an"AS IS"BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package link.klauser.flatfetcher;
+
+import lombok.Value;
+
+/**
+ * <p>
+ * Receives timings and counts of the fetches of a {@link FlatFetcher}, registered with
+ * {@link FlatFetcher#addFetchListener(FetchListener)}. All methods do nothing by default.
+ * </p>
+ * <p>
+ *     A fetch walks the nodes of its entity graph level by level. For each attribute of a node, it resolves keys from the
+ *     persistence context and the second-level cache, queries the rest in chunks and stitches the results onto the roots.
+ *     The callbacks follow that structure:
+ * </p>
+ * <ol>
+ *     <li>{@link #fetchStarted} and {@link #fetchFinished} once per call to one of the {@link FlatFetcher#fetch} methods
+ *     (once per window for streams and windowed fetches),</li>
+ *     <li>{@link #nodeStarted} for each node of the entity graph that has roots,</li>
+ *     <li>{@link #attributeFetched} once an attribute has been stitched,</li>
+ *     <li>{@link #chunkQueried} after each chunk query,</li>
+ *     <li>{@link #planCompiled} when an entity graph or an attribute is used for the first time (or by
+ *     {@link FlatFetcher#warmUp()}).</li>
+ * </ol>
+ * <p>
+ *     Callbacks run on the calling thread, except for {@link #chunkQueried} with an {@link FetchOptions#getExecutor()
+ *     executor}, which runs on the worker thread. Implementations must be thread-safe and fast. Exceptions thrown by
+ *     listeners are logged and otherwise ignored. {@link FlatFetcher#fetchProjection Projections} are not reported.
+ * </p>
+ * @see MicrometerFetchListener
+ */
+public interface FetchListener {
+
+	/**
+	 * A single fetch of an entity graph.
+	 */
+	@Value
+	class Fetch {
+		/**
+		 * The entity type of the roots.
+		 */
+		Class<?> rootType;
+		String entityGraphName;
+		/**
+		 * The number of roots passed to the fetch.
+		 */
+		int roots;
+	}
+
+	/**
+	 * A node of the entity graph: the root node or a subgraph.
+	 */
+	@Value
+	class NodeFetch {
+		Fetch fetch;
+		/**
+		 * The name of the entity graph, followed by the path to the subgraph.
+		 */
+		String nodeName;
+		Class<?> entityType;
+		/**
+		 * The number of entities whose attributes the node fetches.
+		 */
+		int roots;
+	}
+
+	/**
+	 * An attribute of a node that has been loaded and stitched.
+	 */
+	@Value
+	class AttributeFetch {
+		Fetch fetch;
+		/**
+		 * JPA entity name and attribute name, such as {@code "Car.doors"}.
+		 */
+		String attribute;
+		/**
+		 * The number of distinct keys to load.
+		 */
+		int keys;
+		/**
+		 * The number of keys resolved from the persistence context or the second-level cache, without a query.
+		 */
+		int cachedKeys;
+		int chunkQueries;
+		/**
+		 * The number of entities loaded, from chunk queries and caches.
+		 */
+		int rows;
+		/**
+		 * The number of distinct entities associated with the roots after stitching. The roots of the subgraphs.
+		 */
+		int stitched;
+		/**
+		 * Wall-clock time from preparing the attribute until it has been stitched. With an
+		 * {@link FetchOptions#getExecutor() executor}, this includes waiting for other chunk queries.
+		 */
+		long nanos;
+	}
+
+	/**
+	 * A single chunk query of an attribute.
+	 */
+	@Value
+	class ChunkQuery {
+		Fetch fetch;
+		/**
+		 * JPA entity name and attribute name, such as {@code "Car.doors"}.
+		 */
+		String attribute;
+		/**
+		 * The number of distinct keys in the chunk (without {@link FetchOptions#isInListPadding() padding}).
+		 */
+		int keys;
+		int rows;
+		/**
+		 * Time spent in the query, including loading the entities, but without stitching.
+		 */
+		long nanos;
+	}
+
+	/**
+	 * The compilation of an entity graph ({@link GraphPlan}) or of the {@link FetchPlan} of an attribute. Results are cached,
+	 * so this happens once per entity graph and attribute.
+	 */
+	@Value
+	class PlanCompilation {
+		Class<?> entityType;
+		/**
+		 * The name of the entity graph or, for attributes, JPA entity name and attribute name such as {@code "Car.doors"}.
+		 */
+		String name;
+		boolean entityGraph;
+		long nanos;
+	}
+
+	default void fetchStarted(Fetch fetch) {
+	}
+
+	/**
+	 * @param failure The exception that ended the fetch, or {@code null} if it completed normally.
+	 */
+	default void fetchFinished(Fetch fetch, long nanos, Throwable failure) {
+	}
+
+	default void nodeStarted(NodeFetch node) {
+	}
+
+	default void attributeFetched(AttributeFetch attribute) {
+	}
+
+	default void chunkQueried(ChunkQuery chunk) {
+	}
+
+	default void planCompiled(PlanCompilation compilation) {
+	}
+}
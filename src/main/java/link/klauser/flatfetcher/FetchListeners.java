@@ -0,0 +1,88 @@
+// Copyright 2020 Christian Klauser
+//
+// Licensed under the Apache License,Version2.0(the"License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,software
+// distributed under the License is distributed on an"AS IS"BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package link.klauser.flatfetcher;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * The {@link FetchListener}s of a {@link FlatFetcher}. Forwards each callback to all of them and keeps a failing listener from
+ * failing the fetch.
+ */
+@Slf4j
+class FetchListeners implements FetchListener {
+
+	private final List<FetchListener> listeners = new CopyOnWriteArrayList<>();
+
+	void add(FetchListener listener) {
+		listeners.add(listener);
+	}
+
+	boolean remove(FetchListener listener) {
+		return listeners.remove(listener);
+	}
+
+	/**
+	 * Whether there are any listeners. Callers skip collecting data for the callbacks if there aren't.
+	 */
+	boolean isActive() {
+		return !listeners.isEmpty();
+	}
+
+	private void forEach(Consumer<FetchListener> callback) {
+		for (var listener : listeners) {
+			try {
+				callback.accept(listener);
+			}
+			catch (RuntimeException e) {
+				log.warn("Fetch listener {} failed", listener, e);
+			}
+		}
+	}
+
+	@Override
+	public void fetchStarted(Fetch fetch) {
+		forEach(listener -> listener.fetchStarted(fetch));
+	}
+
+	@Override
+	public void fetchFinished(Fetch fetch, long nanos, Throwable failure) {
+		forEach(listener -> listener.fetchFinished(fetch, nanos, failure));
+	}
+
+	@Override
+	public void nodeStarted(NodeFetch node) {
+		forEach(listener -> listener.nodeStarted(node));
+	}
+
+	@Override
+	public void attributeFetched(AttributeFetch attribute) {
+		forEach(listener -> listener.attributeFetched(attribute));
+	}
+
+	@Override
+	public void chunkQueried(ChunkQuery chunk) {
+		forEach(listener -> listener.chunkQueried(chunk));
+	}
+
+	@Override
+	public void planCompiled(PlanCompilation compilation) {
+		forEach(listener -> listener.planCompiled(compilation));
+	}
+}
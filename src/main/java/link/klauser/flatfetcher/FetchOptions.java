@@ -0,0 +1,183 @@
+// Copyright 2020 Christian Klauser
+//
+// Licensed under the Apache License,Version2.0(the"License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,software
+// distributed under the License is distributed on an"AS IS"BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package link.klauser.flatfetcher;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import lombok.Builder;
+import lombok.Value;
+import lombok.With;
+
+/**
+ * <p>
+ * Immutable settings for a single {@link FlatFetcher#fetch(Class, java.util.Collection, String, FetchOptions)} call.
+ * </p>
+ * <p>
+ *     Each {@link FlatFetcher} has {@link FlatFetcher#getDefaultOptions() default options}. To override a setting for
+ *     a single call, derive from the defaults:
+ * </p>
+ * <pre>{@code
+ *   flatFetcher.fetch(Car.class, cars, "Car.full", flatFetcher.getDefaultOptions().withParallelism(8));
+ * }</pre>
+ */
+@Value
+@With
+@Builder(toBuilder = true)
+public class FetchOptions {
+
+	/**
+	 * Options with all settings at their default value.
+	 */
+	public static final FetchOptions DEFAULT = FetchOptions.builder().build();
+
+	/**
+	 * Execution profile for fetches that only read: loads entities {@link #isReadOnly() read-only} and without
+	 * {@link #isAutoFlush() auto flush}. All other settings are at their default value.
+	 */
+	public static final FetchOptions READ_ONLY = DEFAULT.withReadOnly(true).withAutoFlush(false);
+
+	/**
+	 * <p>Upper limit on how many rows to request in a single query.</p>
+	 * <p>The {@link FlatFetcher} mostly produces
+	 * {@code where ... in (...)} queries, which Hibernate translates as {@code where ... in (?, ?, ..., ?)}. Some RDBMSs,
+	 * such as Oracle DB, have limits on how long an SQL query can be and how long the {@code in} list can be. The
+	 * {@link FlatFetcher} never exceeds the limits that the Hibernate dialect reports (see
+	 * {@link KeySetTransport#maxKeysPerQuery}), even if the batch size is larger.</p>
+	 */
+	@Builder.Default
+	int batchSize = 500;
+
+	/**
+	 * <p>{@link #getBatchSize() Batch sizes} for individual attributes, keyed by JPA entity name and attribute name, such as
+	 * {@code "Car.doors"}. Take precedence over {@link #getBatchSize()} and {@link #isAdaptiveBatchSize()}. Empty by
+	 * default.</p>
+	 * @see #withBatchSizeOverride(String, int)
+	 */
+	@lombok.NonNull
+	@Builder.Default
+	Map<String, Integer> batchSizeOverrides = Map.of();
+
+	/**
+	 * <p>Sizes the chunks of each attribute based on earlier chunk queries of the same attribute (by this
+	 * {@link FlatFetcher}), instead of using {@link #getBatchSize()} for all of them. Disabled by default.</p>
+	 * <p>Aims for chunks of about {@link #getAdaptiveTargetRows()} rows that take about
+	 * {@link #getAdaptiveTargetLatency()}, based on the average number of rows per key and time per key observed so far.
+	 * Attributes with a high fan-out get small chunks, attributes with a fan-out of 1 (or less) get large ones. Chunk sizes
+	 * never exceed the limits of the database and the {@link #getKeySetTransport() transport}
+	 * ({@link KeySetTransport#maxKeysPerQuery}). With {@link #isInListPadding()}, chunk sizes are rounded down to a power of
+	 * two, so that there are only a few distinct statements.</p>
+	 * <p>The first fetch of each attribute uses {@link #getBatchSize()}.</p>
+	 */
+	boolean adaptiveBatchSize;
+
+	/**
+	 * <p>The number of rows that an {@link #isAdaptiveBatchSize() adaptive} chunk query should return. Also the largest number
+	 * of keys in an adaptive chunk.</p>
+	 */
+	@Builder.Default
+	int adaptiveTargetRows = 5_000;
+
+	/**
+	 * <p>The time that an {@link #isAdaptiveBatchSize() adaptive} chunk query should take, including loading the entities.</p>
+	 */
+	@lombok.NonNull
+	@Builder.Default
+	Duration adaptiveTargetLatency = Duration.ofMillis(200);
+
+	/**
+	 * <p>Executor on which to run queries concurrently. {@code null} (the default) means that all queries
+	 * run one after the other on the calling thread, using the {@link EntityManager} of the {@link FlatFetcher}.</p>
+	 * <p>With an executor, every chunk of at most {@link #getBatchSize()} keys is loaded by a separate task with its own
+	 * read-only {@link EntityManager} from the {@link EntityManagerFactory} of the {@link FlatFetcher} (and thereby its own
+	 * connection) in a separate, resource-local transaction. Chunks of all the attributes that are independent of each other
+	 * (that is, all attributes of the fetch nodes on the same level of the entity graph) are scheduled together.
+	 * The loaded entities are re-attached to the persistence context of the {@link FlatFetcher}'s {@link EntityManager}
+	 * and stitched to their roots on the calling thread while the remaining chunks are still being loaded.</p>
+	 * <p>Note that the concurrent loads can only see committed data. Changes in the caller's transaction that have not been
+	 * committed yet are not visible to them.</p>
+	 */
+	Executor executor;
+
+	/**
+	 * <p>Upper limit on the number of chunk queries that a single fetch has in flight at the same time when running on an
+	 * {@link #getExecutor() executor}. This is also the number of connections that a single fetch occupies.</p>
+	 * <p>Has no effect without an {@link #getExecutor() executor}.</p>
+	 */
+	@Builder.Default
+	int parallelism = 4;
+
+	/**
+	 * <p>How chunks of keys are shipped to the database. Defaults to {@link KeySetTransport#inList()}.</p>
+	 * @see KeySetTransport
+	 */
+	@lombok.NonNull
+	@Builder.Default
+	KeySetTransport keySetTransport = KeySetTransport.inList();
+
+	/**
+	 * <p>Pads each chunk of keys to one of a few bucket sizes (powers of two, up to the batch size) by repeating
+	 * the last key.</p>
+	 * <p>With {@link KeySetTransport#inList()}, every distinct number of keys results in a distinct SQL statement, which
+	 * fills up Hibernate's query plan cache, the JDBC statement cache and the query plan cache of the database with
+	 * near-duplicates. With padding, each fetch plan only ever produces a handful of distinct statements. Has no benefit for
+	 * transports that ship all keys in a single parameter. Disabled by default.</p>
+	 * @see FlatFetcher#getStatistics()
+	 */
+	boolean inListPadding;
+
+	/**
+	 * <p>Loads the associated entities as read-only (like the {@code org.hibernate.readOnly} query hint). Hibernate neither
+	 * keeps a snapshot of their state nor checks them for changes during flush. Entities that already are in the persistence
+	 * context are not affected.</p>
+	 * <p>Only enable this if the fetched entities are not going to be modified. Has no effect on detached fetches. Disabled by
+	 * default.</p>
+	 */
+	boolean readOnly;
+
+	/**
+	 * <p>Whether Hibernate may flush pending changes before each chunk query. Enabled by default, which matches the default
+	 * behavior of Hibernate.</p>
+	 * <p>To decide whether to flush, Hibernate has to check the entire persistence context for changes before each chunk
+	 * query. With large persistence contexts, that check can cost more than the query. When disabled, chunk queries run with
+	 * {@link org.hibernate.FlushMode#MANUAL} and do not see changes that have not been flushed yet.</p>
+	 */
+	@Builder.Default
+	boolean autoFlush = true;
+
+	/**
+	 * <p>The JDBC fetch size for chunk queries, i.e., how many rows the driver requests per round trip. {@code 0} (the
+	 * default) leaves the decision to the JDBC driver.</p>
+	 */
+	int fetchSize;
+
+	/**
+	 * Returns options that use {@code batchSize} for {@code attribute}.
+	 * @param attribute JPA entity name and attribute name, such as {@code "Car.doors"}.
+	 * @see #getBatchSizeOverrides()
+	 */
+	public FetchOptions withBatchSizeOverride(String attribute, int batchSize) {
+		if (batchSize <= 0) {
+			throw new IllegalArgumentException("Batch size must be strictly positive.");
+		}
+		var overrides = new HashMap<>(batchSizeOverrides);
+		overrides.put(attribute, batchSize);
+		return withBatchSizeOverrides(Map.copyOf(overrides));
+	}
+}
@@ -14,10 +14,114 @@
 
 package link.klauser.flatfetcher;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.SingularAttribute;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
 
-@FunctionalInterface
 interface FetchPlan<X, A> {
-	Collection<A> fetch(EntityManager em, Collection<? extends X> roots, int batchSize);
+
+	/**
+	 * The keys to query associated entities for. Only reads the key attributes of {@code roots}.
+	 */
+	List<?> keys(Collection<? extends X> roots);
+
+	/**
+	 * The attribute of the roots that {@link #keys(Collection)} reads.
+	 */
+	SingularAttribute<? super X, ?> rootKeyAttribute();
+
+	/**
+	 * The attribute of the roots that {@link #stitch} assigns.
+	 */
+	Accessor<? super X, ?> rootAttribute();
+
+	/**
+	 * Whether the association has already been initialized on {@code root}, for instance by an earlier fetch. There is
+	 * nothing to load for such roots. Never triggers lazy loading.
+	 */
+	default boolean isInitialized(X root) {
+		return PlanUtils.isInitialized(root, rootAttribute());
+	}
+
+	/**
+	 * The entities that are associated with {@code roots} right now. Only call this for {@link #isInitialized initialized}
+	 * roots.
+	 * @return The associated entities, which act as roots for subgraphs.
+	 */
+	@SuppressWarnings("unchecked")
+	default Collection<A> associated(Collection<? extends X> roots) {
+		var associated = new ArrayList<A>();
+		for (X root : roots) {
+			var value = rootAttribute().get(root);
+			if (value instanceof Collection) {
+				associated.addAll((Collection<A>) value);
+			}
+			else if (value != null) {
+				associated.add((A) value);
+			}
+		}
+		return associated;
+	}
+
+	/**
+	 * The type of the associated entities.
+	 */
+	EntityType<A> targetType();
+
+	/**
+	 * Reads the attribute of {@link #targetType()} that {@link #keys(Collection)} are matched against.
+	 */
+	Accessor<? super A, ?> keyAccessor();
+
+	/**
+	 * The attribute of {@link #targetType()} that {@link #keys(Collection)} are matched against.
+	 */
+	default SingularAttribute<? super A, ?> keyAttribute() {
+		return keyAccessor().singularAttr();
+	}
+
+	/**
+	 * The role of the Hibernate collection that this plan loads, if it loads a collection that is keyed by
+	 * {@link #keys(Collection)}. Used to look up the collection cache.
+	 */
+	default Optional<String> collectionRole() {
+		return Optional.empty();
+	}
+
+	/**
+	 * The queries that this plan has {@link KeySetTransport#compile compiled} so far, one per transport. Must be thread-safe.
+	 */
+	Map<KeySetTransport, KeySetQuery<A>> keySetQueries();
+
+	/**
+	 * The query of this plan for {@code transport}. Compiled on first use and then re-used for all chunks of all fetches
+	 * with the same transport.
+	 */
+	default KeySetQuery<A> keySetQuery(EntityManagerFactory emf, KeySetTransport transport) {
+		return keySetQueries().computeIfAbsent(transport, t -> t.compile(emf, targetType(), keyAttribute()));
+	}
+
+	/**
+	 * <p>Queries the entities associated with a chunk of {@link #keys(Collection)}.</p>
+	 * <p>Does not touch any roots. This allows the load to run on a different thread with a different
+	 * session than the one that the roots are attached to.</p>
+	 */
+	default List<A> loadChunk(SharedSessionContractImplementor session, List<?> keys, FetchOptions options) {
+		return keySetQuery(session.getFactory(), options.getKeySetTransport()).load(session, keys, options);
+	}
+
+	/**
+	 * Assigns the {@code loaded} entities to {@code roots} (and, where possible, {@code roots} to the {@code loaded} entities).
+	 * {@code em} is {@code null} when stitching a detached graph.
+	 * @return The associated entities, which act as roots for subgraphs.
+	 */
+	Collection<A> stitch(EntityManager em, Collection<? extends X> roots, Collection<A> loaded);
 }
@@ -0,0 +1,280 @@
+// Copyright 2020 Christian Klauser
+//
+// Licensed under the Apache License,Version2.0(the"License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,software
+// distributed under the License is distributed on an"AS IS"BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package link.klauser.flatfetcher;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import javax.persistence.EntityManager;
+
+import lombok.RequiredArgsConstructor;
+import org.hibernate.StatelessSession;
+import org.hibernate.cache.spi.entry.CollectionCacheEntry;
+import org.hibernate.engine.internal.CacheHelper;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.engine.spi.Status;
+import org.hibernate.persister.collection.CollectionPersister;
+
+/**
+ * Where a single fetch loads entities and how it stitches them together: either in the persistence context of an
+ * {@link EntityManager} or, for detached graphs, with a {@link StatelessSession}.
+ */
+abstract class FetchSession {
+
+	/**
+	 * The session to run chunk queries on when running on the calling thread.
+	 */
+	abstract SharedSessionContractImplementor session();
+
+	/**
+	 * The entity manager to pass to {@link FetchPlan#stitch}. {@code null} for detached graphs.
+	 */
+	abstract EntityManager stitchEntityManager();
+
+	/**
+	 * <p>Adds the entities for {@code keys} that can be resolved without a query to {@code found}:</p>
+	 * <ul>
+	 *     <li>If {@code plan} matches keys against the primary key of its target, from the persistence context or the entity
+	 *     cache.</li>
+	 *     <li>If {@code plan} loads a cached collection, from the collection cache. A collection is only taken from the cache if
+	 *     all of its elements are in the persistence context or the entity cache.</li>
+	 * </ul>
+	 * @return The keys that still need to be queried.
+	 */
+	abstract <A> List<?> resolveCached(FetchPlan<?, A> plan, List<?> keys, List<A> found, FetchStatistics statistics);
+
+	/**
+	 * Loads a chunk with a session of its own. Called on a worker thread.
+	 */
+	abstract <A> List<A> loadOnWorker(FetchPlan<?, A> plan, List<?> keys, FetchOptions options);
+
+	/**
+	 * Takes over entities returned by {@link #loadOnWorker}. Called on the calling thread.
+	 */
+	abstract <A> List<A> adopt(List<A> loaded);
+
+	/**
+	 * Lets go of the entities of a window of roots once they have been handed over to the caller.
+	 */
+	abstract void endWindow();
+
+	static FetchSession attached(EntityManager em) {
+		return new Attached(em);
+	}
+
+	static FetchSession detached(StatelessSession session) {
+		return new Detached((SharedSessionContractImplementor) session);
+	}
+
+	@RequiredArgsConstructor
+	private static class Attached extends FetchSession {
+		final EntityManager em;
+
+		@Override
+		SharedSessionContractImplementor session() {
+			return em.unwrap(SessionImplementor.class);
+		}
+
+		@Override
+		EntityManager stitchEntityManager() {
+			return em;
+		}
+
+		@Override
+		<A> List<?> resolveCached(FetchPlan<?, A> plan, List<?> keys, List<A> found, FetchStatistics statistics) {
+			var session = em.unwrap(SessionImplementor.class);
+			var targetClass = plan.targetType().getJavaType();
+			if (plan.keyAttribute().isId()) {
+				return resolveEntities(session, targetClass, keys, found, statistics);
+			}
+			var collectionPersister = plan.collectionRole()
+					.map(role -> session.getFactory().getMetamodel().collectionPersisters().get(role));
+			if (collectionPersister.isPresent() && collectionPersister.get().hasCache()
+					&& session.getCacheMode().isGetEnabled()) {
+				return resolveCollections(session, collectionPersister.get(), plan, keys, found, statistics);
+			}
+			return keys;
+		}
+
+		private static <A> List<?> resolveEntities(SessionImplementor session, Class<A> targetClass, List<?> keys,
+				List<A> found, FetchStatistics statistics) {
+			var misses = new ArrayList<>(keys.size());
+			for (var key : keys) {
+				var managed = managedEntity(session, targetClass, (Serializable) key);
+				if (managed != null) {
+					statistics.recordPersistenceContextHits(1);
+					found.add(managed);
+					continue;
+				}
+				var cached = cachedEntity(session, targetClass, (Serializable) key);
+				if (cached != null) {
+					statistics.recordSecondLevelCacheHits(1);
+					found.add(cached);
+					continue;
+				}
+				misses.add(key);
+			}
+			return misses;
+		}
+
+		private static <A> List<?> resolveCollections(SessionImplementor session, CollectionPersister persister,
+				FetchPlan<?, A> plan, List<?> keys, List<A> found, FetchStatistics statistics) {
+			var access = persister.getCacheAccessStrategy();
+			var elementClass = plan.targetType().getJavaType();
+			var elementKey = plan.keyAccessor();
+			var misses = new ArrayList<>(keys.size());
+			for (var key : keys) {
+				var cacheKey = access.generateCacheKey(key, persister, session.getFactory(), session.getTenantIdentifier());
+				var entry = (CollectionCacheEntry) CacheHelper.fromSharedCache(session, cacheKey, access);
+				var elements = entry == null ? null : cachedElements(session, elementClass, elementKey, key, entry);
+				if (elements == null) {
+					misses.add(key);
+				}
+				else {
+					statistics.recordSecondLevelCacheHits(1);
+					found.addAll(elements);
+				}
+			}
+			return misses;
+		}
+
+		/**
+		 * The elements of a cached collection. {@code null} if any of the elements is neither in the persistence context nor
+		 * in the entity cache: Loading elements one by one would be worse than querying the whole collection.
+		 * Also {@code null} if an element doesn't refer back to {@code key}. Hibernate caches entities as they were inserted,
+		 * so read-only copies of foreign key columns ({@code insertable = false}) are {@code null} in those entries.
+		 */
+		private static <A> List<A> cachedElements(SessionImplementor session, Class<A> elementClass,
+				Accessor<? super A, ?> elementKey, Object key, CollectionCacheEntry entry) {
+			var elements = new ArrayList<A>(entry.getState().length);
+			for (var elementId : entry.getState()) {
+				var element = managedEntity(session, elementClass, elementId);
+				if (element == null) {
+					element = cachedEntity(session, elementClass, elementId);
+				}
+				if (element == null || !key.equals(elementKey.get(element))) {
+					return null;
+				}
+				elements.add(element);
+			}
+			return elements;
+		}
+
+		/**
+		 * The entity from the persistence context, {@code null} if it's not there.
+		 */
+		private static <A> A managedEntity(SessionImplementor session, Class<A> targetClass, Serializable id) {
+			var persister = session.getFactory().getMetamodel().entityPersister(targetClass);
+			var entity = session.getPersistenceContext().getEntity(session.generateEntityKey(id, persister));
+			return targetClass.isInstance(entity) ? targetClass.cast(entity) : null;
+		}
+
+		/**
+		 * The entity assembled from the entity cache, {@code null} if it's not there. Never queries the database (unless the
+		 * entity gets evicted concurrently).
+		 */
+		private static <A> A cachedEntity(SessionImplementor session, Class<A> targetClass, Serializable id) {
+			var persister = session.getFactory().getMetamodel().entityPersister(targetClass);
+			if (!persister.canReadFromCache() || !session.getCacheMode().isGetEnabled()
+					|| !session.getFactory().getCache().containsEntity(targetClass, id)) {
+				return null;
+			}
+			return session.byId(targetClass).load(id);
+		}
+
+		@Override
+		<A> List<A> loadOnWorker(FetchPlan<?, A> plan, List<?> keys, FetchOptions options) {
+			return WorkerSessions.readOnly(em.getEntityManagerFactory(),
+					workerEm -> plan.loadChunk(workerEm.unwrap(SessionImplementor.class), keys, options));
+		}
+
+		@Override
+		<A> List<A> adopt(List<A> loaded) {
+			return WorkerSessions.reattach(em, loaded);
+		}
+
+		@Override
+		void endWindow() {
+			// No flush: stitched collections are plain collections, which Hibernate would consider replaced on flush. For
+			// the same reason, Session#isDirty is no option to make sure clearing doesn't discard changes.
+			if (hasUnflushedChanges(em.unwrap(SessionImplementor.class))) {
+				throw new FlatFetcherException("The persistence context has changes that have not been flushed. Clearing it "
+						+ "at the end of the window would discard them. Flush in the consumer.");
+			}
+			em.clear();
+		}
+
+		/**
+		 * Whether flushing would write anything: queued actions, or managed entities whose state differs from their loaded
+		 * state. Stitched values are part of the loaded state, so stitching alone doesn't count as a change.
+		 */
+		private static boolean hasUnflushedChanges(SessionImplementor session) {
+			if (session.getActionQueue().hasAnyQueuedActions()) {
+				return true;
+			}
+			for (var entry : session.getPersistenceContext().reentrantSafeEntityEntries()) {
+				var entity = entry.getKey();
+				var entityEntry = entry.getValue();
+				if (entityEntry.getStatus() != Status.MANAGED || entityEntry.isReadOnly()
+						|| entityEntry.getLoadedState() == null) {
+					continue;
+				}
+				var persister = entityEntry.getPersister();
+				if (persister.findDirty(persister.getPropertyValues(entity), entityEntry.getLoadedState(), entity,
+						session) != null) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	@RequiredArgsConstructor
+	private static class Detached extends FetchSession {
+		final SharedSessionContractImplementor session;
+
+		@Override
+		SharedSessionContractImplementor session() {
+			return session;
+		}
+
+		@Override
+		EntityManager stitchEntityManager() {
+			return null;
+		}
+
+		@Override
+		<A> List<?> resolveCached(FetchPlan<?, A> plan, List<?> keys, List<A> found, FetchStatistics statistics) {
+			// stateless sessions neither have a persistence context nor do they use the second-level cache
+			return keys;
+		}
+
+		@Override
+		<A> List<A> loadOnWorker(FetchPlan<?, A> plan, List<?> keys, FetchOptions options) {
+			return WorkerSessions.stateless(session.getFactory(), workerSession -> plan.loadChunk(workerSession, keys, options));
+		}
+
+		@Override
+		<A> List<A> adopt(List<A> loaded) {
+			return loaded;
+		}
+
+		@Override
+		void endWindow() {
+			// nothing holds on to detached entities, they become garbage as soon as the caller drops them
+		}
+	}
+}
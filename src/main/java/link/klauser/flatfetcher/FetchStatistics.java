@@ -0,0 +1,144 @@
+// Copyright 2020 Christian Klauser
+//
+// Licensed under the Apache License,Version2.0(the"License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,software
+// distributed under the License is distributed on an"AS IS"BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package link.klauser.flatfetcher;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import lombok.Value;
+
+/**
+ * <p>
+ * Thread-safe counters on the chunk queries issued by a {@link FlatFetcher}.
+ * </p>
+ * <p>
+ *     Each chunk query has a "shape": the target entity, the key attribute, the {@link KeySetTransport} and, for transports
+ *     that render one parameter per key, the number of keys. Queries with the same shape produce the same SQL text and can
+ *     therefore re-use cached query plans and prepared statements. {@link #getStatementReuseRatio()} is an estimate of the
+ *     hit rate in those caches.
+ * </p>
+ * @see FetchOptions#isInListPadding()
+ */
+public class FetchStatistics {
+
+	@Value
+	static class StatementShape {
+		Class<?> targetType;
+		String keyAttribute;
+		KeySetTransport transport;
+		int parameterCount;
+	}
+
+	private final LongAdder chunkQueries = new LongAdder();
+	private final LongAdder reusedStatements = new LongAdder();
+	private final Set<StatementShape> statementShapes = ConcurrentHashMap.newKeySet();
+	private final LongAdder persistenceContextHits = new LongAdder();
+	private final LongAdder secondLevelCacheHits = new LongAdder();
+
+	void recordChunkQuery(FetchPlan<?, ?> plan, FetchOptions options, List<?> keys) {
+		var transport = options.getKeySetTransport();
+		var parameterCount = transport instanceof NativeSqlTransport ? 1 : keys.size();
+		record(new StatementShape(plan.targetType().getJavaType(), plan.keyAttribute().getName(), transport, parameterCount));
+	}
+
+	/**
+	 * Link queries ({@link LinkTablePlan#loadLinks}) always render an {@code in} list. Their shape is made up of the
+	 * attribute of the roots instead of the target.
+	 */
+	void recordLinkQuery(LinkTablePlan<?, ?> plan, List<?> keys) {
+		var rootAttr = plan.rootAttribute().attr();
+		record(new StatementShape(rootAttr.getDeclaringType().getJavaType(), rootAttr.getName(), KeySetTransport.inList(),
+				keys.size()));
+	}
+
+	private void record(StatementShape shape) {
+		chunkQueries.increment();
+		if (!statementShapes.add(shape)) {
+			reusedStatements.increment();
+		}
+	}
+
+	void recordPersistenceContextHits(int hits) {
+		persistenceContextHits.add(hits);
+	}
+
+	void recordSecondLevelCacheHits(int hits) {
+		secondLevelCacheHits.add(hits);
+	}
+
+	/**
+	 * The total number of chunk queries.
+	 */
+	public long getChunkQueries() {
+		return chunkQueries.sum();
+	}
+
+	/**
+	 * The number of chunk queries that had the same shape as an earlier chunk query.
+	 */
+	public long getReusedStatements() {
+		return reusedStatements.sum();
+	}
+
+	/**
+	 * The number of distinct chunk query shapes (and thereby distinct SQL statements).
+	 */
+	public long getDistinctStatements() {
+		return statementShapes.size();
+	}
+
+	/**
+	 * {@link #getReusedStatements()} / {@link #getChunkQueries()}, or {@code 0} if there have not been any queries.
+	 */
+	public double getStatementReuseRatio() {
+		var total = getChunkQueries();
+		return total == 0 ? 0 : (double) getReusedStatements() / total;
+	}
+
+	/**
+	 * The number of associated entities that were already in the persistence context and therefore were not queried.
+	 */
+	public long getPersistenceContextHits() {
+		return persistenceContextHits.sum();
+	}
+
+	/**
+	 * The number of keys that were resolved from the second-level cache and therefore were not queried. Counts entities for
+	 * {@code XxxToOne} associations and entire collections for {@code @OneToMany} associations.
+	 */
+	public long getSecondLevelCacheHits() {
+		return secondLevelCacheHits.sum();
+	}
+
+	/**
+	 * Sets all counters back to zero and forgets all statement shapes.
+	 */
+	public void reset() {
+		chunkQueries.reset();
+		reusedStatements.reset();
+		statementShapes.clear();
+		persistenceContextHits.reset();
+		secondLevelCacheHits.reset();
+	}
+
+	@Override
+	public String toString() {
+		return "FetchStatistics(chunkQueries=" + getChunkQueries() + ", reusedStatements=" + getReusedStatements()
+				+ ", distinctStatements=" + getDistinctStatements() + ", persistenceContextHits=" + getPersistenceContextHits()
+				+ ", secondLevelCacheHits=" + getSecondLevelCacheHits() + ")";
+	}
+}
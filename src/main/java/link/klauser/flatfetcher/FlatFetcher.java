@@ -14,16 +14,31 @@
 
 package link.klauser.flatfetcher;
 
+import static java.util.stream.Collectors.toList;
+
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 import javax.persistence.Access;
 import javax.persistence.AccessType;
 import javax.persistence.AttributeNode;
+import javax.persistence.ElementCollection;
 import javax.persistence.EntityManager;
 import javax.persistence.FetchType;
+import javax.persistence.ManyToMany;
 import javax.persistence.ManyToOne;
+import javax.persistence.OneToMany;
 import javax.persistence.OneToOne;
 import javax.persistence.metamodel.EntityType;
 import javax.persistence.metamodel.PluralAttribute;
@@ -34,8 +49,11 @@ import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
+import org.hibernate.StatelessSession;
 import org.hibernate.annotations.LazyToOne;
 import org.hibernate.annotations.LazyToOneOption;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
 
 /**
  * <p>
@@ -75,9 +93,19 @@ import org.hibernate.annotations.LazyToOneOption;
  *   UUID fooId;
  * }</pre>
  * <p>
+ *     Only the attributes named in the entity graph are assigned. In particular, fetching one side of a bidirectional
+ *     {@code @ManyToMany} does not initialize the collections on the other side, as they would only contain the roots of the
+ *     fetch. Name the opposite attribute in a subgraph to have it loaded, with a query of its own.
+ * </p>
+ * <p>
  *     {@link FlatFetcher} needs to perform some reflection to figure out, how to perform the desired queries. These "query plans"
  *     are cached in a {@link FlatFetcher} instance, but not shared between flat fetcher instances. It is intended to be used
- *     with a proxied {@link EntityManager} and shared between threads.
+ *     with a proxied {@link EntityManager} and shared between threads. {@link #warmUp()} prepares the plans for all named
+ *     entity graphs up front.
+ * </p>
+ * <p>
+ *     {@link FetchListener}s ({@link #addFetchListener(FetchListener)}) receive timings and counts per fetch, graph node,
+ *     attribute and chunk query, for instance to publish them as metrics ({@link MicrometerFetchListener}).
  * </p>
  * <p>
  *     While concurrent use of {@link FlatFetcher} may result in some duplicate work when determining query plans,
@@ -92,29 +120,97 @@ public class FlatFetcher {
 	final EntityManager em;
 
 	/**
-	 * <p>Upper limit on how many rows to request in a single query.</p>
-	 * <p>The {@link FlatFetcher} mostly produces
-	 * {@code where ... in (...)} queries, which Hibernate translates as {@code where ... in (?, ?, ..., ?)}. Some RDBMSs,
-	 * such as Oracle DB, have limits on how long an SQL query can be and how long the {@code in} list can be.</p>
+	 * The options used by {@link #fetch(Class, Collection, String)}. Can be overridden for individual calls via
+	 * {@link #fetch(Class, Collection, String, FetchOptions)}.
 	 */
 	@Getter
 	@Setter
-	volatile int batchSize = 500;
+	@lombok.NonNull
+	volatile FetchOptions defaultOptions = FetchOptions.DEFAULT;
 
 	/**
-	 * A tuple of a collection of {@link #roots()} and the union of a {@link javax.persistence.EntityGraph}
-	 * and {@link javax.persistence.Subgraph}.
-	 * @param <X> The type of entity that the graph object describes fetching for.
+	 * Counters on the queries issued by this {@link FlatFetcher}.
+	 */
+	@Getter
+	final FetchStatistics statistics = new FetchStatistics();
+
+	final BatchSizing batchSizing = new BatchSizing();
+
+	/**
+	 * Reports lazy loads on the entities of (a sample of) the fetched graphs. {@code null} (the default) disables detection.
+	 */
+	@Getter
+	volatile LazyLoadDetector lazyLoadDetector;
+
+	final FetchListeners listeners = new FetchListeners();
+
+	/**
+	 * Replaces the {@link #getLazyLoadDetector() lazy load detector}. The previous detector is
+	 * {@link LazyLoadDetector#uninstall() uninstalled}.
 	 */
-	interface FetchNode<X> {
+	public synchronized void setLazyLoadDetector(LazyLoadDetector lazyLoadDetector) {
+		var previous = this.lazyLoadDetector;
+		this.lazyLoadDetector = lazyLoadDetector;
+		if (previous != null && previous != lazyLoadDetector) {
+			previous.uninstall();
+		}
+	}
 
-		String name();
+	/**
+	 * Reports the fetches of this {@link FlatFetcher} to {@code listener}, starting with the next fetch.
+	 */
+	public void addFetchListener(FetchListener listener) {
+		listeners.add(listener);
+	}
 
-		Class<X> tag();
+	/**
+	 * Stops reporting fetches to {@code listener}.
+	 * @return {@code false} if {@code listener} had not been added.
+	 */
+	public boolean removeFetchListener(FetchListener listener) {
+		return listeners.remove(listener);
+	}
 
-		List<AttributeNode<?>> attributeNodes();
+	/**
+	 * @see FetchOptions#getBatchSize()
+	 */
+	public int getBatchSize() {
+		return defaultOptions.getBatchSize();
+	}
 
-		Collection<X> roots();
+	/**
+	 * Updates the {@link #getDefaultOptions() default options}.
+	 * @see FetchOptions#getBatchSize()
+	 */
+	public synchronized void setBatchSize(int batchSize) {
+		defaultOptions = defaultOptions.withBatchSize(batchSize);
+	}
+
+	/**
+	 * @see FetchOptions#getExecutor()
+	 */
+	public Executor getExecutor() {
+		return defaultOptions.getExecutor();
+	}
+
+	/**
+	 * Updates the {@link #getDefaultOptions() default options}.
+	 * @see FetchOptions#getExecutor()
+	 */
+	public synchronized void setExecutor(Executor executor) {
+		defaultOptions = defaultOptions.withExecutor(executor);
+	}
+
+	/**
+	 * A tuple of a collection of {@link #roots} and a node of a {@link GraphPlan} (the compiled form of a
+	 * {@link javax.persistence.EntityGraph} or {@link javax.persistence.Subgraph}).
+	 * @param <X> The type of entity that the graph object describes fetching for.
+	 */
+	@RequiredArgsConstructor
+	static class FetchNode<X> {
+		final FetchListener.Fetch fetch;
+		final GraphPlan.Node<X> graphNode;
+		final Collection<X> roots;
 	}
 
 	@Value
@@ -129,6 +225,16 @@ public class FlatFetcher {
 	@SuppressWarnings("rawtypes")
 	final ConcurrentHashMap<PlanKey, FetchPlan> attributePlanCache = new ConcurrentHashMap<>();
 
+	@Value
+	static class GraphKey {
+		@lombok.NonNull
+		Class<?> tag;
+		@lombok.NonNull
+		String entityGraphName;
+	}
+
+	final ConcurrentHashMap<GraphKey, GraphPlan<?>> graphPlanCache = new ConcurrentHashMap<>();
+
 	/**
 	 * <p>
 	 * Fetches associated entities for the associations included in the {@code @}{@link javax.persistence.NamedEntityGraph} with
@@ -137,133 +243,780 @@ public class FlatFetcher {
 	 * <p>
 	 *     Fills forward and, where possible, backwards (mappedBy) relations.
 	 * </p>
+	 * <p>
+	 *     Associations that are already initialized on a root (by an earlier fetch or by lazy loading) are left alone.
+	 *     Subgraphs are still fetched for the entities they contain. This makes it cheap to fetch several graphs over the
+	 *     same roots one after the other.
+	 * </p>
 	 * @param tag Entity type on which entity graph attributes are looked up.
 	 * @param roots The entities for which to fetch the associations listed in the entity graph
 	 * @param entityGraphName The name of the entity graph that indicates <em>which</em> associations to fetch for {@code roots}.
 	 * @param <X> The type of entities to fetch associations for.
-	 * @see #setBatchSize(int)
+	 * @see #setDefaultOptions(FetchOptions)
 	 */
 	public <X> void fetch(Class<X> tag, Collection<X> roots, String entityGraphName) {
+		fetch(tag, roots, entityGraphName, defaultOptions);
+	}
+
+	/**
+	 * Like {@link #fetch(Class, Collection, String)}, but with {@code options} instead of the
+	 * {@link #getDefaultOptions() default options}.
+	 * @param options The settings to use for this call.
+	 */
+	public <X> void fetch(Class<X> tag, Collection<X> roots, String entityGraphName, FetchOptions options) {
+		fetch(FetchSession.attached(em), tag, roots, entityGraphName, options);
+	}
+
+	/**
+	 * <p>
+	 * Like {@link #fetch(Class, Collection, String)}, but for {@code roots} that have been loaded with a
+	 * {@link StatelessSession}. The associated entities are loaded with {@code session} as well, and stitched together into a
+	 * graph of detached entities. This includes the back references ({@code mappedBy}).
+	 * </p>
+	 * <p>
+	 *     There is no persistence context involved: no first-level cache, no snapshots for dirty checking and no flushes.
+	 *     This makes detached fetches a good fit for read-only bulk jobs, such as exports. As a stateless session has no
+	 *     identity map, an entity that can be reached via multiple paths of the entity graph is loaded once per path.
+	 * </p>
+	 * <p>
+	 *     With an {@link FetchOptions#getExecutor() executor}, the chunk queries run on stateless sessions of their own.
+	 * </p>
+	 * @param session The stateless session to load the associated entities with.
+	 * @see #fetch(Class, Collection, String)
+	 */
+	public <X> void fetchDetached(StatelessSession session, Class<X> tag, Collection<X> roots, String entityGraphName) {
+		fetchDetached(session, tag, roots, entityGraphName, defaultOptions);
+	}
+
+	/**
+	 * Like {@link #fetchDetached(StatelessSession, Class, Collection, String)}, but with {@code options} instead of the
+	 * {@link #getDefaultOptions() default options}.
+	 * @param options The settings to use for this call.
+	 */
+	public <X> void fetchDetached(StatelessSession session, Class<X> tag, Collection<X> roots, String entityGraphName,
+			FetchOptions options) {
+		fetch(FetchSession.detached(session), tag, roots, entityGraphName, options);
+	}
+
+	/**
+	 * <p>
+	 * Like {@link #fetch(Class, Collection, String)}, but for a root set that is too large to keep in memory, together with
+	 * its entity graph, at once. Takes {@code windowSize} roots at a time from {@code roots}, fetches the entity graph for them
+	 * and hands them to {@code consumer}. Afterwards, the persistence context is cleared before the next window is taken
+	 * from {@code roots}. Memory usage therefore depends on {@code windowSize}, not on the number of roots.
+	 * </p>
+	 * <p>
+	 *     The roots can come straight from {@link javax.persistence.TypedQuery#getResultStream()}. A root is only taken from
+	 *     {@code roots} after the previous window has been cleared, so it is still managed when its window gets fetched.
+	 *     Entities from earlier windows are detached and must not be used after {@code consumer} returns. Clearing affects
+	 *     everything else in the persistence context as well. This is meant for read-only transactions: if there are
+	 *     changes that have not been flushed at the end of a window, a {@link FlatFetcherException} is thrown instead of
+	 *     clearing them.
+	 * </p>
+	 * @param roots The entities to fetch the associations for. Closing the stream is up to the caller.
+	 * @param windowSize The maximum number of roots to fetch and hand to {@code consumer} at once.
+	 * @param consumer Receives each window of roots, with the entity graph fetched.
+	 * @see #fetch(Class, Collection, String)
+	 */
+	public <X> void fetchWindowed(Class<X> tag, Stream<X> roots, String entityGraphName, int windowSize,
+			Consumer<? super List<X>> consumer) {
+		fetchWindowed(tag, roots.iterator(), entityGraphName, windowSize, consumer);
+	}
+
+	/**
+	 * Like {@link #fetchWindowed(Class, Stream, String, int, Consumer)}, but with {@code options} instead of the
+	 * {@link #getDefaultOptions() default options}.
+	 * @param options The settings to use for each window.
+	 */
+	public <X> void fetchWindowed(Class<X> tag, Stream<X> roots, String entityGraphName, int windowSize,
+			FetchOptions options, Consumer<? super List<X>> consumer) {
+		fetchWindowed(tag, roots.iterator(), entityGraphName, windowSize, options, consumer);
+	}
+
+	/**
+	 * Like {@link #fetchWindowed(Class, Stream, String, int, Consumer)}, but takes the roots from an {@link Iterator}.
+	 */
+	public <X> void fetchWindowed(Class<X> tag, Iterator<X> roots, String entityGraphName, int windowSize,
+			Consumer<? super List<X>> consumer) {
+		fetchWindowed(tag, roots, entityGraphName, windowSize, defaultOptions, consumer);
+	}
+
+	/**
+	 * Like {@link #fetchWindowed(Class, Iterator, String, int, Consumer)}, but with {@code options} instead of the
+	 * {@link #getDefaultOptions() default options}.
+	 * @param options The settings to use for each window.
+	 */
+	public <X> void fetchWindowed(Class<X> tag, Iterator<X> roots, String entityGraphName, int windowSize,
+			FetchOptions options, Consumer<? super List<X>> consumer) {
+		fetchWindowed(FetchSession.attached(em), tag, roots, entityGraphName, windowSize, options, consumer);
+	}
+
+	/**
+	 * Like {@link #fetchWindowed(Class, Stream, String, int, Consumer)}, but for roots that are loaded with a
+	 * {@link StatelessSession}, see {@link #fetchDetached(StatelessSession, Class, Collection, String)}. There is no
+	 * persistence context to clear. Each window becomes garbage as soon as {@code consumer} lets go of it.
+	 */
+	public <X> void fetchDetachedWindowed(StatelessSession session, Class<X> tag, Stream<X> roots, String entityGraphName,
+			int windowSize, Consumer<? super List<X>> consumer) {
+		fetchDetachedWindowed(session, tag, roots, entityGraphName, windowSize, defaultOptions, consumer);
+	}
+
+	/**
+	 * Like {@link #fetchDetachedWindowed(StatelessSession, Class, Stream, String, int, Consumer)}, but with {@code options}
+	 * instead of the {@link #getDefaultOptions() default options}.
+	 * @param options The settings to use for each window.
+	 */
+	public <X> void fetchDetachedWindowed(StatelessSession session, Class<X> tag, Stream<X> roots, String entityGraphName,
+			int windowSize, FetchOptions options, Consumer<? super List<X>> consumer) {
+		fetchWindowed(FetchSession.detached(session), tag, roots.iterator(), entityGraphName, windowSize, options, consumer);
+	}
+
+	private <X> void fetchWindowed(FetchSession fetchSession, Class<X> tag, Iterator<X> roots, String entityGraphName,
+			int windowSize, FetchOptions options, Consumer<? super List<X>> consumer) {
+		if (windowSize <= 0) {
+			throw new IllegalArgumentException("Window size must be strictly positive.");
+		}
+		var window = new ArrayList<X>(windowSize);
+		// Only ask for the next root once the previous window is done: scrolling results hydrate the entity on next().
+		while (roots.hasNext()) {
+			window.add(roots.next());
+			if (window.size() == windowSize) {
+				fetchWindow(fetchSession, tag, window, entityGraphName, options, consumer);
+				window = new ArrayList<>(windowSize);
+			}
+		}
+		if (!window.isEmpty()) {
+			fetchWindow(fetchSession, tag, window, entityGraphName, options, consumer);
+		}
+	}
+
+	private <X> void fetchWindow(FetchSession fetchSession, Class<X> tag, List<X> window, String entityGraphName,
+			FetchOptions options, Consumer<? super List<X>> consumer) {
+		fetch(fetchSession, tag, window, entityGraphName, options);
+		consumer.accept(Collections.unmodifiableList(window));
+		fetchSession.endWindow();
+		var detector = lazyLoadDetector;
+		if (detector != null) {
+			detector.forget(fetchSession.session());
+		}
+	}
+
+	/**
+	 * <p>
+	 * Loads the entities with the primary keys {@code ids} together with the entity graph on {@code executor}, without
+	 * blocking the calling thread.
+	 * </p>
+	 * <p>
+	 *     The calling thread's {@link EntityManager} and transaction are not involved. The fetch runs on a
+	 *     {@link StatelessSession} of its own, inside a transaction that is rolled back at the end, like
+	 *     {@link #fetchDetached(StatelessSession, Class, Collection, String)}. The result is a graph of detached entities.
+	 *     Any executor will do, including one that starts a virtual thread per task. With
+	 *     {@link FetchOptions#getExecutor()}, the chunk queries of the fetch run concurrently on that executor.
+	 * </p>
+	 * @param tag Entity type on which entity graph attributes are looked up.
+	 * @param ids The primary keys of the root entities. Duplicates and {@code null}s are ignored.
+	 * @param entityGraphName The name of the entity graph that indicates <em>which</em> associations to fetch.
+	 * @param executor Runs the fetch.
+	 * @param <X> The type of the root entities.
+	 * @return The root entities that exist, in no particular order. Completes exceptionally if the fetch fails.
+	 */
+	public <X> CompletableFuture<List<X>> fetchAsync(Class<X> tag, Collection<?> ids, String entityGraphName,
+			Executor executor) {
+		return fetchAsync(tag, ids, entityGraphName, executor, defaultOptions);
+	}
+
+	/**
+	 * Like {@link #fetchAsync(Class, Collection, String, Executor)}, but with {@code options} instead of the
+	 * {@link #getDefaultOptions() default options}.
+	 * @param options The settings to use for this call.
+	 */
+	public <X> CompletableFuture<List<X>> fetchAsync(Class<X> tag, Collection<?> ids, String entityGraphName,
+			Executor executor, FetchOptions options) {
+		var keys = PlanUtils.distinctKeys(ids.stream());
+		return CompletableFuture.supplyAsync(() -> WorkerSessions.stateless(sessionFactory(), session -> {
+			var roots = loadRoots(session, tag, keys, options);
+			fetch(FetchSession.detached((StatelessSession) session), tag, roots, entityGraphName, options);
+			return roots;
+		}), executor);
+	}
+
+	/**
+	 * <p>
+	 * Like {@link #fetchAsync(Class, Collection, String, Executor)}, but publishes the root entities one window of
+	 * {@code windowSize} ids at a time, as soon as the entity graph of the window is complete.
+	 * </p>
+	 * <p>
+	 *     Every subscriber gets a fetch of its own. The fetch runs on {@code executor} and pauses whenever the subscriber
+	 *     falls behind by more than {@link Flow#defaultBufferSize()} roots. It stops after the window in progress when the
+	 *     subscriber cancels. Signals are delivered on {@code executor} as well, so it needs to be able to run at least
+	 *     two tasks at once.
+	 * </p>
+	 * @param windowSize The maximum number of roots to load and fetch the entity graph for at once.
+	 * @param executor Runs the fetch and delivers the roots.
+	 */
+	public <X> Flow.Publisher<X> fetchPublisher(Class<X> tag, Collection<?> ids, String entityGraphName, int windowSize,
+			Executor executor) {
+		return fetchPublisher(tag, ids, entityGraphName, windowSize, executor, defaultOptions);
+	}
+
+	/**
+	 * Like {@link #fetchPublisher(Class, Collection, String, int, Executor)}, but with {@code options} instead of the
+	 * {@link #getDefaultOptions() default options}.
+	 * @param options The settings to use for each window.
+	 */
+	public <X> Flow.Publisher<X> fetchPublisher(Class<X> tag, Collection<?> ids, String entityGraphName, int windowSize,
+			Executor executor, FetchOptions options) {
+		if (windowSize <= 0) {
+			throw new IllegalArgumentException("Window size must be strictly positive.");
+		}
+		var keys = PlanUtils.distinctKeys(ids.stream());
+		return subscriber -> {
+			var publisher = new SubmissionPublisher<X>(executor, Flow.defaultBufferSize());
+			publisher.subscribe(subscriber);
+			executor.execute(() -> {
+				try {
+					WorkerSessions.stateless(sessionFactory(), session -> {
+						var windows = PlanUtils.chunks(keys.stream(), windowSize).iterator();
+						while (windows.hasNext() && publisher.hasSubscribers()) {
+							var roots = loadRoots(session, tag, windows.next(), options);
+							fetch(FetchSession.detached((StatelessSession) session), tag, roots, entityGraphName, options);
+							// blocks while the subscriber's buffer is full
+							roots.forEach(publisher::submit);
+						}
+						return null;
+					});
+					publisher.close();
+				}
+				catch (RuntimeException e) {
+					publisher.closeExceptionally(e);
+				}
+				catch (Error e) {
+					// the subscriber would otherwise wait forever
+					publisher.closeExceptionally(e);
+					throw e;
+				}
+			});
+		};
+	}
+
+	@Value
+	static class RootQueryKey {
+		@lombok.NonNull
+		Class<?> tag;
+		@lombok.NonNull
+		KeySetTransport transport;
+	}
+
+	final ConcurrentHashMap<RootQueryKey, KeySetQuery<?>> rootQueryCache = new ConcurrentHashMap<>();
+
+	private SessionFactoryImplementor sessionFactory() {
+		return em.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <X> List<X> loadRoots(SharedSessionContractImplementor session, Class<X> tag, List<?> ids,
+			FetchOptions options) {
+		var query = (KeySetQuery<X>) rootQueryCache.computeIfAbsent(new RootQueryKey(tag, options.getKeySetTransport()), k -> {
+			var rootType = session.getFactory().getMetamodel().entity(tag);
+			return k.transport.compile(session.getFactory(), rootType, Accessor.forPrimaryKeyOf(rootType).singularAttr());
+		});
+		var roots = new ArrayList<X>(ids.size());
+		var batchSize = batchSizing.batchSize(session.getFactory(), options);
+		PlanUtils.keyChunks(ids, options, batchSize).forEach(chunk -> roots.addAll(query.load(session, chunk, options)));
+		return roots;
+	}
+
+	private <X> void fetch(FetchSession fetchSession, Class<X> tag, Collection<X> roots, String entityGraphName,
+			FetchOptions options) {
+		if (options.getParallelism() <= 0) {
+			throw new IllegalArgumentException("Parallelism must be strictly positive.");
+		}
 		if (roots.isEmpty()) {
 			return;
 		}
 		if (log.isDebugEnabled()) {
 			log.debug("Begin flat fetch([{}...; {}], {}) cached plans: {}", tag.getSimpleName(), roots.size(), entityGraphName,
-					attributePlanCache.size());
+					graphPlanCache.size());
+		}
+		var fetch = new FetchListener.Fetch(tag, entityGraphName, roots.size());
+		var start = System.nanoTime();
+		if (listeners.isActive()) {
+			listeners.fetchStarted(fetch);
 		}
-		var graph = em.getEntityGraph(entityGraphName);
-
 		List<FetchNode<?>> fetchQueue = new ArrayList<>();
-		fetchQueue.add(new FetchNode<X>() {
-			@Override
-			public String name() {
-				return entityGraphName;
+		try {
+			var graphPlan = graphPlanFor(tag, entityGraphName);
+			fetchQueue.add(new FetchNode<>(fetch, graphPlan.root, roots));
+			fetchRecursively(fetchQueue, options, fetchSession);
+		}
+		catch (RuntimeException | Error e) {
+			if (listeners.isActive()) {
+				listeners.fetchFinished(fetch, System.nanoTime() - start, e);
 			}
+			throw e;
+		}
+		if (listeners.isActive()) {
+			listeners.fetchFinished(fetch, System.nanoTime() - start, null);
+		}
+
+		var detector = lazyLoadDetector;
+		if (detector != null && fetchSession.stitchEntityManager() != null && detector.sample()) {
+			detector.track(fetchSession.session(), entityGraphName, fetchedEntities(fetchQueue));
+		}
+	}
 
-			@Override
-			public Class<X> tag() {
-				return tag;
+	/**
+	 * All entities of a completed fetch: the roots of all fetch nodes and everything associated via the fetched attributes.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Collection<Object> fetchedEntities(List<FetchNode<?>> fetchQueue) {
+		var entities = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (var fetchNode : fetchQueue) {
+			entities.addAll(fetchNode.roots);
+			for (var edge : fetchNode.graphNode.edges) {
+				entities.addAll(edge.plan.associated((Collection) fetchNode.roots));
 			}
+		}
+		return entities;
+	}
 
-			@Override
-			public List<AttributeNode<?>> attributeNodes() {
-				return graph.getAttributeNodes();
+	/**
+	 * <p>
+	 * Compiles the plans of all {@code @}{@link javax.persistence.NamedEntityGraph}s for all entity types in the metamodel
+	 * ahead of time, so that the first fetch of each graph doesn't have to pay for the reflection. Intended to be called
+	 * once at startup, for instance right after creating the {@link FlatFetcher} bean.
+	 * </p>
+	 * <p>
+	 *     Also compiles the chunk queries for the {@link FetchOptions#getKeySetTransport() key set transport} of the
+	 *     {@link #getDefaultOptions() default options}. Entity graphs that flat fetcher doesn't support are logged and skipped.
+	 *     Fetching them fails just like without warm-up.
+	 * </p>
+	 * @return The number of (entity type, entity graph) combinations that have been compiled.
+	 */
+	public int warmUp() {
+		var factory = sessionFactory();
+		var transport = defaultOptions.getKeySetTransport();
+		var compiled = 0;
+		for (var entityType : factory.getMetamodel().getEntities()) {
+			for (var graph : factory.findEntityGraphsByJavaType(entityType.getJavaType())) {
+				try {
+					var graphPlan = graphPlanFor(entityType.getJavaType(), graph.getName());
+					compileKeySetQueries(factory, graphPlan.root, transport);
+					compiled += 1;
+				}
+				catch (FlatFetcherException | IllegalArgumentException e) {
+					log.warn("Skipping warm-up of entity graph {} for {}: {}", graph.getName(), entityType.getName(),
+							e.getMessage());
+				}
 			}
+		}
+		if (log.isDebugEnabled()) {
+			log.debug("Warmed up {} entity graphs, cached plans: {}", compiled, attributePlanCache.size());
+		}
+		return compiled;
+	}
 
-			@Override
-			public Collection<X> roots() {
-				return roots;
+	private static void compileKeySetQueries(SessionFactoryImplementor factory, GraphPlan.Node<?> node,
+			KeySetTransport transport) {
+		for (var edge : node.edges) {
+			if (!(edge.plan instanceof LinkTablePlan) || !((LinkTablePlan<?, ?>) edge.plan).loadsTargetsWithLinks()) {
+				edge.plan.keySetQuery(factory, transport);
 			}
-		});
-		fetchRecursively(fetchQueue);
+			for (var subgraph : edge.subgraphs) {
+				compileKeySetQueries(factory, subgraph, transport);
+			}
+		}
 	}
 
-	@SuppressWarnings({ "unchecked", "rawtypes" })
-	private void fetchRecursively(List<FetchNode<?>> fetchQueue) {
-		var fetchNodeIndex = 0;
-		while(fetchNodeIndex < fetchQueue.size()){
-			var fetchNode = fetchQueue.get(fetchNodeIndex);
-			fetchNodeIndex += 1;
+	@SuppressWarnings("unchecked")
+	<X> GraphPlan<X> graphPlanFor(Class<X> tag, String entityGraphName) {
+		return (GraphPlan<X>) graphPlanCache.computeIfAbsent(new GraphKey(tag, entityGraphName), k -> {
 			if (log.isDebugEnabled()) {
-				log.debug("Flat fetch([{}...; {}], {}) step {}/{}",
-						fetchNode.tag().getSimpleName(), fetchNode.roots().size(), fetchNode.name(),
-						fetchNodeIndex, fetchQueue.size());
+				log.debug("Compiling entity graph {} for {}", entityGraphName, tag.getSimpleName());
 			}
-			var currentRootType = em.getMetamodel().entity(fetchNode.tag());
-			for (AttributeNode<?> attributeNode : fetchNode.attributeNodes()) {
-				// cast via raw FetchNode is necessary because Java doesn't figure out that the existentials on fetchNode and
-				// currentRootType originate from the same object (fetchNode).
-				fetchAttribute(fetchQueue, (FetchNode) fetchNode, currentRootType, attributeNode);
+			var start = System.nanoTime();
+			var factory = sessionFactory();
+			var graph = factory.findEntityGraphByName(entityGraphName);
+			if (graph == null) {
+				throw new IllegalArgumentException("Could not locate EntityGraph with given name: " + entityGraphName);
 			}
+			var graphPlan = GraphPlan.compile(this, factory.getMetamodel(), tag, entityGraphName, graph.getAttributeNodes());
+			if (listeners.isActive()) {
+				listeners.planCompiled(new FetchListener.PlanCompilation(tag, entityGraphName, true,
+						System.nanoTime() - start));
+			}
+			return graphPlan;
+		});
+	}
+
+	/**
+	 * <p>
+	 * Loads the entities with the primary keys {@code ids} and their associations as {@link ProjectionRow}s instead of managed
+	 * entities. Only selects the basic attributes that are explicitly listed in the entity graph (and subgraphs), plus the
+	 * key attributes that are necessary to stitch the rows together.
+	 * </p>
+	 * <p>
+	 *     The associations are loaded with the same number of queries as {@link #fetch(Class, Collection, String)}, but
+	 *     nothing gets registered with the persistence context. This makes projections a good fit for read-only views of
+	 *     wide tables, where only a few columns are needed.
+	 * </p>
+	 * <p>Example:</p>
+	 * <pre>{@code
+	 *   @NamedEntityGraph(name = "Car.summary", attributeNodes = {
+	 *       @NamedAttributeNode("name"),
+	 *       @NamedAttributeNode(value = "doors", subgraph = "doorSummary")
+	 *   }, subgraphs = @NamedSubgraph(name = "doorSummary", attributeNodes = @NamedAttributeNode("open")))
+	 * }</pre>
+	 * @param tag Entity type on which entity graph attributes are looked up.
+	 * @param ids The primary keys of the root entities. Duplicates and {@code null}s are ignored.
+	 * @param entityGraphName The name of the entity graph that lists the attributes and associations to load.
+	 * @param <X> The type of the root entities.
+	 * @return One row per root entity that exists, in no particular order. Never {@code null}.
+	 */
+	public <X> List<ProjectionRow> fetchProjection(Class<X> tag, Collection<?> ids, String entityGraphName) {
+		return fetchProjection(tag, ids, entityGraphName, defaultOptions);
+	}
+
+	/**
+	 * Like {@link #fetchProjection(Class, Collection, String)}, but with {@code options} instead of the
+	 * {@link #getDefaultOptions() default options}. Projections always run on the calling thread and always use
+	 * {@link KeySetTransport#inList()}, so {@link FetchOptions#getExecutor()}, {@link FetchOptions#getKeySetTransport()} and
+	 * {@link FetchOptions#isReadOnly()} do not apply.
+	 * @param options The settings to use for this call.
+	 */
+	public <X> List<ProjectionRow> fetchProjection(Class<X> tag, Collection<?> ids, String entityGraphName,
+			FetchOptions options) {
+		if (ids.isEmpty()) {
+			return List.of();
 		}
+		if (log.isDebugEnabled()) {
+			log.debug("Begin flat projection([{}...; {}], {})", tag.getSimpleName(), ids.size(), entityGraphName);
+		}
+		var graph = em.getEntityGraph(entityGraphName);
+		return new ProjectionFetch(this, em, options).fetch(em.getMetamodel().entity(tag), ids, graph.getAttributeNodes());
 	}
 
-	private <X, A> void fetchAttribute(List<FetchNode<?>> fetchQueue, FetchNode<X> fetchNode,
-			EntityType<X> currentRootType, AttributeNode<A> attributeNode) {
-		FetchPlan<X, A> planForNode = fetchPlanFor(currentRootType, attributeNode);
-		var subRoots = planForNode.fetch(em, fetchNode.roots(), getBatchSize());
-		if(!subRoots.isEmpty()) {
-			for (var subgraphEntry : attributeNode.getSubgraphs().entrySet()) {
-				var subgraphName = fetchNode.name() + "." + attributeNode.getAttributeName()
-						+ "<" + subgraphEntry.getKey().getSimpleName() + ">";
-				// This is probably closer to `? super A`, but that's not something that we can instantiate directly.
-				// As we'll throw away the type information the moment, we add the FetchNode to the fetchQueue, the imprecision
-				// doesn't have any impact.
-				fetchQueue.add(new FetchNode<A>() {
-					@Override
-					public String name() {
-						return subgraphName;
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private void fetchRecursively(List<FetchNode<?>> fetchQueue, FetchOptions options, FetchSession fetchSession) {
+		var levelStart = 0;
+		// The attributes of all fetch nodes on the same level only depend on the level before. With an executor, they are
+		// loaded concurrently, but stitched to their roots one after the other on the calling thread.
+		while (levelStart < fetchQueue.size()) {
+			var levelEnd = fetchQueue.size();
+			var pendingAttributes = new ArrayList<PendingAttribute<?, ?>>();
+			for (var fetchNodeIndex = levelStart; fetchNodeIndex < levelEnd; fetchNodeIndex++) {
+				var fetchNode = fetchQueue.get(fetchNodeIndex);
+				if (log.isDebugEnabled()) {
+					log.debug("Flat fetch([{}...; {}], {}) step {}/{}",
+							fetchNode.graphNode.type.getJavaType().getSimpleName(), fetchNode.roots.size(),
+							fetchNode.graphNode.name, fetchNodeIndex + 1, fetchQueue.size());
+				}
+				if (listeners.isActive()) {
+					listeners.nodeStarted(new FetchListener.NodeFetch(fetchNode.fetch, fetchNode.graphNode.name,
+							fetchNode.graphNode.type.getJavaType(), fetchNode.roots.size()));
+				}
+				for (var edge : fetchNode.graphNode.edges) {
+					// cast via raw FetchNode is necessary because Java doesn't figure out that the existentials on fetchNode and
+					// edge originate from the same object (fetchNode).
+					var pending = prepareAttribute((FetchNode) fetchNode, (GraphPlan.Edge) edge, options, fetchSession);
+					if (options.getExecutor() == null) {
+						fetchAttribute(fetchQueue, pending, options, fetchSession);
 					}
-
-					@SuppressWarnings("unchecked")
-					@Override
-					public Class<A> tag() {
-						return subgraphEntry.getKey();
+					else {
+						pendingAttributes.add(pending);
 					}
+				}
+			}
+			fetchConcurrently(fetchQueue, pendingAttributes, options, fetchSession);
+			levelStart = levelEnd;
+		}
+	}
 
-					@SuppressWarnings("unchecked")
-					@Override
-					public List<AttributeNode<?>> attributeNodes() {
-						return subgraphEntry.getValue().getAttributeNodes();
-					}
+	/**
+	 * An attribute of a {@link FetchNode} together with its {@link FetchPlan} and the state of its chunk loads.
+	 */
+	@RequiredArgsConstructor
+	static class PendingAttribute<X, A> {
+		final FetchNode<X> fetchNode;
+		final GraphPlan.Edge<X, A> edge;
+		final FetchPlan<X, A> plan;
+		/**
+		 * JPA entity name and attribute name, such as {@code "Car.doors"}.
+		 */
+		final String attributeName;
+		final long startNanos;
+		/**
+		 * The roots on which the attribute has not been initialized yet. Only these get queried and stitched.
+		 */
+		final List<X> uninitializedRoots;
+		/**
+		 * The entities associated with the other roots. Subgraphs still get fetched for them.
+		 */
+		final Collection<A> alreadyAssociated;
+		final List<A> loaded = new ArrayList<>();
+		/**
+		 * The links between the roots and the targets, for {@link LinkTablePlan}s. {@code null} for all other plans.
+		 */
+		List<LinkTablePlan.Link> links;
+		int linkQueries;
+		List<List<?>> chunks;
+		int remainingChunks;
+		int keyCount;
+		int cachedKeyCount;
+	}
 
-					@Override
-					public Collection<A> roots() {
-						return subRoots;
-					}
-				});
+	@RequiredArgsConstructor
+	static class InFlightChunk<X, A> {
+		final PendingAttribute<X, A> attribute;
+		final CompletableFuture<List<A>> detachedResult;
+	}
+
+	@SuppressWarnings("unchecked")
+	private <X, A> PendingAttribute<X, A> prepareAttribute(FetchNode<X> fetchNode, GraphPlan.Edge<X, A> edge,
+			FetchOptions options, FetchSession fetchSession) {
+		var start = System.nanoTime();
+		var plan = edge.plan;
+		// Associations that an earlier fetch (or lazy loading) has already initialized are neither queried nor replaced.
+		var uninitializedRoots = new ArrayList<X>(fetchNode.roots.size());
+		var initializedRoots = new ArrayList<X>();
+		for (var root : fetchNode.roots) {
+			(plan.isInitialized(root) ? initializedRoots : uninitializedRoots).add(root);
+		}
+		if (log.isDebugEnabled() && !initializedRoots.isEmpty()) {
+			log.debug("Flat fetch({}) {} of {} roots already have {} initialized", fetchNode.graphNode.name,
+					initializedRoots.size(), fetchNode.roots.size(), edge.attributeName);
+		}
+		var pending = new PendingAttribute<>(fetchNode, edge, plan,
+				fetchNode.graphNode.type.getName() + "." + edge.attributeName, start, uninitializedRoots,
+				plan.associated(initializedRoots));
+		var keys = PlanUtils.distinctKeys(plan.keys(uninitializedRoots).stream());
+		if (plan instanceof LinkTablePlan) {
+			var linkPlan = (LinkTablePlan<X, A>) plan;
+			pending.links = loadLinks(pending, linkPlan, keys, options, fetchSession);
+			if (linkPlan.loadsTargetsWithLinks()) {
+				pending.links.forEach(link -> pending.loaded.add((A) link.getTarget()));
+				for (var targetPlan : linkPlan.targetPlans()) {
+					fetchTargetPlan(pending, targetPlan, options, fetchSession);
+				}
+				pending.keyCount = keys.size();
+				pending.chunks = List.of();
+				return pending;
+			}
+			// The chunk queries load the targets of the links, not the targets of the roots.
+			keys = PlanUtils.distinctKeys(pending.links.stream().map(LinkTablePlan.Link::getTarget));
+		}
+		// Entities that are already managed or cached don't need to be queried. If all of them are, there are no chunks at all.
+		var misses = fetchSession.resolveCached(pending.plan, keys, pending.loaded, statistics);
+		pending.keyCount = keys.size();
+		pending.cachedKeyCount = keys.size() - misses.size();
+		var batchSize = batchSizing.batchSize(sessionFactory(), plan, pending.attributeName, options);
+		pending.chunks = PlanUtils.keyChunks(misses, options, batchSize).collect(toList());
+		pending.remainingChunks = pending.chunks.size();
+		return pending;
+	}
+
+	/**
+	 * Queries the links of a {@link LinkTablePlan} on the calling thread, in chunks of root keys. The link queries always
+	 * render an {@code in} list, whatever the {@link FetchOptions#getKeySetTransport() transport}.
+	 */
+	private <X, A> List<LinkTablePlan.Link> loadLinks(PendingAttribute<X, A> pending, LinkTablePlan<X, A> plan,
+			List<?> rootKeys, FetchOptions options, FetchSession fetchSession) {
+		var session = fetchSession.session();
+		var linkOptions = options.withKeySetTransport(KeySetTransport.inList());
+		var batchSize = batchSizing.batchSize(sessionFactory(), plan, pending.attributeName, linkOptions);
+		var links = new ArrayList<LinkTablePlan.Link>();
+		PlanUtils.keyChunks(rootKeys, linkOptions, batchSize).forEach(chunk -> {
+			statistics.recordLinkQuery(plan, chunk);
+			var start = System.nanoTime();
+			var chunkLinks = plan.loadLinks(session, chunk, linkOptions);
+			if (listeners.isActive()) {
+				listeners.chunkQueried(new FetchListener.ChunkQuery(pending.fetchNode.fetch, pending.attributeName,
+						PlanUtils.distinctKeyCount(chunk), chunkLinks.size(), System.nanoTime() - start));
+			}
+			pending.linkQueries += 1;
+			links.addAll(chunkLinks);
+		});
+		return links;
+	}
+
+	/**
+	 * Resolves an association of the targets that a {@link LinkTablePlan} has loaded with its links
+	 * ({@link LinkTablePlan#targetPlans()}), on the calling thread. The chunk queries are sized, counted and reported like
+	 * all others, under the name of the target association, such as {@code "Engine.car"}. They count towards the queries of
+	 * {@code pending}.
+	 */
+	private <X, A, B> void fetchTargetPlan(PendingAttribute<X, A> pending, FetchPlan<A, B> targetPlan, FetchOptions options,
+			FetchSession fetchSession) {
+		var targets = pending.loaded.stream().filter(target -> !targetPlan.isInitialized(target)).collect(toList());
+		if (targets.isEmpty()) {
+			return;
+		}
+		var session = fetchSession.session();
+		var attributeName = pending.plan.targetType().getName() + "." + targetPlan.rootAttribute().attr().getName();
+		// The link queries have just flushed. Another flush would only check the new targets, and read (load) exactly the
+		// associations that are about to be resolved.
+		var targetOptions = options.withAutoFlush(false);
+		var keys = PlanUtils.distinctKeys(targetPlan.keys(targets).stream());
+		var batchSize = batchSizing.batchSize(sessionFactory(), targetPlan, attributeName, targetOptions);
+		var loaded = new ArrayList<B>();
+		PlanUtils.keyChunks(keys, targetOptions, batchSize).forEach(chunk -> {
+			statistics.recordChunkQuery(targetPlan, targetOptions, chunk);
+			var start = System.nanoTime();
+			var rows = targetPlan.loadChunk(session, chunk, targetOptions);
+			var nanos = System.nanoTime() - start;
+			var keyCount = PlanUtils.distinctKeyCount(chunk);
+			batchSizing.record(targetPlan, keyCount, rows.size(), nanos);
+			if (listeners.isActive()) {
+				listeners.chunkQueried(new FetchListener.ChunkQuery(pending.fetchNode.fetch, attributeName, keyCount,
+						rows.size(), nanos));
+			}
+			pending.linkQueries += 1;
+			loaded.addAll(rows);
+		});
+		targetPlan.stitch(fetchSession.stitchEntityManager(), targets, loaded);
+	}
+
+	/**
+	 * Runs the chunk queries of {@code pendingAttributes} on the executor, keeping at most
+	 * {@link FetchOptions#getParallelism()} of them in flight. Results are re-attached in the order in which the chunks were
+	 * submitted, while later chunks are still running. Each attribute gets stitched as soon as all of its chunks are in.
+	 */
+	private void fetchConcurrently(List<FetchNode<?>> fetchQueue, List<PendingAttribute<?, ?>> pendingAttributes,
+			FetchOptions options, FetchSession fetchSession) {
+		var inFlight = new ArrayDeque<InFlightChunk<?, ?>>();
+		for (var pending : pendingAttributes) {
+			if (pending.chunks.isEmpty()) {
+				stitchAttribute(fetchQueue, pending, fetchSession);
+			}
+			for (var keys : pending.chunks) {
+				if (inFlight.size() >= options.getParallelism()) {
+					completeChunk(fetchQueue, inFlight.remove(), fetchSession);
+				}
+				inFlight.add(startChunk(pending, fetchSession, options, keys));
+			}
+		}
+		while (!inFlight.isEmpty()) {
+			completeChunk(fetchQueue, inFlight.remove(), fetchSession);
+		}
+	}
+
+	private <X, A> InFlightChunk<X, A> startChunk(PendingAttribute<X, A> pending, FetchSession fetchSession,
+			FetchOptions options, List<?> keys) {
+		statistics.recordChunkQuery(pending.plan, options, keys);
+		return new InFlightChunk<>(pending, CompletableFuture.supplyAsync(() -> {
+			var start = System.nanoTime();
+			var result = fetchSession.loadOnWorker(pending.plan, keys, options);
+			chunkQueried(pending, keys, result.size(), System.nanoTime() - start);
+			return result;
+		}, options.getExecutor()));
+	}
+
+	private void chunkQueried(PendingAttribute<?, ?> pending, List<?> keys, int rows, long nanos) {
+		var keyCount = PlanUtils.distinctKeyCount(keys);
+		batchSizing.record(pending.plan, keyCount, rows, nanos);
+		if (listeners.isActive()) {
+			listeners.chunkQueried(new FetchListener.ChunkQuery(pending.fetchNode.fetch, pending.attributeName, keyCount, rows,
+					nanos));
+		}
+	}
+
+	private <X, A> void completeChunk(List<FetchNode<?>> fetchQueue, InFlightChunk<X, A> chunk, FetchSession fetchSession) {
+		var pending = chunk.attribute;
+		pending.loaded.addAll(fetchSession.adopt(WorkerSessions.join(chunk.detachedResult)));
+		pending.remainingChunks -= 1;
+		if (pending.remainingChunks == 0) {
+			stitchAttribute(fetchQueue, pending, fetchSession);
+		}
+	}
+
+	private <X, A> void fetchAttribute(List<FetchNode<?>> fetchQueue, PendingAttribute<X, A> pending, FetchOptions options,
+			FetchSession fetchSession) {
+		var session = fetchSession.session();
+		for (var keys : pending.chunks) {
+			statistics.recordChunkQuery(pending.plan, options, keys);
+			var start = System.nanoTime();
+			var chunk = pending.plan.loadChunk(session, keys, options);
+			chunkQueried(pending, keys, chunk.size(), System.nanoTime() - start);
+			pending.loaded.addAll(chunk);
+		}
+		stitchAttribute(fetchQueue, pending, fetchSession);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <X, A> void stitchAttribute(List<FetchNode<?>> fetchQueue, PendingAttribute<X, A> pending,
+			FetchSession fetchSession) {
+		var em = fetchSession.stitchEntityManager();
+		var subRoots = pending.links == null
+				? pending.plan.stitch(em, pending.uninitializedRoots, pending.loaded)
+				: ((LinkTablePlan<X, A>) pending.plan).stitch(em, pending.uninitializedRoots, pending.loaded, pending.links);
+		if (!pending.alreadyAssociated.isEmpty()) {
+			// The same entity can be associated with initialized and uninitialized roots alike (XxxToOne).
+			var allSubRoots = Collections.<A>newSetFromMap(new IdentityHashMap<>());
+			allSubRoots.addAll(subRoots);
+			allSubRoots.addAll(pending.alreadyAssociated);
+			subRoots = allSubRoots;
+		}
+		if (listeners.isActive()) {
+			listeners.attributeFetched(new FetchListener.AttributeFetch(pending.fetchNode.fetch, pending.attributeName,
+					pending.keyCount, pending.cachedKeyCount, pending.linkQueries + pending.chunks.size(), pending.loaded.size(),
+					subRoots.size(),
+					System.nanoTime() - pending.startNanos));
+		}
+		if (!subRoots.isEmpty()) {
+			for (var subgraph : pending.edge.subgraphs) {
+				fetchQueue.add(new FetchNode<>(pending.fetchNode.fetch, subgraph, subRoots));
 			}
 		}
 	}
 
 	@SuppressWarnings({ "unchecked", "rawtypes" })
-	private <X, A> FetchPlan<X, A> fetchPlanFor(EntityType<X> rootType, AttributeNode<A> attributeNode) {
+	<X, A> FetchPlan<X, A> fetchPlanFor(EntityType<X> rootType, AttributeNode<A> attributeNode) {
 		return attributePlanCache.computeIfAbsent(new PlanKey(rootType, attributeNode.getAttributeName()), k -> {
 			if(log.isDebugEnabled()) {
 				log.debug("Preparing fetch plan for JPA attribute {}#{}", rootType.getName(), attributeNode.getAttributeName());
 			}
+			var start = System.nanoTime();
 			FetchPlan<X, A> planForNode;
 			var fetchAttr = k.entityType.getAttribute(k.getAttributeName());
 			if (fetchAttr instanceof PluralAttribute) {
-				planForNode = new OneToManyPlan<>(rootType, (PluralAttribute) fetchAttr);
+				planForNode = planForPluralAttr(rootType, (PluralAttribute) fetchAttr);
 			}
 			else if (fetchAttr instanceof SingularAttribute) {
-				planForNode = PlanUtils.findAnnotationOpt(fetchAttr, ManyToOne.class)
-						.map(manyToOne -> (FetchPlan<X, A>) new ManyToOnePlan<>((SingularAttribute) fetchAttr))
-						.orElseGet(() -> planForOneToOneAttr(rootType, (SingularAttribute) fetchAttr));
+				planForNode = AttributeMapping.of(fetchAttr).is(ManyToOne.class)
+						? new ManyToOnePlan<>((SingularAttribute) fetchAttr)
+						: planForOneToOneAttr(rootType, (SingularAttribute) fetchAttr);
 			}
 			else {
 				throw FlatFetcherException.onAttr("Attribute type not supported by flat fetcher: ", fetchAttr);
 			}
+			if (listeners.isActive()) {
+				listeners.planCompiled(new FetchListener.PlanCompilation(rootType.getJavaType(),
+						rootType.getName() + "." + fetchAttr.getName(), false, System.nanoTime() - start));
+			}
 			return planForNode;
 		});
 	}
 
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private <X, A> FetchPlan<X, A> planForPluralAttr(EntityType<X> rootType, PluralAttribute<? super X, ?, A> fetchAttr) {
+		var mapping = AttributeMapping.of(fetchAttr);
+		if (mapping.is(ManyToMany.class)) {
+			return new ManyToManyPlan(rootType, fetchAttr, sessionFactory());
+		}
+		if (mapping.is(ElementCollection.class)) {
+			return new ElementCollectionPlan(rootType, fetchAttr, sessionFactory());
+		}
+		if (mapping.mappedBy(OneToMany.class).isBlank()) {
+			return new UnidirectionalOneToManyPlan(rootType, fetchAttr, sessionFactory());
+		}
+		return new OneToManyPlan(rootType, fetchAttr);
+	}
+
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	private <X, A> FetchPlan<X, A> planForOneToOneAttr(EntityType<X> rootType, SingularAttribute<? super X, A> fetchAttr) {
-		var oneToOneAnnotation = PlanUtils.findAnnotation(fetchAttr, OneToOne.class);
-		if (!oneToOneAnnotation.mappedBy().isBlank()) {
-			return new OneToOneOppositePlan(rootType, fetchAttr, oneToOneAnnotation);
+		var mappedBy = AttributeMapping.of(fetchAttr).mappedBy(OneToOne.class);
+		if (!mappedBy.isBlank()) {
+			return new OneToOneOppositePlan(rootType, fetchAttr, mappedBy);
 
 		}
 		else {
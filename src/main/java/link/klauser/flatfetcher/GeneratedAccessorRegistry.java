@@ -0,0 +1,62 @@
+// Copyright 2020 Christian Klauser
+//
+// Licensed under the Apache License,Version2.0(the"License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,software
+// distributed under the License is distributed on an"AS IS"BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package link.klauser.flatfetcher;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.ServiceLoader;
+import java.util.WeakHashMap;
+import javax.persistence.metamodel.Attribute;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Looks up the {@link GeneratedAttribute} of a JPA attribute. The {@link GeneratedAccessors} services are loaded once per
+ * class loader (of the declaring classes).
+ */
+@Slf4j
+final class GeneratedAccessorRegistry {
+
+	private static final Map<ClassLoader, Map<Class<?>, Map<String, GeneratedAttribute>>> byClassLoader =
+			Collections.synchronizedMap(new WeakHashMap<>());
+
+	private GeneratedAccessorRegistry() {
+		throw new IllegalStateException("Cannot construct instance of utility class");
+	}
+
+	static Optional<GeneratedAttribute> find(Attribute<?, ?> attr) {
+		var declaringClass = attr.getDeclaringType().getJavaType();
+		var classLoader = declaringClass.getClassLoader();
+		if (classLoader == null) {
+			return Optional.empty();
+		}
+		var attributes = byClassLoader.computeIfAbsent(classLoader, GeneratedAccessorRegistry::load).get(declaringClass);
+		return attributes == null ? Optional.empty() : Optional.ofNullable(attributes.get(attr.getName()));
+	}
+
+	private static Map<Class<?>, Map<String, GeneratedAttribute>> load(ClassLoader classLoader) {
+		var byType = new HashMap<Class<?>, Map<String, GeneratedAttribute>>();
+		for (var accessors : ServiceLoader.load(GeneratedAccessors.class, classLoader)) {
+			var byName = new HashMap<String, GeneratedAttribute>();
+			accessors.attributes().forEach(attribute -> byName.put(attribute.name, attribute));
+			byType.put(accessors.entityClass(), byName);
+		}
+		if (log.isDebugEnabled()) {
+			log.debug("Found generated accessors for {} types", byType.size());
+		}
+		return byType;
+	}
+}
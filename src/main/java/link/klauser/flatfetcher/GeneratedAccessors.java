@@ -0,0 +1,40 @@
+// Copyright 2020 Christian Klauser
+//
+// Licensed under the Apache License,Version2.0(the"License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,software
+// distributed under the License is distributed on an"AS IS"BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package link.klauser.flatfetcher;
+
+import java.util.List;
+
+/**
+ * <p>
+ * Reflection-free accessors and mapping metadata for the attributes declared by an entity class (or mapped superclass).
+ * Implementations are generated at build time by {@link link.klauser.flatfetcher.processor.AccessorProcessor} and
+ * registered as {@link java.util.ServiceLoader services}. Not meant to be implemented by hand.
+ * </p>
+ * <p>
+ *     {@link FlatFetcher} prefers generated accessors over introspection when it builds its fetch plans. Attributes without
+ *     a generated accessor are still introspected.
+ * </p>
+ */
+public interface GeneratedAccessors {
+
+	/**
+	 * The class that declares the {@link #attributes()}.
+	 */
+	Class<?> entityClass();
+
+	/**
+	 * The persistent attributes declared by {@link #entityClass()}, excluding inherited ones.
+	 */
+	List<GeneratedAttribute> attributes();
+}
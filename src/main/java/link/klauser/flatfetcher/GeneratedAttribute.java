@@ -0,0 +1,71 @@
+// Copyright 2020 Christian Klauser
+//
+// Licensed under the Apache License,Version2.0(the"License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,software
+// distributed under the License is distributed on an"AS IS"BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package link.klauser.flatfetcher;
+
+import java.lang.annotation.Annotation;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * A persistent attribute as seen by {@link link.klauser.flatfetcher.processor.AccessorProcessor}: a getter and a setter
+ * that are plain method calls (or field accesses), and the mapping annotations that {@link FlatFetcher} needs.
+ * @see GeneratedAccessors
+ */
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public final class GeneratedAttribute {
+
+	final String name;
+	final Function<Object, Object> getter;
+	final BiConsumer<Object, Object> setter;
+	/**
+	 * {@code OneToMany.class}, {@code ManyToOne.class}, etc. {@code null} for basic attributes.
+	 */
+	final Class<? extends Annotation> association;
+	/**
+	 * {@code ""} if the association is not mapped by the other side.
+	 */
+	final String mappedBy;
+	/**
+	 * The {@code referencedColumnName} of the {@code @JoinColumn} of the association, {@code null} without
+	 * {@code @JoinColumn}.
+	 */
+	final String referencedColumnName;
+
+	/**
+	 * An attribute that is not an association.
+	 */
+	public static GeneratedAttribute basic(String name, Function<Object, Object> getter, BiConsumer<Object, Object> setter) {
+		return new GeneratedAttribute(name, getter, setter, null, "", null);
+	}
+
+	/**
+	 * An association.
+	 * @param association The type of the association annotation, for example {@code ManyToOne.class}.
+	 * @param mappedBy The {@code mappedBy} of the association annotation, {@code ""} if there is none.
+	 * @param referencedColumnName The {@code referencedColumnName} of the {@code @JoinColumn}, {@code null} if the
+	 *                             association doesn't have a {@code @JoinColumn}.
+	 */
+	public static GeneratedAttribute association(String name, Class<? extends Annotation> association, String mappedBy,
+			String referencedColumnName, Function<Object, Object> getter, BiConsumer<Object, Object> setter) {
+		return new GeneratedAttribute(name, getter, setter, association, mappedBy, referencedColumnName);
+	}
+
+	@Override
+	public String toString() {
+		return "GeneratedAttribute(" + name + (association == null ? "" : ", @" + association.getSimpleName()) + ")";
+	}
+}
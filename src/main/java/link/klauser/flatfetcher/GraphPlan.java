@@ -0,0 +1,95 @@
+// Copyright 2020 Christian Klauser
+//
+// Licensed under the Apache License,Version2.0(the"License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,software
+// distributed under the License is distributed on an"AS IS"BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package link.klauser.flatfetcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.persistence.AttributeNode;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.Metamodel;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * <p>
+ * A named entity graph compiled for a root type: the tree of {@link FetchPlan}s that a fetch walks through, level by level.
+ * </p>
+ * <p>
+ *     Compiling resolves everything that only depends on the graph and the metamodel (the entity graph itself, the entity
+ *     types of the subgraphs, the {@link FetchPlan}s of the associations and the names used for logging) once. Basic
+ *     attributes are left out. They have already been loaded together with the roots.
+ * </p>
+ * @param <X> The type of the root entities.
+ */
+@RequiredArgsConstructor
+class GraphPlan<X> {
+
+	final Node<X> root;
+
+	/**
+	 * The root of the graph or a subgraph.
+	 */
+	@RequiredArgsConstructor
+	static class Node<X> {
+		/**
+		 * The name of the entity graph, followed by the path to the subgraph. Only used for logging and
+		 * {@link FetchListener}s.
+		 */
+		final String name;
+		final EntityType<X> type;
+		final List<Edge<X, ?>> edges;
+	}
+
+	/**
+	 * An association of a {@link Node} together with its {@link FetchPlan} and the subgraphs to fetch for the associated
+	 * entities.
+	 */
+	@RequiredArgsConstructor
+	static class Edge<X, A> {
+		final String attributeName;
+		final FetchPlan<X, A> plan;
+		/**
+		 * One node per subgraph. The subgraph type can be a subtype of {@code A}.
+		 */
+		final List<Node<A>> subgraphs;
+	}
+
+	static <X> GraphPlan<X> compile(FlatFetcher fetcher, Metamodel metamodel, Class<X> tag, String entityGraphName,
+			List<AttributeNode<?>> attributeNodes) {
+		return new GraphPlan<>(node(fetcher, metamodel, metamodel.entity(tag), entityGraphName, attributeNodes));
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static <X> Node<X> node(FlatFetcher fetcher, Metamodel metamodel, EntityType<X> type, String name,
+			List<AttributeNode<?>> attributeNodes) {
+		var edges = new ArrayList<Edge<X, ?>>(attributeNodes.size());
+		for (var attributeNode : attributeNodes) {
+			if (PlanUtils.isColumn(type.getAttribute(attributeNode.getAttributeName()))) {
+				// Columns are only relevant for projections.
+				continue;
+			}
+			var plan = fetcher.fetchPlanFor(type, attributeNode);
+			var subgraphs = new ArrayList<Node<?>>();
+			for (var subgraphEntry : attributeNode.getSubgraphs().entrySet()) {
+				var subgraphName = name + "." + attributeNode.getAttributeName()
+						+ "<" + subgraphEntry.getKey().getSimpleName() + ">";
+				subgraphs.add(node(fetcher, metamodel, metamodel.entity(subgraphEntry.getKey()), subgraphName,
+						subgraphEntry.getValue().getAttributeNodes()));
+			}
+			edges.add(new Edge(attributeNode.getAttributeName(), plan, subgraphs));
+		}
+		return new Node<>(name, type, List.copyOf(edges));
+	}
+}
@@ -0,0 +1,91 @@
+// Copyright 2020 Christian Klauser
+//
+// Licensed under the Apache License,Version2.0(the"License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,software
+// distributed under the License is distributed on an"AS IS"BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package link.klauser.flatfetcher;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.SingularAttribute;
+
+import org.hibernate.dialect.PostgreSQL81Dialect;
+import org.hibernate.dialect.SQLServerDialect;
+import org.hibernate.dialect.SybaseDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+
+/**
+ * {@code select t from Target t where t.key in (:keys)}
+ * <p>
+ *     The JPQL text is fixed per fetch plan, so Hibernate only translates it once per number of keys and caches the
+ *     translation in its query plan cache.
+ * </p>
+ */
+final class InListTransport implements KeySetTransport {
+
+	static final InListTransport INSTANCE = new InListTransport();
+
+	static final String KEYS_PARAMETER = "keys";
+
+	/**
+	 * SQL Server and Sybase accept at most 2100 parameters per statement. Leaves room for parameters outside the in list.
+	 */
+	static final int TRANSACT_SQL_MAX_KEYS = 2000;
+
+	/**
+	 * The PostgreSQL JDBC driver accepts at most 32767 parameters per statement.
+	 */
+	static final int POSTGRESQL_MAX_KEYS = 32767;
+
+	private InListTransport() {
+	}
+
+	@Override
+	public <A> KeySetQuery<A> compile(EntityManagerFactory emf, EntityType<A> targetType,
+			SingularAttribute<? super A, ?> keyAttr) {
+		var jpql = "select t from " + targetType.getName() + " t where t." + keyAttr.getName()
+				+ " in (:" + KEYS_PARAMETER + ")";
+		var targetClass = targetType.getJavaType();
+		return (session, keys, options) -> {
+			var query = session.createQuery(jpql, targetClass)
+					.setParameterList(KEYS_PARAMETER, keys);
+			PlanUtils.applyExecutionProfile(query, session, options);
+			return query.getResultList();
+		};
+	}
+
+	/**
+	 * The smaller of {@link org.hibernate.dialect.Dialect#getInExpressionCountLimit()} (1000 on Oracle) and the
+	 * parameter limit of the database.
+	 */
+	@Override
+	public int maxKeysPerQuery(EntityManagerFactory emf) {
+		var dialect = emf.unwrap(SessionFactoryImplementor.class).getJdbcServices().getDialect();
+		var maxKeys = dialect.getInExpressionCountLimit();
+		var parameterLimit = 0;
+		if (dialect instanceof SQLServerDialect || dialect instanceof SybaseDialect) {
+			parameterLimit = TRANSACT_SQL_MAX_KEYS;
+		}
+		else if (dialect instanceof PostgreSQL81Dialect) {
+			parameterLimit = POSTGRESQL_MAX_KEYS;
+		}
+		if (maxKeys <= 0 || parameterLimit > 0 && parameterLimit < maxKeys) {
+			maxKeys = parameterLimit;
+		}
+		return maxKeys;
+	}
+
+	@Override
+	public String toString() {
+		return "inList";
+	}
+}
@@ -0,0 +1,37 @@
+// Copyright 2020 Christian Klauser
+//
+// Licensed under the Apache License,Version2.0(the"License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,software
+// distributed under the License is distributed on an"AS IS"BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package link.klauser.flatfetcher;
+
+import java.util.List;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+
+/**
+ * A query compiled by a {@link KeySetTransport} that only needs the keys to be bound. Must be thread-safe.
+ * @param <A> The type of entity that the query returns.
+ */
+@FunctionalInterface
+public interface KeySetQuery<A> {
+
+	/**
+	 * Queries all entities whose key attribute has one of the values in {@code keys}.
+	 * @param session The session to run the query on. Either a regular session or a {@link org.hibernate.StatelessSession}.
+	 * @param keys The key values. Not empty. May contain duplicates and {@code null}.
+	 * @param options The settings of the fetch. Implementations should honor {@link FetchOptions#isReadOnly()},
+	 *                {@link FetchOptions#isAutoFlush()} and {@link FetchOptions#getFetchSize()}.
+	 * @return The loaded entities, managed by {@code session} unless it is stateless. Never {@code null}.
+	 */
+	List<A> load(SharedSessionContractImplementor session, List<?> keys, FetchOptions options);
+}
@@ -0,0 +1,94 @@
+// Copyright 2020 Christian Klauser
+//
+// Licensed under the Apache License,Version2.0(the"License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,software
+// distributed under the License is distributed on an"AS IS"BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package link.klauser.flatfetcher;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.SingularAttribute;
+
+/**
+ * <p>
+ * Strategy for shipping a chunk of keys to the database when {@link FlatFetcher} queries associated entities. All fetch plans
+ * boil down to {@code select t from Target t where t.key in (:keys)}; the transport decides how {@code :keys} is represented
+ * in SQL.
+ * </p>
+ * <ul>
+ *     <li>{@link #inList()} (the default) renders one bind parameter per key: {@code where t.key in (?, ?, ..., ?)}.</li>
+ *     <li>{@link #arrayParameter()} binds all keys as a single SQL array: {@code where t.key = any(?)}.</li>
+ *     <li>{@link #temporaryTable()} inserts the keys into a temporary table with JDBC batching and joins against it.</li>
+ * </ul>
+ * <p>
+ *     The array parameter and temporary table transports produce the same SQL text independent of the number of keys and
+ *     are not subject to limits on the length of {@code in} lists. Consider increasing {@link FetchOptions#getBatchSize()}
+ *     when using them. Both use native SQL and therefore only support entities that are mapped to a single table.
+ * </p>
+ * @see FetchOptions#getKeySetTransport()
+ */
+public interface KeySetTransport {
+
+	/**
+	 * <p>Prepares the query for entities of type {@code targetType} whose {@code keyAttr} has one of the values in a key set.</p>
+	 * <p>All the work that doesn't depend on the keys themselves (building and translating the query) should happen here.
+	 * Each fetch plan compiles its query once per transport and then re-uses it for every chunk of keys.</p>
+	 * @param emf The entity manager factory that the query will run against.
+	 * @param targetType The type of entity to query.
+	 * @param keyAttr A basic attribute of {@code targetType} to match against the keys.
+	 * @param <A> The type of entity to query.
+	 * @return The compiled query. Never {@code null}.
+	 */
+	<A> KeySetQuery<A> compile(EntityManagerFactory emf, EntityType<A> targetType, SingularAttribute<? super A, ?> keyAttr);
+
+	/**
+	 * The largest number of keys that a single query with this transport can take on the database behind {@code emf}, or
+	 * {@code 0} if there is no such limit. {@link FlatFetcher} never puts more keys into a chunk, whatever the batch size.
+	 * @param emf The entity manager factory that the queries will run against.
+	 */
+	default int maxKeysPerQuery(EntityManagerFactory emf) {
+		return 0;
+	}
+
+	/**
+	 * The key set is transported as a list of bind parameters {@code where t.key in (?, ?, ..., ?)}. Works on all databases,
+	 * but produces a different SQL statement for every number of keys (see {@link FetchOptions#isInListPadding()}).
+	 */
+	static KeySetTransport inList() {
+		return InListTransport.INSTANCE;
+	}
+
+	/**
+	 * The key set is transported as a single SQL array bind parameter. The SQL condition is derived from the dialect,
+	 * {@code t.key = any(?)} by default.
+	 */
+	static KeySetTransport arrayParameter() {
+		return ArrayParameterTransport.DIALECT_DEFAULT;
+	}
+
+	/**
+	 * The key set is transported as a single SQL array bind parameter.
+	 * @param conditionTemplate SQL condition with a {@code {key}} placeholder for the key column and a single {@code ?} for
+	 *                          the array parameter, for example {@code "array_contains(?, {key})"}.
+	 */
+	static KeySetTransport arrayParameter(String conditionTemplate) {
+		return new ArrayParameterTransport(conditionTemplate);
+	}
+
+	/**
+	 * The key set is inserted into a session-scoped temporary table, which the query then joins against. The temporary table
+	 * is created on first use (per connection) and emptied before each use. Requires a dialect with temporary tables.
+	 */
+	static KeySetTransport temporaryTable() {
+		return TemporaryTableTransport.INSTANCE;
+	}
+}
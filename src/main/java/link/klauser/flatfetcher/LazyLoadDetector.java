@@ -0,0 +1,374 @@
+// Copyright 2020 Christian Klauser
+//
+// Licensed under the Apache License,Version2.0(the"License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,software
+// distributed under the License is distributed on an"AS IS"BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package link.klauser.flatfetcher;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.EntityType;
+
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.BaseSessionEventListener;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.InitializeCollectionEvent;
+import org.hibernate.event.spi.InitializeCollectionEventListener;
+import org.hibernate.event.spi.LoadEvent;
+import org.hibernate.event.spi.LoadEventListener;
+
+/**
+ * <p>
+ * Reports lazy loads on entities that a {@link FlatFetcher} has fetched. Each of these is a hint that the entity graph of
+ * the fetch lacks an attribute and that the code that uses the graph runs into N+1 queries.
+ * </p>
+ * <p>
+ *     Detection is opt-in ({@link FlatFetcher#setLazyLoadDetector(LazyLoadDetector)}) and sampled: only a fraction of the
+ *     fetches get tracked. For a tracked fetch, the detector remembers the entities of the graph until their session
+ *     ends (or, for {@link FlatFetcher#fetchWindowed windowed fetches}, until the window is cleared), and listens to
+ *     Hibernate's load events:
+ * </p>
+ * <ul>
+ *     <li>Collections are reported when Hibernate initializes a collection of a tracked entity.</li>
+ *     <li>{@code XxxToOne} associations are reported when Hibernate loads the target of an association that was not
+ *     initialized at the end of the fetch. This needs the id "companion" attribute ({@code fooId} next to {@code foo}),
+ *     which {@link FlatFetcher} requires anyway. Associations without one are not tracked.</li>
+ * </ul>
+ * <p>
+ *     Each lazy load is reported once per tracked fetch. Only entities loaded by the {@link FlatFetcher#fetch} family of
+ *     methods are tracked. Detached and projection fetches can't lazy load.
+ * </p>
+ */
+@Slf4j
+public class LazyLoadDetector {
+
+	/**
+	 * A lazy load on an entity of a tracked fetch.
+	 */
+	@Value
+	public static class LazyLoad {
+		/**
+		 * The name of the entity graph of the fetch that loaded the entity.
+		 */
+		String entityGraphName;
+		/**
+		 * The type of the entity that the association belongs to.
+		 */
+		Class<?> entityType;
+		/**
+		 * The association that has been loaded lazily.
+		 */
+		String attributeName;
+		/**
+		 * The first stack frame outside of Hibernate, the JDK and the entity, usually the code that called the getter.
+		 * {@code null} if there is no such frame.
+		 */
+		StackTraceElement callSite;
+
+		@Override
+		public String toString() {
+			return "Lazy load of " + entityType.getSimpleName() + "#" + attributeName + " (not in entity graph "
+					+ entityGraphName + ") at " + callSite;
+		}
+	}
+
+	private final double sampleRate;
+	private final Consumer<LazyLoad> reporter;
+
+	/**
+	 * The dispatchers of the session factories this detector is installed on. Weak keys, so that the detector doesn't keep
+	 * a closed factory alive. The dispatchers don't reference their factory.
+	 */
+	private final Map<SessionFactoryImplementor, Dispatcher> installedOn =
+			Collections.synchronizedMap(new WeakHashMap<>());
+	private final Map<Class<?>, List<ToOne>> toOnesByType = new ConcurrentHashMap<>();
+	/**
+	 * The tracked sessions. Consulted on every load event of the session factory, so lookups must not lock. Sessions don't
+	 * override {@code equals}, so this is keyed by identity. Entries are removed when their session ends (see
+	 * {@link #track}). {@link #forget(SharedSessionContractImplementor)} only empties them.
+	 */
+	private final Map<SharedSessionContractImplementor, SessionTracking> sessions = new ConcurrentHashMap<>();
+
+	/**
+	 * @param sampleRate The fraction of fetches to track, between {@code 0} (none) and {@code 1} (all).
+	 * @param reporter Receives the lazy loads. Called on the thread that triggered the lazy load.
+	 */
+	public LazyLoadDetector(double sampleRate, Consumer<LazyLoad> reporter) {
+		if (sampleRate < 0 || sampleRate > 1) {
+			throw new IllegalArgumentException("Sample rate must be between 0 and 1.");
+		}
+		this.sampleRate = sampleRate;
+		this.reporter = reporter;
+	}
+
+	/**
+	 * A detector that logs the lazy loads as warnings.
+	 * @param sampleRate The fraction of fetches to track, between {@code 0} (none) and {@code 1} (all).
+	 */
+	public static LazyLoadDetector logging(double sampleRate) {
+		return new LazyLoadDetector(sampleRate, lazyLoad -> log.warn("{}", lazyLoad));
+	}
+
+	boolean sample() {
+		return sampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < sampleRate;
+	}
+
+	/**
+	 * An {@code XxxToOne} association together with the id "companion" attribute that holds the key of its target.
+	 */
+	@RequiredArgsConstructor
+	private static class ToOne {
+		final Accessor<Object, ?> association;
+		final Accessor<Object, ?> targetId;
+		final String targetEntityName;
+	}
+
+	@Value
+	private static class TargetKey {
+		String entityName;
+		Serializable id;
+	}
+
+	/**
+	 * The tracked entities of a single session.
+	 */
+	private static class SessionTracking {
+		final Map<Object, String> graphByEntity = new IdentityHashMap<>();
+		final Map<TargetKey, Origin> uninitializedToOnes = new HashMap<>();
+	}
+
+	@RequiredArgsConstructor
+	private static class Origin {
+		final String entityGraphName;
+		final Class<?> entityType;
+		final String attributeName;
+	}
+
+	/**
+	 * Starts tracking the entities of a fetch.
+	 */
+	void track(SharedSessionContractImplementor session, String entityGraphName, Collection<?> entities) {
+		install(session.getFactory());
+		var tracking = sessions.computeIfAbsent(session, s -> {
+			s.getEventListenerManager().addListener(new BaseSessionEventListener() {
+				@Override
+				public void end() {
+					sessions.remove(s);
+				}
+			});
+			return new SessionTracking();
+		});
+		var toOneOrigins = new ArrayList<Map.Entry<TargetKey, Origin>>();
+		for (var entity : entities) {
+			for (var toOne : toOnesOf(session.getFactory(), entity.getClass())) {
+				var targetId = (Serializable) toOne.targetId.get(entity);
+				if (targetId != null && !PlanUtils.isInitialized(entity, toOne.association)) {
+					toOneOrigins.add(Map.entry(new TargetKey(toOne.targetEntityName, targetId),
+							new Origin(entityGraphName, entity.getClass(), toOne.association.attr().getName())));
+				}
+			}
+		}
+		synchronized (tracking) {
+			for (var entity : entities) {
+				tracking.graphByEntity.putIfAbsent(entity, entityGraphName);
+			}
+			toOneOrigins.forEach(origin -> tracking.uninitializedToOnes.putIfAbsent(origin.getKey(), origin.getValue()));
+		}
+		if (log.isDebugEnabled()) {
+			log.debug("Tracking lazy loads on {} entities and {} to-one associations of {}", entities.size(),
+					toOneOrigins.size(), entityGraphName);
+		}
+	}
+
+	/**
+	 * Stops tracking the entities of {@code session}, because its persistence context has been cleared. Detached entities
+	 * can't lazy load, and holding on to them would keep them from being garbage collected.
+	 */
+	void forget(SharedSessionContractImplementor session) {
+		var tracking = sessions.get(session);
+		if (tracking != null) {
+			// Keeps the (empty) entry, so that the next window doesn't register another listener for the end of the session.
+			synchronized (tracking) {
+				tracking.graphByEntity.clear();
+				tracking.uninitializedToOnes.clear();
+			}
+		}
+	}
+
+	boolean isTracking(SharedSessionContractImplementor session) {
+		var tracking = sessions.get(session);
+		if (tracking == null) {
+			return false;
+		}
+		synchronized (tracking) {
+			return !tracking.graphByEntity.isEmpty();
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private List<ToOne> toOnesOf(SessionFactoryImplementor factory, Class<?> entityClass) {
+		return toOnesByType.computeIfAbsent(entityClass, cls -> {
+			EntityType<?> entityType;
+			try {
+				entityType = factory.getMetamodel().entity(cls);
+			}
+			catch (IllegalArgumentException e) {
+				return List.of();
+			}
+			var toOnes = new ArrayList<ToOne>();
+			for (var attr : entityType.getSingularAttributes()) {
+				if (attr.getPersistentAttributeType() != Attribute.PersistentAttributeType.MANY_TO_ONE
+						&& attr.getPersistentAttributeType() != Attribute.PersistentAttributeType.ONE_TO_ONE) {
+					continue;
+				}
+				try {
+					toOnes.add(new ToOne((Accessor) Accessor.of(attr), (Accessor) Accessor.forIdOf(attr),
+							attr.getJavaType().getName()));
+				}
+				catch (FlatFetcherException e) {
+					log.debug("Not tracking lazy loads of {}: {}", attr, e.getMessage());
+				}
+			}
+			return toOnes;
+		});
+	}
+
+	private void install(SessionFactoryImplementor factory) {
+		installedOn.computeIfAbsent(factory, f -> {
+			var dispatcher = Dispatcher.of(f);
+			dispatcher.detectors.add(this);
+			return dispatcher;
+		});
+	}
+
+	/**
+	 * Stops the detection: removes this detector from the session factories it has been installed on and forgets all
+	 * tracked entities. {@link FlatFetcher#setLazyLoadDetector(LazyLoadDetector)} calls this for the detector it replaces.
+	 * The detector installs itself again on its next tracked fetch.
+	 */
+	public void uninstall() {
+		synchronized (installedOn) {
+			installedOn.values().forEach(dispatcher -> dispatcher.detectors.remove(this));
+			installedOn.clear();
+		}
+		sessions.clear();
+		toOnesByType.clear();
+	}
+
+	/**
+	 * Dispatches the load events of a session factory to the detectors installed on it. Hibernate rejects a second
+	 * listener of the same class, so there is one dispatcher per factory. It is registered as a listener, which makes the
+	 * factory own it: it goes away together with the factory.
+	 */
+	static class Dispatcher implements LoadEventListener, InitializeCollectionEventListener {
+		final Set<LazyLoadDetector> detectors = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+		static Dispatcher of(SessionFactoryImplementor factory) {
+			var registry = factory.getServiceRegistry().getService(EventListenerRegistry.class);
+			synchronized (registry) {
+				for (var listener : registry.getEventListenerGroup(EventType.LOAD).listeners()) {
+					if (listener instanceof Dispatcher) {
+						return (Dispatcher) listener;
+					}
+				}
+				var dispatcher = new Dispatcher();
+				registry.appendListeners(EventType.INIT_COLLECTION, dispatcher);
+				registry.appendListeners(EventType.LOAD, dispatcher);
+				return dispatcher;
+			}
+		}
+
+		@Override
+		public void onInitializeCollection(InitializeCollectionEvent event) {
+			detectors.forEach(detector -> detector.onInitializeCollection(event));
+		}
+
+		@Override
+		public void onLoad(LoadEvent event, LoadEventListener.LoadType loadType) {
+			detectors.forEach(detector -> detector.onLoad(event, loadType));
+		}
+	}
+
+	private void onInitializeCollection(InitializeCollectionEvent event) {
+		var tracking = sessions.get(event.getSession());
+		if (tracking == null) {
+			return;
+		}
+		var owner = event.getCollection().getOwner();
+		String entityGraphName;
+		synchronized (tracking) {
+			entityGraphName = tracking.graphByEntity.get(owner);
+		}
+		if (entityGraphName != null) {
+			var role = event.getCollection().getRole();
+			report(new Origin(entityGraphName, owner.getClass(), role.substring(role.lastIndexOf('.') + 1)));
+		}
+	}
+
+	private void onLoad(LoadEvent event, LoadEventListener.LoadType loadType) {
+		if (loadType != LoadEventListener.INTERNAL_LOAD_LAZY && loadType != LoadEventListener.INTERNAL_LOAD_NULLABLE
+				&& loadType != LoadEventListener.INTERNAL_LOAD_EAGER) {
+			// only internal loads resolve associations, everything else is an explicit find/getReference
+			return;
+		}
+		var tracking = sessions.get(event.getSession());
+		if (tracking == null) {
+			return;
+		}
+		Origin origin;
+		synchronized (tracking) {
+			origin = tracking.uninitializedToOnes.remove(new TargetKey(event.getEntityClassName(), event.getEntityId()));
+		}
+		if (origin != null) {
+			report(origin);
+		}
+	}
+
+	private void report(Origin origin) {
+		reporter.accept(new LazyLoad(origin.entityGraphName, origin.entityType, origin.attributeName,
+				callSite(origin.entityType)));
+	}
+
+	private static StackTraceElement callSite(Class<?> entityType) {
+		var entityClassNames = new ArrayList<String>();
+		for (Class<?> cls = entityType; cls != null && cls != Object.class; cls = cls.getSuperclass()) {
+			entityClassNames.add(cls.getName());
+		}
+		for (var frame : new Throwable().getStackTrace()) {
+			var className = frame.getClassName();
+			if (!className.startsWith("org.hibernate.") && !className.startsWith("java.")
+					&& !className.startsWith("jdk.") && !className.startsWith("sun.")
+					&& !className.startsWith(LazyLoadDetector.class.getName())
+					&& !entityClassNames.contains(className)) {
+				return frame;
+			}
+		}
+		return null;
+	}
+}
@@ -0,0 +1,93 @@
+// Copyright 2020 Christian Klauser
+//
+// Licensed under the Apache License,Version2.0(the"License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,software
+// distributed under the License is distributed on an"AS IS"BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package link.klauser.flatfetcher;
+
+import java.util.Collection;
+import java.util.List;
+import javax.persistence.EntityManager;
+
+import lombok.Value;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+
+/**
+ * <p>
+ * A {@link FetchPlan} for an association that is stored in a table of its own, such as the join table of a
+ * {@code @ManyToMany}. The associated entities can't tell which roots they belong to, so fetching takes two steps:
+ * </p>
+ * <ol>
+ *     <li>{@link #loadLinks} reads the pairs of root key and target key from the link table, for a chunk of
+ *     {@link #keys(java.util.Collection) root keys} at a time.</li>
+ *     <li>The {@link #loadChunk chunk queries} load the distinct targets of all links by their {@link #keyAttribute() key}.
+ *     A target that is linked to many roots is only loaded once.</li>
+ * </ol>
+ * <p>
+ *     Plans whose targets belong to a single root ({@link #loadsTargetsWithLinks()}) skip the second step: their links
+ *     already contain the targets.
+ * </p>
+ */
+interface LinkTablePlan<X, A> extends FetchPlan<X, A> {
+
+	/**
+	 * A row of the link table.
+	 */
+	@Value
+	class Link {
+		Object rootKey;
+		/**
+		 * The key of the target, or the target itself if the plan {@link #loadsTargetsWithLinks() loads the targets with
+		 * the links}.
+		 */
+		Object target;
+	}
+
+	/**
+	 * Whether {@link #loadLinks} loads the targets along with the links. There are no chunk queries for such plans, and
+	 * {@link #keyAttribute()} and {@link #keySetQuery} are not used.
+	 */
+	default boolean loadsTargetsWithLinks() {
+		return false;
+	}
+
+	/**
+	 * Plans for associations of the targets that are resolved on all targets right after {@link #loadLinks}, with chunk
+	 * queries of their own. Only used by plans that {@link #loadsTargetsWithLinks() load the targets with the links}.
+	 * Empty by default.
+	 */
+	default List<? extends FetchPlan<A, ?>> targetPlans() {
+		return List.of();
+	}
+
+	/**
+	 * Queries the links of a chunk of root keys. Like {@link #loadChunk}, this does not touch any roots.
+	 */
+	List<Link> loadLinks(SharedSessionContractImplementor session, List<?> rootKeys, FetchOptions options);
+
+	/**
+	 * Link table plans can only be stitched together with their links.
+	 * @throws IllegalStateException always
+	 */
+	@Override
+	default Collection<A> stitch(EntityManager em, Collection<? extends X> roots, Collection<A> loaded) {
+		throw new IllegalStateException("Cannot stitch " + rootAttribute().attr().getName() + " without its links.");
+	}
+
+	/**
+	 * Like {@link FetchPlan#stitch(EntityManager, Collection, Collection)}, but assigns the {@code loaded} entities to the
+	 * roots according to {@code links}.
+	 * @param links The links of all roots, as returned by {@link #loadLinks}.
+	 */
+	Collection<A> stitch(EntityManager em, Collection<? extends X> roots, Collection<A> loaded, List<Link> links);
+}
@@ -0,0 +1,146 @@
+// Copyright 2020 Christian Klauser
+//
+// Licensed under the Apache License,Version2.0(the"License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,software
+// distributed under the License is distributed on an"AS IS"BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package link.klauser.flatfetcher;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.PluralAttribute;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.type.Type;
+
+/**
+ * <p>
+ * Fetches either side of a {@code @ManyToMany} through its join table:
+ * {@code select l.rootKey, l.targetKey from join_table l where l.rootKey in (:keys)} reads the links without touching the
+ * tables of the roots or the targets, and the chunk queries then load the distinct targets by their primary key (or the
+ * {@code referencedColumnName} of the inverse join column).
+ * </p>
+ * <p>
+ *     Only the collections of the roots are assigned. The collections on the opposite side would only contain the roots of
+ *     the fetch, which are not necessarily all of the entities linked to a target. Name the opposite attribute in a
+ *     subgraph to fetch it as well. Its join table query finds the roots in the persistence context, so that they are not
+ *     loaded again.
+ * </p>
+ */
+@Slf4j
+class ManyToManyPlan<X, C extends Collection<A>, A> extends CollectionTablePlan<X, C, A> {
+
+	static final String ROOT_KEY_ALIAS = "rootKey";
+	static final String TARGET_KEY_ALIAS = "targetKey";
+
+	final EntityType<A> targetType;
+	final Accessor<? super A, ?> targetKeyAccessor;
+
+	final String joinTable;
+	final String linkSql;
+	final Type rootKeyType;
+	final Type targetKeyType;
+
+	final Map<KeySetTransport, KeySetQuery<A>> keySetQueries = new ConcurrentHashMap<>();
+
+	@SuppressWarnings("unchecked")
+	ManyToManyPlan(EntityType<X> rootType, PluralAttribute<? super X, C, A> fetchAttr, SessionFactoryImplementor factory) {
+		super(rootType, fetchAttr, factory);
+		targetType = (EntityType<A>) fetchAttr.getElementType();
+		if (!persister.isManyToMany()) {
+			throw FlatFetcherException.onAttr("Expected a collection with a join table for ", fetchAttr);
+		}
+		if (persister.hasWhere()) {
+			throw FlatFetcherException.onAttr("FlatFetcher does not support @Where on @ManyToMany collections. Cannot fetch ",
+					fetchAttr);
+		}
+		var keyColumns = persister.getKeyColumnNames();
+		var elementColumns = persister.getElementColumnNames();
+		if (keyColumns.length != 1 || elementColumns.length != 1) {
+			throw FlatFetcherException.onAttr("FlatFetcher only supports join tables with single-column keys. Cannot fetch ",
+					fetchAttr);
+		}
+
+		var elementType = (org.hibernate.type.EntityType) persister.getElementType();
+		var targetKeyName = elementType.getRHSUniqueKeyPropertyName();
+		targetKeyAccessor = targetKeyName == null
+				? Accessor.forPrimaryKeyOf(targetType)
+				: Accessor.of(targetType.getSingularAttribute(targetKeyName));
+
+		joinTable = persister.getTableName();
+		rootKeyType = persister.getKeyType();
+		targetKeyType = elementType.getIdentifierOrUniqueKeyType(factory);
+		linkSql = "select l." + keyColumns[0] + " as " + ROOT_KEY_ALIAS + ", l." + elementColumns[0] + " as "
+				+ TARGET_KEY_ALIAS + " from " + joinTable + " l where l." + keyColumns[0]
+				+ " in (:" + InListTransport.KEYS_PARAMETER + ")";
+	}
+
+	@Override
+	public EntityType<A> targetType() {
+		return targetType;
+	}
+
+	@Override
+	public Accessor<? super A, ?> keyAccessor() {
+		return targetKeyAccessor;
+	}
+
+	@Override
+	public Map<KeySetTransport, KeySetQuery<A>> keySetQueries() {
+		return keySetQueries;
+	}
+
+	@Override
+	public List<Link> loadLinks(SharedSessionContractImplementor session, List<?> rootKeys, FetchOptions options) {
+		@SuppressWarnings("unchecked")
+		NativeQuery<Object[]> query = session.createNativeQuery(linkSql)
+				.addScalar(ROOT_KEY_ALIAS, rootKeyType)
+				.addScalar(TARGET_KEY_ALIAS, targetKeyType)
+				// only flush changes to the join table, not the entire session
+				.addSynchronizedQuerySpace(joinTable)
+				.setParameterList(InListTransport.KEYS_PARAMETER, rootKeys);
+		PlanUtils.applyExecutionProfile(query, session, options);
+		var rows = query.getResultList();
+		var links = new ArrayList<Link>(rows.size());
+		for (var row : rows) {
+			links.add(new Link(row[0], row[1]));
+		}
+		return links;
+	}
+
+	@Override
+	Map<Object, List<A>> targetsByRootKey(Collection<A> loaded, List<Link> links) {
+		Map<Object, A> byKey = new HashMap<>();
+		for (var target : loaded) {
+			byKey.put(targetKeyAccessor.get(target), target);
+		}
+		Map<Object, List<A>> byRootKey = new HashMap<>();
+		for (var link : links) {
+			var target = byKey.get(link.getTarget());
+			if (target == null) {
+				log.warn("Join table {} links {} to {}={}, which does not exist.", joinTable, link.getRootKey(),
+						targetType.getName(), link.getTarget());
+				continue;
+			}
+			byRootKey.computeIfAbsent(link.getRootKey(), k -> new ArrayList<>()).add(target);
+		}
+		return byRootKey;
+	}
+}
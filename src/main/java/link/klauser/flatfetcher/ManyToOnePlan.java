@@ -14,14 +14,15 @@
 
 package link.klauser.flatfetcher;
 
-import static link.klauser.flatfetcher.PlanUtils.chunks;
+import static java.util.stream.Collectors.toList;
 
 import java.io.Serializable;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.persistence.EntityManager;
-import javax.persistence.JoinColumn;
 import javax.persistence.metamodel.EntityType;
 import javax.persistence.metamodel.SingularAttribute;
 
@@ -37,6 +38,8 @@ class ManyToOnePlan<X, A, K extends Serializable> implements FetchPlan<X, A> {
 
 	private final Accessor<? super A, K> targetIdAccessor;
 
+	final Map<KeySetTransport, KeySetQuery<A>> keySetQueries = new ConcurrentHashMap<>();
+
 	public ManyToOnePlan(SingularAttribute<X, A> fetchAttr) {
 		targetType = (EntityType<A>) fetchAttr.getType();
 		attrAccessor = Accessor.of(fetchAttr);
@@ -44,10 +47,10 @@ class ManyToOnePlan<X, A, K extends Serializable> implements FetchPlan<X, A> {
 
 		// Cannot use PlanUtils.referencedColumnAccessor here because the opposite attribute is
 		// a collection.
-		var joinColumnAnnotation = PlanUtils.findAnnotation(fetchAttr, JoinColumn.class);
-		if(!joinColumnAnnotation.referencedColumnName().isBlank()) {
+		var referencedColumnName = AttributeMapping.of(fetchAttr).joinColumnReferencedColumnName();
+		if(!referencedColumnName.isBlank()) {
 			var referencedColumn = targetType.getSingularAttribute(
-					joinColumnAnnotation.referencedColumnName(),
+					referencedColumnName,
 					attrIdAccessor.singularAttr().getJavaType());
 			targetIdAccessor = Accessor.of(referencedColumn);
 		}
@@ -59,27 +62,52 @@ class ManyToOnePlan<X, A, K extends Serializable> implements FetchPlan<X, A> {
 	}
 
 	@Override
-	public Collection<A> fetch(EntityManager em, Collection<? extends X> roots, int batchSize) {
+	public List<?> keys(Collection<? extends X> roots) {
+		return roots.stream().map(attrIdAccessor::get).collect(toList());
+	}
+
+	@Override
+	public Accessor<? super X, ?> rootAttribute() {
+		return attrAccessor;
+	}
+
+	@Override
+	public SingularAttribute<? super X, ?> rootKeyAttribute() {
+		return attrIdAccessor.singularAttr();
+	}
+
+	@Override
+	public EntityType<A> targetType() {
+		return targetType;
+	}
+
+	@Override
+	public Accessor<? super A, ?> keyAccessor() {
+		return targetIdAccessor;
+	}
+
+	@Override
+	public Map<KeySetTransport, KeySetQuery<A>> keySetQueries() {
+		return keySetQueries;
+	}
+
+	@Override
+	public Collection<A> stitch(EntityManager em, Collection<? extends X> roots, Collection<A> loaded) {
 		Map<K, A> byId = new HashMap<>();
-		var cb = em.getCriteriaBuilder();
-		chunks(roots.stream().map(attrIdAccessor::get), batchSize).flatMap(targetIds ->{
-			var assocQ = cb.createQuery(targetType.getJavaType());
-			var fromTarget = assocQ.from(targetType.getJavaType());
-			assocQ.where(fromTarget.get(targetIdAccessor.singularAttr()).in(targetIds));
-			return em.createQuery(assocQ).getResultStream();
-		}).forEach(associated -> {
+		for (var associated : loaded) {
 			var id = targetIdAccessor.get(associated);
 			var previous = byId.put(id, associated);
 			if (previous != null && previous != associated) {
 				log.warn("Query for {} by {} resulted in two different objects that map to the same FK {}.",
 						targetType.getName(), targetIdAccessor.singularAttr().getName(), id);
 			}
-		});
+		}
 
+		var rootSetter = attrAccessor.bulkSetter(em);
 		for (var root : roots) {
 			var fkId = attrIdAccessor.get(root);
 			var associatedEntity = byId.get(fkId);
-			attrAccessor.set(em, root, associatedEntity);
+			rootSetter.set(root, associatedEntity);
 			// will not touch opposite because it is a collection from which we only have 1 element. There are no
 			// "partially lazy" collections in Hibernate.
 		}
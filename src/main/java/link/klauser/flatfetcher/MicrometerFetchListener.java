@@ -0,0 +1,117 @@
+// Copyright 2020 Christian Klauser
+//
+// Licensed under the Apache License,Version2.0(the"License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,software
+// distributed under the License is distributed on an"AS IS"BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package link.klauser.flatfetcher;
+
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * <p>
+ * Publishes the callbacks of {@link FetchListener} as Micrometer meters with percentile histograms. Needs
+ * {@code io.micrometer:micrometer-core} on the class path, which flat fetcher itself does not depend on.
+ * </p>
+ * <table>
+ *     <caption>Meters (with the default prefix)</caption>
+ *     <tr><th>Name</th><th>Type</th><th>Tags</th></tr>
+ *     <tr><td>{@code flatfetcher.fetch}</td><td>timer</td><td>{@code root}, {@code graph}, {@code outcome}</td></tr>
+ *     <tr><td>{@code flatfetcher.fetch.roots}</td><td>summary</td><td>{@code root}, {@code graph}</td></tr>
+ *     <tr><td>{@code flatfetcher.attribute}</td><td>timer</td><td>{@code root}, {@code graph}, {@code attribute}</td></tr>
+ *     <tr><td>{@code flatfetcher.attribute.rows}</td><td>summary</td><td>{@code root}, {@code graph}, {@code attribute}</td></tr>
+ *     <tr><td>{@code flatfetcher.attribute.stitched}</td><td>summary</td><td>{@code root}, {@code graph},
+ *     {@code attribute}</td></tr>
+ *     <tr><td>{@code flatfetcher.attribute.cached.keys}</td><td>summary</td><td>{@code root}, {@code graph},
+ *     {@code attribute}</td></tr>
+ *     <tr><td>{@code flatfetcher.chunk}</td><td>timer</td><td>{@code root}, {@code graph}, {@code attribute}</td></tr>
+ *     <tr><td>{@code flatfetcher.chunk.keys}</td><td>summary</td><td>{@code root}, {@code graph}, {@code attribute}</td></tr>
+ *     <tr><td>{@code flatfetcher.plan.compile}</td><td>timer</td><td>{@code entity}, {@code name}, {@code kind}</td></tr>
+ * </table>
+ * <p>
+ *     {@code root} is the simple class name of the root entity type and {@code attribute} is the JPA entity name and
+ *     attribute name, such as {@code "Car.doors"}. The tags only take values from the metamodel and the entity graphs, so
+ *     their cardinality is bounded.
+ * </p>
+ */
+public class MicrometerFetchListener implements FetchListener {
+
+	private final MeterRegistry registry;
+	private final String prefix;
+
+	/**
+	 * Publishes meters with the prefix {@code "flatfetcher"}.
+	 */
+	public MicrometerFetchListener(MeterRegistry registry) {
+		this(registry, "flatfetcher");
+	}
+
+	/**
+	 * @param prefix Replaces {@code "flatfetcher"} in the names of the meters.
+	 */
+	public MicrometerFetchListener(MeterRegistry registry, String prefix) {
+		this.registry = registry;
+		this.prefix = prefix;
+	}
+
+	private static Tags tags(Fetch fetch) {
+		return Tags.of("root", fetch.getRootType().getSimpleName(), "graph", fetch.getEntityGraphName());
+	}
+
+	private Timer timer(String name, Tags tags) {
+		return Timer.builder(prefix + name).tags(tags).publishPercentileHistogram().register(registry);
+	}
+
+	private DistributionSummary summary(String name, Tags tags) {
+		return DistributionSummary.builder(prefix + name).tags(tags).publishPercentileHistogram().register(registry);
+	}
+
+	@Override
+	public void fetchFinished(Fetch fetch, long nanos, Throwable failure) {
+		var tags = tags(fetch);
+		timer(".fetch", tags.and("outcome", failure == null ? "success" : "failure")).record(nanos, TimeUnit.NANOSECONDS);
+		summary(".fetch.roots", tags).record(fetch.getRoots());
+	}
+
+	@Override
+	public void attributeFetched(AttributeFetch attribute) {
+		var tags = tags(attribute.getFetch()).and("attribute", attribute.getAttribute());
+		timer(".attribute", tags).record(attribute.getNanos(), TimeUnit.NANOSECONDS);
+		summary(".attribute.rows", tags).record(attribute.getRows());
+		summary(".attribute.stitched", tags).record(attribute.getStitched());
+		summary(".attribute.cached.keys", tags).record(attribute.getCachedKeys());
+	}
+
+	@Override
+	public void chunkQueried(ChunkQuery chunk) {
+		var tags = tags(chunk.getFetch()).and("attribute", chunk.getAttribute());
+		timer(".chunk", tags).record(chunk.getNanos(), TimeUnit.NANOSECONDS);
+		summary(".chunk.keys", tags).record(chunk.getKeys());
+	}
+
+	@Override
+	public void planCompiled(PlanCompilation compilation) {
+		var tags = Tags.of("entity", compilation.getEntityType().getSimpleName(), "name", compilation.getName(),
+				"kind", compilation.isEntityGraph() ? "graph" : "attribute");
+		timer(".plan.compile", tags).record(compilation.getNanos(), TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public String toString() {
+		return "MicrometerFetchListener(" + prefix + ")";
+	}
+}
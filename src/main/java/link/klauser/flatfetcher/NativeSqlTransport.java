@@ -0,0 +1,116 @@
+// Copyright 2020 Christian Klauser
+//
+// Licensed under the Apache License,Version2.0(the"License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,software
+// distributed under the License is distributed on an"AS IS"BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package link.klauser.flatfetcher;
+
+import java.util.List;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.SingularAttribute;
+
+import lombok.Value;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.mapping.Column;
+import org.hibernate.persister.entity.SingleTableEntityPersister;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.type.Type;
+
+/**
+ * <p>
+ * Base class for transports that cannot be expressed in JPQL. Produces
+ * {@code select {t.*} from <target table> t <key set clause>} and lets Hibernate map the result to managed entities.
+ * </p>
+ * <p>
+ *     Only supports entities that are mapped to a single table (no {@code JOINED} or {@code TABLE_PER_CLASS}
+ *     inheritance).
+ * </p>
+ */
+abstract class NativeSqlTransport implements KeySetTransport {
+
+	static final String TARGET_ALIAS = "t";
+
+	/**
+	 * The column that the keys are matched against.
+	 */
+	@Value
+	static class KeyColumn {
+		/**
+		 * The column name, qualified with {@link #TARGET_ALIAS}.
+		 */
+		String qualifiedName;
+		/**
+		 * The Hibernate type of the key attribute.
+		 */
+		Type type;
+		/**
+		 * The SQL type of the column according to the dialect, e.g., {@code varchar(255)}.
+		 */
+		String sqlTypeName;
+	}
+
+	@Override
+	public <A> KeySetQuery<A> compile(EntityManagerFactory emf, EntityType<A> targetType,
+			SingularAttribute<? super A, ?> keyAttr) {
+		var factory = emf.unwrap(SessionFactoryImplementor.class);
+		var entityPersister = factory.getMetamodel().entityPersister(targetType.getJavaType());
+		if (!(entityPersister instanceof SingleTableEntityPersister)) {
+			throw FlatFetcherException.onAttr(this + " only supports entities mapped to a single table. Cannot query by ",
+					keyAttr);
+		}
+		var persister = (SingleTableEntityPersister) entityPersister;
+		var columns = persister.toColumns(TARGET_ALIAS, keyAttr.getName());
+		if (columns.length != 1) {
+			throw FlatFetcherException.onAttr(this + " only supports keys mapped to exactly one column. Cannot query by ",
+					keyAttr);
+		}
+		var keyType = persister.getPropertyType(keyAttr.getName());
+		var sqlTypeName = factory.getJdbcServices().getDialect().getTypeName(keyType.sqlTypes(factory)[0],
+				Column.DEFAULT_LENGTH, Column.DEFAULT_PRECISION, Column.DEFAULT_SCALE);
+		var keyColumn = new KeyColumn(columns[0], keyType, sqlTypeName);
+
+		var sql = "select {" + TARGET_ALIAS + ".*} from " + persister.getTableName() + " " + TARGET_ALIAS + " "
+				+ keySetClause(factory, keyColumn);
+		var targetClass = targetType.getJavaType();
+		return (session, keys, options) -> {
+			prepareKeys(session, keyColumn, keys);
+			@SuppressWarnings("unchecked")
+			NativeQuery<A> query = session.createNativeQuery(sql)
+					.addEntity(TARGET_ALIAS, targetClass);
+			bindKeys(query, session, keyColumn, keys);
+			PlanUtils.applyExecutionProfile(query, session, options);
+			return query.getResultList();
+		};
+	}
+
+	/**
+	 * Renders the SQL that follows {@code from <target table> t}, for example a {@code join} or a {@code where} clause.
+	 * Called once per fetch plan.
+	 */
+	protected abstract String keySetClause(SessionFactoryImplementor factory, KeyColumn keyColumn);
+
+	/**
+	 * Prepares the key set on the connection of the session before each query, if necessary.
+	 */
+	protected void prepareKeys(SharedSessionContractImplementor session, KeyColumn keyColumn, List<?> keys) {
+		// nothing to prepare by default
+	}
+
+	/**
+	 * Binds the parameters of the {@link #keySetClause(SessionFactoryImplementor, KeyColumn)}, if there are any.
+	 */
+	protected void bindKeys(NativeQuery<?> query, SharedSessionContractImplementor session, KeyColumn keyColumn, List<?> keys) {
+		// no parameters by default
+	}
+}
@@ -15,7 +15,7 @@
 package link.klauser.flatfetcher;
 
 import static java.util.stream.Collectors.groupingBy;
-import static link.klauser.flatfetcher.PlanUtils.chunks;
+import static java.util.stream.Collectors.toList;
 
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -23,11 +23,11 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Supplier;
 import javax.persistence.EntityManager;
 import javax.persistence.OneToMany;
-import javax.persistence.criteria.CriteriaQuery;
-import javax.persistence.criteria.Root;
 import javax.persistence.metamodel.EntityType;
 import javax.persistence.metamodel.PluralAttribute;
 import javax.persistence.metamodel.SingularAttribute;
@@ -45,15 +45,17 @@ class OneToManyPlan<X, C extends Collection<A>, A, K extends Serializable> imple
 
 	final Accessor<? super X, K> rootIdAccessor;
 
+	final String collectionRole;
+
+	final Map<KeySetTransport, KeySetQuery<A>> keySetQueries = new ConcurrentHashMap<>();
+
 	OneToManyPlan(EntityType<X> rootType, PluralAttribute<? super X, C, A> fetchAttr) {
 		this.fetchAttr = fetchAttr;
 		rootField = Accessor.of(fetchAttr);
 		targetType = fetchAttr.getElementType();
-		var oneToManyAnnotation = PlanUtils.findAnnotation(fetchAttr, OneToMany.class);
-		var mappedByAttrName = oneToManyAnnotation.mappedBy();
+		var mappedByAttrName = AttributeMapping.of(fetchAttr).mappedBy(OneToMany.class);
 		if (mappedByAttrName.isBlank()) {
-			throw FlatFetcherException.onAttr("FlatFetcher does not support unidirectional @OneToMany. "
-					+ "`mappedBy` is required.", fetchAttr);
+			throw FlatFetcherException.onAttr("Expected `mappedBy` on ", fetchAttr);
 		}
 		@SuppressWarnings("unchecked")
 		var mappedByAttr = (SingularAttribute<A, X>)((EntityType<A>) targetType).getSingularAttribute(mappedByAttrName);
@@ -65,6 +67,7 @@ class OneToManyPlan<X, C extends Collection<A>, A, K extends Serializable> imple
 		mappedByIdAccessor = Accessor.forIdOf(mappedByAttr);
 		emptyCollectionSupplier = PlanUtils.emptyCollectionSupplierFor(fetchAttr);
 		this.rootIdAccessor = PlanUtils.referencedColumnAccessor(rootType, mappedByAttr);
+		collectionRole = PlanUtils.collectionRole(rootType, fetchAttr);
 		if(!mappedByIdAccessor.attr().getJavaType().isAssignableFrom(rootIdAccessor.attr().getJavaType())) {
 			throw FlatFetcherException.onAttr("Key type on root (" + rootIdAccessor.attr().getJavaType() + " "
 					+ rootIdAccessor.attr()+ ") does not match type on mappedBy FK ("
@@ -73,24 +76,56 @@ class OneToManyPlan<X, C extends Collection<A>, A, K extends Serializable> imple
 	}
 
 	@Override
-	public Collection<A> fetch(EntityManager em, Collection<? extends X> roots, int batchSize) {
-		var cb = em.getCriteriaBuilder();
-		Map<K, List<A>> byRootId = chunks(roots.stream(), batchSize).flatMap(rootsChunk -> {
-			CriteriaQuery<A> assocQ = cb.createQuery(targetType.getJavaType());
-			Root<A> fromTarget = assocQ.from(targetType.getJavaType());
-			assocQ.where(fromTarget.get(mappedByAccessor.singularAttr().getName()).in(rootsChunk));
-			return em.createQuery(assocQ).getResultStream();
-		}).collect(groupingBy(mappedByIdAccessor::get));
+	public List<?> keys(Collection<? extends X> roots) {
+		return roots.stream().map(rootIdAccessor::get).collect(toList());
+	}
+
+	@Override
+	public Accessor<? super X, ?> rootAttribute() {
+		return rootField;
+	}
+
+	@Override
+	public SingularAttribute<? super X, ?> rootKeyAttribute() {
+		return rootIdAccessor.singularAttr();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public EntityType<A> targetType() {
+		return (EntityType<A>) targetType;
+	}
+
+	@Override
+	public Accessor<? super A, ?> keyAccessor() {
+		return mappedByIdAccessor;
+	}
+
+	@Override
+	public Optional<String> collectionRole() {
+		return Optional.of(collectionRole);
+	}
+
+	@Override
+	public Map<KeySetTransport, KeySetQuery<A>> keySetQueries() {
+		return keySetQueries;
+	}
+
+	@Override
+	public Collection<A> stitch(EntityManager em, Collection<? extends X> roots, Collection<A> loaded) {
+		Map<K, List<A>> byRootId = loaded.stream().collect(groupingBy(mappedByIdAccessor::get));
 
 		var fetched = new ArrayList<A>();
+		var rootSetter = rootField.bulkSetter(em);
+		var mappedBySetter = mappedByAccessor.bulkSetter(em);
 		for (X root : roots) {
 			var rootCollection = emptyCollectionSupplier.get();
-			rootField.set(em, root, rootCollection);
+			rootSetter.set(root, rootCollection);
 			var children = byRootId.getOrDefault(rootIdAccessor.get(root), Collections.emptyList());
 			rootCollection.addAll(children);
 			fetched.addAll(children);
 			for (var child : children) {
-				mappedByAccessor.set(em, child, root);
+				mappedBySetter.set(child, root);
 			}
 		}
 		return fetched;
@@ -14,16 +14,15 @@
 
 package link.klauser.flatfetcher;
 
-import static link.klauser.flatfetcher.PlanUtils.chunks;
+import static java.util.stream.Collectors.toList;
 
 import java.io.Serializable;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.persistence.EntityManager;
-import javax.persistence.OneToOne;
-import javax.persistence.criteria.CriteriaQuery;
-import javax.persistence.criteria.Root;
 import javax.persistence.metamodel.Attribute;
 import javax.persistence.metamodel.EntityType;
 import javax.persistence.metamodel.SingularAttribute;
@@ -39,11 +38,13 @@ class OneToOneOppositePlan<X, A, K extends Serializable> implements FetchPlan<X,
 
 	final Accessor<? super X, K> rootIdAccessor;
 
-	OneToOneOppositePlan(EntityType<X> rootType, SingularAttribute<X, A> fetchAttr, OneToOne oneToOneAnnotation) {
+	final Map<KeySetTransport, KeySetQuery<A>> keySetQueries = new ConcurrentHashMap<>();
+
+	OneToOneOppositePlan(EntityType<X> rootType, SingularAttribute<X, A> fetchAttr, String mappedBy) {
 		targetType = (EntityType<A>) fetchAttr.getType();
 		rootField = Accessor.of(fetchAttr);
 		@SuppressWarnings("unchecked")
-		Attribute<A, X> mappedByAttr = (Attribute<A, X>) targetType.getAttribute(oneToOneAnnotation.mappedBy());
+		Attribute<A, X> mappedByAttr = (Attribute<A, X>) targetType.getAttribute(mappedBy);
 		if(!mappedByAttr.getJavaType().isAssignableFrom(rootType.getJavaType())) {
 			throw FlatFetcherException.onAttr("Type " + mappedByAttr.getJavaType() + " is not compatible with "
 					+ rootType.getJavaType() + ". Attribute: ", mappedByAttr);
@@ -65,30 +66,55 @@ class OneToOneOppositePlan<X, A, K extends Serializable> implements FetchPlan<X,
 	}
 
 	@Override
-	public Collection<A> fetch(EntityManager em, Collection<? extends X> roots, int batchSize) {
-		var cb = em.getCriteriaBuilder();
+	public List<?> keys(Collection<? extends X> roots) {
+		return roots.stream().map(rootIdAccessor::get).collect(toList());
+	}
+
+	@Override
+	public Accessor<? super X, ?> rootAttribute() {
+		return rootField;
+	}
+
+	@Override
+	public SingularAttribute<? super X, ?> rootKeyAttribute() {
+		return rootIdAccessor.singularAttr();
+	}
+
+	@Override
+	public EntityType<A> targetType() {
+		return targetType;
+	}
+
+	@Override
+	public Accessor<? super A, ?> keyAccessor() {
+		return mappedByIdAccessor;
+	}
+
+	@Override
+	public Map<KeySetTransport, KeySetQuery<A>> keySetQueries() {
+		return keySetQueries;
+	}
+
+	@Override
+	public Collection<A> stitch(EntityManager em, Collection<? extends X> roots, Collection<A> loaded) {
 		Map<K, A> byMappedById = new HashMap<>();
-		// select t from Target t where t.mappedBy in (:roots)
-		chunks(roots.stream(), batchSize).flatMap(rootsChunk -> {
-			CriteriaQuery<A> assocQ = cb.createQuery(targetType.getJavaType());
-			Root<A> fromTarget = assocQ.from(targetType.getJavaType());
-			assocQ.where(fromTarget.get(mappedByAccessor.singularAttr()).in(rootsChunk));
-			return em.createQuery(assocQ).getResultStream();
-		}).forEach(associated -> {
+		for (var associated : loaded) {
 			var id = mappedByIdAccessor.get(associated);
 			var previous = byMappedById.put(id, associated);
 			if (previous != null && previous != associated) {
 				log.warn("Query for {} by {} resulted in two different objects that map to the same FK {}.",
 						targetType.getName(), mappedByAccessor.attr().getName(), id);
 			}
-		});
+		}
 
+		var rootSetter = rootField.bulkSetter(em);
+		var mappedBySetter = mappedByAccessor.bulkSetter(em);
 		for(var root : roots) {
 			var fkId = rootIdAccessor.get(root);
 			var associatedEntity = byMappedById.get(fkId);
-			rootField.set(em, root, associatedEntity);
+			rootSetter.set(root, associatedEntity);
 			if (associatedEntity != null) {
-				mappedByAccessor.set(em, associatedEntity, root);
+				mappedBySetter.set(associatedEntity, root);
 			}
 		}
 		return byMappedById.values();
@@ -16,16 +16,15 @@ package link.klauser.flatfetcher;
 
 import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toList;
-import static link.klauser.flatfetcher.PlanUtils.chunks;
 
 import java.io.Serializable;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.persistence.EntityManager;
 import javax.persistence.OneToOne;
-import javax.persistence.criteria.CriteriaQuery;
-import javax.persistence.criteria.Root;
 import javax.persistence.metamodel.EntityType;
 import javax.persistence.metamodel.SingularAttribute;
 
@@ -41,14 +40,17 @@ class OneToOneOwningPlan<X, A, K extends Serializable> implements FetchPlan<X, A
 
 	final Accessor<? super X, K> attrIdAccessor;
 
+	final Map<KeySetTransport, KeySetQuery<A>> keySetQueries = new ConcurrentHashMap<>();
+
 	OneToOneOwningPlan(EntityType<X> rootType, SingularAttribute<X, A> fetchAttr) {
 		targetType = (EntityType<A>) fetchAttr.getType();
 		rootField = Accessor.of(fetchAttr);
 		var mappedByCandidates = targetType.getSingularAttributes()
 				.stream()
-				.filter(mappedByAttr -> PlanUtils.findAnnotationOpt(mappedByAttr, OneToOne.class)
-						.map(annot -> fetchAttr.getName().equals(annot.mappedBy()))
-						.orElse(false))
+				.filter(mappedByAttr -> {
+					var mapping = AttributeMapping.of(mappedByAttr);
+					return mapping.is(OneToOne.class) && fetchAttr.getName().equals(mapping.getMappedBy());
+				})
 				.limit(2)
 				.collect(toList());
 		if(mappedByCandidates.size() > 1) {
@@ -88,28 +90,54 @@ class OneToOneOwningPlan<X, A, K extends Serializable> implements FetchPlan<X, A
 	}
 
 	@Override
-	public Collection<A> fetch(EntityManager em, Collection<? extends X> roots, int batchSize) {
+	public List<?> keys(Collection<? extends X> roots) {
+		return roots.stream().map(attrIdAccessor::get).collect(toList());
+	}
+
+	@Override
+	public Accessor<? super X, ?> rootAttribute() {
+		return rootField;
+	}
+
+	@Override
+	public SingularAttribute<? super X, ?> rootKeyAttribute() {
+		return attrIdAccessor.singularAttr();
+	}
+
+	@Override
+	public EntityType<A> targetType() {
+		return targetType;
+	}
+
+	@Override
+	public Accessor<? super A, ?> keyAccessor() {
+		return targetIdAccessor;
+	}
+
+	@Override
+	public Map<KeySetTransport, KeySetQuery<A>> keySetQueries() {
+		return keySetQueries;
+	}
+
+	@Override
+	public Collection<A> stitch(EntityManager em, Collection<? extends X> roots, Collection<A> loaded) {
 		Map<K, A> byId = new HashMap<>();
-		var cb = em.getCriteriaBuilder();
-		chunks(roots.stream().map(attrIdAccessor::get), batchSize).flatMap(targetIds -> {
-			CriteriaQuery<A> assocQ = cb.createQuery(targetType.getJavaType());
-			Root<A> fromTarget = assocQ.from(targetType.getJavaType());
-			assocQ.where(fromTarget.get(targetIdAccessor.singularAttr()).in(targetIds));
-			return em.createQuery(assocQ).getResultStream();
-		}).forEach(associated -> {
+		for (var associated : loaded) {
 			var id = targetIdAccessor.get(associated);
 			var previous = byId.put(id, associated);
 			if (previous != null && previous != associated) {
 				log.warn("Query for {} by {} resulted in two different objects that map to the same FK {}.",
 						targetType.getName(), targetIdAccessor.singularAttr().getName(), id);
 			}
-		});
+		}
+		var rootSetter = rootField.bulkSetter(em);
+		var mappedBySetter = mappedByAccessor == null ? null : mappedByAccessor.bulkSetter(em);
 		for (var root : roots) {
 			var fkId = attrIdAccessor.get(root);
 			var associatedEntity = byId.get(fkId);
-			rootField.set(em, root, associatedEntity);
-			if (mappedByAccessor != null && associatedEntity != null) {
-				mappedByAccessor.set(em, associatedEntity, root);
+			rootSetter.set(root, associatedEntity);
+			if (mappedBySetter != null && associatedEntity != null) {
+				mappedBySetter.set(associatedEntity, root);
 			}
 		}
 		return byId.values();
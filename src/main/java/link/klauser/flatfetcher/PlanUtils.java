@@ -14,6 +14,8 @@
 
 package link.klauser.flatfetcher;
 
+import static java.util.stream.Collectors.toList;
+
 import java.io.Serializable;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.AnnotatedElement;
@@ -23,18 +25,24 @@ import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Spliterator;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
-import javax.persistence.JoinColumn;
 import javax.persistence.metamodel.Attribute;
 import javax.persistence.metamodel.EntityType;
 import javax.persistence.metamodel.PluralAttribute;
 import javax.persistence.metamodel.SingularAttribute;
 
+import org.hibernate.FlushMode;
+import org.hibernate.Hibernate;
+import org.hibernate.StatelessSession;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.query.Query;
+
 final class PlanUtils {
 
 	private PlanUtils() {
@@ -55,12 +63,6 @@ final class PlanUtils {
 		}
 	}
 
-	static <A extends Annotation> A findAnnotation(Attribute<?, ?> metaAttr, Class<A> annotationClass) {
-		return findAnnotationOpt(metaAttr, annotationClass)
-				.orElseThrow(() -> FlatFetcherException.onAttr(
-						"Expected @" + annotationClass.getSimpleName() + " annotation on ", metaAttr));
-	}
-
 	static <A extends Annotation> Optional<A> findAnnotationOpt(Attribute<?, ?> metaAttr, Class<A> annotationClass) {
 		var member = (AnnotatedElement & Member) metaAttr.getJavaMember();
 		return Optional.ofNullable(member.getAnnotation(annotationClass))
@@ -94,8 +96,8 @@ final class PlanUtils {
 			EntityType<? super X> rootType,
 			Attribute<? super A, X> mappedByAttr) {
 		Accessor<? super X, K> referencedColumnAccessor;
-		var mappedByJoinColumnAnnotation = findAnnotation(mappedByAttr, JoinColumn.class);
-		if(mappedByJoinColumnAnnotation.referencedColumnName().isBlank()){
+		var referencedColumnName = AttributeMapping.of(mappedByAttr).joinColumnReferencedColumnName();
+		if(referencedColumnName.isBlank()){
 			@SuppressWarnings("unchecked")
 			var genericRootIdAccess = (Accessor<? super X, K>) Accessor.forPrimaryKeyOf(rootType);
 			referencedColumnAccessor = genericRootIdAccess;
@@ -103,16 +105,115 @@ final class PlanUtils {
 		else {
 			@SuppressWarnings("unchecked")
 			SingularAttribute<X, K> referencedRootAttr = (SingularAttribute<X, K>) rootType
-					.getSingularAttribute(mappedByJoinColumnAnnotation.referencedColumnName());
+					.getSingularAttribute(referencedColumnName);
 			referencedColumnAccessor = Accessor.of(referencedRootAttr);
 		}
 		return referencedColumnAccessor;
 	}
 
+	/**
+	 * The role of the Hibernate collection behind {@code attribute}, such as {@code "com.example.Car.doors"}. Hibernate names
+	 * collections after the entity that declares them. Attributes of a mapped superclass belong to the entity that inherits
+	 * them.
+	 */
+	static String collectionRole(EntityType<?> rootType, PluralAttribute<?, ?, ?> attribute) {
+		var ownerType = attribute.getDeclaringType() instanceof EntityType ? attribute.getDeclaringType() : rootType;
+		return ownerType.getJavaType().getName() + "." + attribute.getName();
+	}
+
+	/**
+	 * Applies the read-only, flush mode and fetch size settings of {@code options} to a chunk query. Read-only and flush mode
+	 * are properties of the persistence context and are therefore skipped for stateless sessions.
+	 */
+	static void applyExecutionProfile(Query<?> query, SharedSessionContractImplementor session, FetchOptions options) {
+		if (options.getFetchSize() > 0) {
+			query.setFetchSize(options.getFetchSize());
+		}
+		if (session instanceof StatelessSession) {
+			return;
+		}
+		if (options.isReadOnly()) {
+			query.setReadOnly(true);
+		}
+		if (!options.isAutoFlush()) {
+			query.setHibernateFlushMode(FlushMode.MANUAL);
+		}
+	}
+
+	/**
+	 * Whether the attribute of {@code owner} has been loaded (or assigned). Checks the bytecode enhancement interceptor first,
+	 * so that reading the value doesn't trigger lazy loading, and then the value itself (uninitialized collection or proxy).
+	 */
+	static <X> boolean isInitialized(X owner, Accessor<? super X, ?> accessor) {
+		if (!Hibernate.isPropertyInitialized(owner, accessor.attr().getName())) {
+			return false;
+		}
+		var value = accessor.get(owner);
+		if (value == null) {
+			// Without bytecode enhancement, a collection that has never been loaded is `null`. A to-one might just be empty.
+			return !accessor.attr().isCollection();
+		}
+		return Hibernate.isInitialized(value);
+	}
+
+	/**
+	 * Whether {@code attr} is an ordinary column that gets loaded together with its entity (and doesn't need a fetch plan).
+	 */
+	static boolean isColumn(Attribute<?, ?> attr) {
+		return attr.getPersistentAttributeType() == Attribute.PersistentAttributeType.BASIC;
+	}
+
 	static String shortAttrDescription(Attribute<?, ?> metaAttr) {
 		return metaAttr.getDeclaringType().getJavaType().getSimpleName() + "#" + metaAttr.getJavaMember().getName();
 	}
 
+	/**
+	 * The keys without {@code null} and without duplicates, in the order of their first occurrence.
+	 */
+	static <T> List<T> distinctKeys(Stream<T> keys) {
+		return keys.filter(Objects::nonNull).distinct().collect(toList());
+	}
+
+	/**
+	 * Splits {@code keys} into chunks of at most {@code batchSize} keys. Pads chunks to a bucket size if
+	 * {@link FetchOptions#isInListPadding()} is enabled.
+	 */
+	static <T> Stream<List<T>> keyChunks(List<T> keys, FetchOptions options, int batchSize) {
+		var keyChunks = chunks(keys.stream(), batchSize);
+		if (options.isInListPadding()) {
+			return keyChunks.map(chunk -> padToBucket(chunk, batchSize));
+		}
+		return keyChunks;
+	}
+
+	/**
+	 * The number of distinct keys in a (possibly {@link #padToBucket padded}) chunk.
+	 */
+	static int distinctKeyCount(List<?> chunk) {
+		return (int) chunk.stream().distinct().count();
+	}
+
+	/**
+	 * Pads {@code chunk} to the next power of two (but no more than {@code maxSize}) by repeating its last element.
+	 */
+	static <T> List<T> padToBucket(List<T> chunk, int maxSize) {
+		var bucketSize = Integer.highestOneBit(chunk.size());
+		if (bucketSize < chunk.size()) {
+			bucketSize <<= 1;
+		}
+		bucketSize = Math.min(bucketSize, maxSize);
+		if (bucketSize <= chunk.size()) {
+			return chunk;
+		}
+		var padded = new ArrayList<T>(bucketSize);
+		padded.addAll(chunk);
+		var last = chunk.get(chunk.size() - 1);
+		while (padded.size() < bucketSize) {
+			padded.add(last);
+		}
+		return padded;
+	}
+
 	static <T> Stream<List<T>> chunks(Stream<T> sourceStream, int size) {
 		var source = sourceStream.spliterator();
 		return StreamSupport.stream(new ChunksSpliterator<T>(source, size), false);
@@ -0,0 +1,188 @@
+// Copyright 2020 Christian Klauser
+//
+// Licensed under the Apache License,Version2.0(the"License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,software
+// distributed under the License is distributed on an"AS IS"BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package link.klauser.flatfetcher;
+
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import javax.persistence.AttributeNode;
+import javax.persistence.EntityManager;
+import javax.persistence.Tuple;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.PluralAttribute;
+import javax.persistence.metamodel.SingularAttribute;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.engine.spi.SessionImplementor;
+
+/**
+ * <p>
+ * Loads an entity graph as {@link ProjectionRow}s. Each node of the graph becomes a
+ * {@code select t.a, t.b, ... from Target t where t.key in (:keys)} query that only selects the basic attributes named in the
+ * graph plus the key attributes of the {@link FetchPlan}s of the node. The rows are stitched together on those keys.
+ * </p>
+ * <p>
+ *     Scalar queries don't register anything with the persistence context, so there are no managed entities, no dirty
+ *     checking and no lazy loading.
+ * </p>
+ */
+@Slf4j
+@RequiredArgsConstructor
+class ProjectionFetch {
+
+	final FlatFetcher fetcher;
+	final EntityManager em;
+	final FetchOptions options;
+
+	/**
+	 * A node of the entity graph: the attributes to select and the associations to follow.
+	 */
+	@RequiredArgsConstructor
+	static class Node {
+		final EntityType<?> type;
+		final ProjectionRow.Layout layout;
+		final int columnCount;
+		final List<Edge> edges;
+	}
+
+	/**
+	 * An association from the rows of one node to the rows of another.
+	 */
+	@RequiredArgsConstructor
+	static class Edge {
+		final String attributeName;
+		final boolean many;
+		final String rootKeyAttributeName;
+		final String targetKeyAttributeName;
+		final Node target;
+	}
+
+	<X> List<ProjectionRow> fetch(EntityType<X> rootType, Collection<?> ids, List<AttributeNode<?>> attributeNodes) {
+		var idAttr = Accessor.forPrimaryKeyOf(rootType).singularAttr();
+		var root = node(rootType, idAttr, attributeNodes);
+		var rootRows = load(root, idAttr.getName(), PlanUtils.distinctKeys(ids.stream()));
+
+		var queue = new ArrayDeque<NodeRows>();
+		queue.add(new NodeRows(root, rootRows));
+		while (!queue.isEmpty()) {
+			var current = queue.remove();
+			for (var edge : current.node.edges) {
+				var rootKeyIndex = current.node.layout.indexOf(edge.rootKeyAttributeName);
+				var keys = PlanUtils.distinctKeys(current.rows.stream().map(row -> row.values[rootKeyIndex]));
+				var targetRows = load(edge.target, edge.targetKeyAttributeName, keys);
+				stitch(current.node, current.rows, edge, targetRows);
+				if (!targetRows.isEmpty()) {
+					queue.add(new NodeRows(edge.target, targetRows));
+				}
+			}
+		}
+		return rootRows;
+	}
+
+	@RequiredArgsConstructor
+	static class NodeRows {
+		final Node node;
+		final List<ProjectionRow> rows;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private Node node(EntityType<?> type, SingularAttribute<?, ?> keyAttr, List<AttributeNode<?>> attributeNodes) {
+		var columns = new LinkedHashSet<String>();
+		columns.add(keyAttr.getName());
+		var edges = new ArrayList<Edge>();
+		for (var attributeNode : attributeNodes) {
+			var attr = type.getAttribute(attributeNode.getAttributeName());
+			if (PlanUtils.isColumn(attr)) {
+				columns.add(attr.getName());
+			}
+			else if (attr.isAssociation()) {
+				FetchPlan<?, ?> plan = fetcher.fetchPlanFor((EntityType) type, attributeNode);
+				if (plan instanceof LinkTablePlan) {
+					throw FlatFetcherException.onAttr("Projections do not support associations with a join table. Cannot project ",
+							attr);
+				}
+				columns.add(plan.rootKeyAttribute().getName());
+				var subgraphAttributeNodes = attributeNode.getSubgraphs().values().stream()
+						.flatMap(subgraph -> subgraph.getAttributeNodes().stream())
+						.collect(toList());
+				var target = node(plan.targetType(), plan.keyAttribute(), (List) subgraphAttributeNodes);
+				edges.add(new Edge(attr.getName(), attr instanceof PluralAttribute, plan.rootKeyAttribute().getName(),
+						plan.keyAttribute().getName(), target));
+			}
+			else {
+				throw FlatFetcherException.onAttr("Projections only support basic attributes and associations. Cannot project ",
+						attr);
+			}
+		}
+		var attributeNames = new ArrayList<>(columns);
+		edges.forEach(edge -> attributeNames.add(edge.attributeName));
+		return new Node(type, new ProjectionRow.Layout(type.getJavaType(), attributeNames), columns.size(), edges);
+	}
+
+	private List<ProjectionRow> load(Node node, String keyAttributeName, List<?> keys) {
+		var columnNames = node.layout.attributeNames.subList(0, node.columnCount);
+		var jpql = columnNames.stream().map(column -> "t." + column).collect(joining(", ", "select ", ""))
+				+ " from " + node.type.getName() + " t where t." + keyAttributeName
+				+ " in (:" + InListTransport.KEYS_PARAMETER + ")";
+		if (log.isDebugEnabled()) {
+			log.debug("Projection of {} by {}: {} columns, {} keys", node.type.getName(), keyAttributeName, columnNames.size(),
+					keys.size());
+		}
+		var rows = new ArrayList<ProjectionRow>();
+		var batchSize = fetcher.batchSizing.batchSize(em.getEntityManagerFactory(),
+				options.withKeySetTransport(KeySetTransport.inList()));
+		PlanUtils.keyChunks(keys, options, batchSize).forEach(chunk -> {
+			var session = em.unwrap(SessionImplementor.class);
+			var query = session.createQuery(jpql, Tuple.class)
+					.setParameterList(InListTransport.KEYS_PARAMETER, chunk);
+			PlanUtils.applyExecutionProfile(query, session, options);
+			var tuples = query.getResultList();
+			for (var tuple : tuples) {
+				var values = new Object[node.layout.attributeNames.size()];
+				System.arraycopy(tuple.toArray(), 0, values, 0, node.columnCount);
+				rows.add(new ProjectionRow(node.layout, values));
+			}
+		});
+		return rows;
+	}
+
+	private static void stitch(Node node, List<ProjectionRow> rows, Edge edge, List<ProjectionRow> targetRows) {
+		var rootKeyIndex = node.layout.indexOf(edge.rootKeyAttributeName);
+		var associationIndex = node.layout.indexOf(edge.attributeName);
+		var targetKeyIndex = edge.target.layout.indexOf(edge.targetKeyAttributeName);
+		var byKey = targetRows.stream().collect(groupingBy(row -> row.values[targetKeyIndex]));
+		for (var row : rows) {
+			var key = row.values[rootKeyIndex];
+			var associated = key == null ? List.<ProjectionRow>of() : byKey.getOrDefault(key, List.of());
+			if (edge.many) {
+				row.values[associationIndex] = List.copyOf(associated);
+			}
+			else {
+				if (associated.size() > 1) {
+					log.warn("Multiple {} rows for {}={} in projection of {}. Using the first one.",
+							edge.target.type.getName(), edge.targetKeyAttributeName, key, edge.attributeName);
+				}
+				row.values[associationIndex] = associated.isEmpty() ? null : associated.get(0);
+			}
+		}
+	}
+}
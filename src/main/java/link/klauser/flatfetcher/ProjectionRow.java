@@ -0,0 +1,134 @@
+// Copyright 2020 Christian Klauser
+//
+// Licensed under the Apache License,Version2.0(the"License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,software
+// distributed under the License is distributed on an"AS IS"BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package link.klauser.flatfetcher;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import lombok.Getter;
+
+/**
+ * <p>
+ * A single entity loaded by {@link FlatFetcher#fetchProjection(Class, java.util.Collection, String)}. Holds the values of the
+ * attributes named in the entity graph, the key attributes needed to stitch rows together and, for every association in
+ * the entity graph, the associated rows.
+ * </p>
+ * <p>
+ *     Rows are plain values. They are not attached to any persistence context and never trigger lazy loading.
+ *     Rows of {@code @ManyToOne} associations are shared between all rows that refer to the same entity.
+ * </p>
+ */
+public final class ProjectionRow {
+
+	/**
+	 * The attribute names of all rows of the same entity graph node. Shared between these rows.
+	 */
+	static final class Layout {
+		@Getter
+		final Class<?> type;
+		final List<String> attributeNames;
+		final Map<String, Integer> indexes = new HashMap<>();
+
+		Layout(Class<?> type, List<String> attributeNames) {
+			this.type = type;
+			this.attributeNames = List.copyOf(attributeNames);
+			for (var i = 0; i < this.attributeNames.size(); i++) {
+				indexes.put(this.attributeNames.get(i), i);
+			}
+		}
+
+		int indexOf(String attributeName) {
+			var index = indexes.get(attributeName);
+			if (index == null) {
+				throw new IllegalArgumentException("Projection of " + type.getSimpleName() + " does not include attribute "
+						+ attributeName + ". Available: " + attributeNames);
+			}
+			return index;
+		}
+	}
+
+	final Layout layout;
+	final Object[] values;
+
+	ProjectionRow(Layout layout, Object[] values) {
+		this.layout = layout;
+		this.values = values;
+	}
+
+	/**
+	 * The entity class that this row is a projection of.
+	 */
+	public Class<?> getType() {
+		return layout.getType();
+	}
+
+	/**
+	 * The names of all attributes in this row, in the order of the entity graph.
+	 */
+	public List<String> getAttributeNames() {
+		return layout.attributeNames;
+	}
+
+	/**
+	 * The value of an attribute. For associations, this is a {@link ProjectionRow} ({@code XxxToOne}) or a {@link List} of
+	 * {@link ProjectionRow}s ({@code XxxToMany}).
+	 * @throws IllegalArgumentException if this row does not include the attribute.
+	 */
+	public Object get(String attributeName) {
+		return values[layout.indexOf(attributeName)];
+	}
+
+	/**
+	 * Like {@link #get(String)}, but cast to {@code type}.
+	 */
+	public <T> T get(String attributeName, Class<T> type) {
+		return type.cast(get(attributeName));
+	}
+
+	/**
+	 * The row associated via a {@code XxxToOne} association. {@code null} if there is no associated entity.
+	 */
+	public ProjectionRow getOne(String associationName) {
+		return get(associationName, ProjectionRow.class);
+	}
+
+	/**
+	 * The rows associated via a {@code XxxToMany} association. Never {@code null}.
+	 */
+	@SuppressWarnings("unchecked")
+	public List<ProjectionRow> getMany(String associationName) {
+		return (List<ProjectionRow>) get(associationName, List.class);
+	}
+
+	/**
+	 * The attributes of this row as a map from attribute name to value, in the order of the entity graph. Associated rows
+	 * are not converted.
+	 */
+	public Map<String, Object> toMap() {
+		var map = new LinkedHashMap<String, Object>();
+		for (var i = 0; i < values.length; i++) {
+			map.put(layout.attributeNames.get(i), values[i]);
+		}
+		return map;
+	}
+
+	@Override
+	public String toString() {
+		return getType().getSimpleName() + Arrays.toString(values);
+	}
+}
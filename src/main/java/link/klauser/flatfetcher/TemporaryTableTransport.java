@@ -0,0 +1,338 @@
+// Copyright 2020 Christian Klauser
+//
+// Licensed under the Apache License,Version2.0(the"License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,software
+// distributed under the License is distributed on an"AS IS"BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package link.klauser.flatfetcher;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.hql.spi.id.AbstractMultiTableBulkIdStrategyImpl;
+import org.hibernate.hql.spi.id.global.GlobalTemporaryTableBulkIdStrategy;
+import org.hibernate.hql.spi.id.local.LocalTemporaryTableBulkIdStrategy;
+import org.hibernate.jdbc.AbstractWork;
+
+/**
+ * <p>
+ * Inserts the keys into a temporary table {@code flat_fetcher_keys_<type>(k <type>)} and then runs
+ * {@code select {t.*} from Target t join flat_fetcher_keys_<type> k on k.k = t.key}.
+ * </p>
+ * <p>
+ *     There is one temporary table per SQL type of key. The DDL comes from the temporary table support of the dialect, the
+ *     same that Hibernate uses for multi-table bulk updates. Dialects without temporary tables are rejected when the fetch
+ *     plan is compiled. Local temporary tables are created without {@code on commit drop}, so that they live as long as the
+ *     connection.
+ * </p>
+ * <p>
+ *     Local temporary tables are created once per connection, on first use. Global temporary tables (e.g., Oracle and DB2)
+ *     are shared by all connections and created once per session factory, outside of the current transaction. A table that
+ *     already exists counts as created. On databases with transactional DDL, a table is created again after the
+ *     transaction that created it has been rolled back.
+ * </p>
+ * <p>
+ *     Before each chunk query, the keys of the previous use are deleted and the new keys are inserted in a single JDBC
+ *     batch. These statements run through the session's JDBC coordinator and are visible to statement inspectors and
+ *     interceptors. The DDL runs directly on the connection and is not.
+ * </p>
+ */
+final class TemporaryTableTransport extends NativeSqlTransport {
+
+	static final TemporaryTableTransport INSTANCE = new TemporaryTableTransport();
+
+	static final String TABLE_PREFIX = "flat_fetcher_keys_";
+
+	/**
+	 * The temporary table DDL of each dialect, empty if the dialect has no temporary tables.
+	 */
+	final Map<Dialect, Optional<TableSyntax>> syntaxByDialect = new ConcurrentHashMap<>();
+
+	/**
+	 * The temporary tables that have been created on each (physical) connection. Weak keys, so that closed connections
+	 * go away.
+	 */
+	final Map<Connection, Set<String>> tablesByConnection = Collections.synchronizedMap(new WeakHashMap<>());
+
+	/**
+	 * The global temporary tables that have been created for each session factory. They are shared by all connections.
+	 */
+	private final Map<SessionFactoryImplementor, Set<String>> globalTablesByFactory =
+			Collections.synchronizedMap(new WeakHashMap<>());
+
+	TemporaryTableTransport() {
+	}
+
+	/**
+	 * How a dialect creates temporary tables.
+	 */
+	@Value
+	static class TableSyntax {
+		String createCommand;
+		String tablePrefix;
+		String options;
+		/**
+		 * Whether the table is shared by all connections (e.g., Oracle and DB2) instead of being private to one.
+		 */
+		boolean global;
+
+		String tableName(KeyColumn keyColumn) {
+			return tablePrefix + TABLE_PREFIX + keyColumn.getSqlTypeName().replaceAll("[^A-Za-z0-9]+", "_").toLowerCase();
+		}
+
+		String createTableStatement(KeyColumn keyColumn) {
+			return createCommand + " " + tableName(keyColumn) + " (k " + keyColumn.getSqlTypeName() + ")"
+					+ (options.isEmpty() ? "" : " " + options);
+		}
+	}
+
+	/**
+	 * Derives the temporary table DDL from the {@link Dialect#getDefaultMultiTableBulkIdStrategy() bulk id strategy} of the
+	 * dialect. Empty if the strategy doesn't use temporary tables.
+	 */
+	static Optional<TableSyntax> tableSyntax(Dialect dialect) {
+		var strategy = dialect.getDefaultMultiTableBulkIdStrategy();
+		if (!(strategy instanceof LocalTemporaryTableBulkIdStrategy)
+				&& !(strategy instanceof GlobalTemporaryTableBulkIdStrategy)) {
+			return Optional.empty();
+		}
+		var support = ((AbstractMultiTableBulkIdStrategyImpl<?, ?>) strategy).getIdTableSupport();
+		// e.g. `#` on SQL Server and `session.` on DB2
+		var tablePrefix = support.generateIdTableName("");
+		var options = support.getCreateIdTableStatementOptions();
+		options = options == null ? "" : options.replaceAll("(?i)on\\s+commit\\s+drop", "").trim();
+		return Optional.of(new TableSyntax(support.getCreateIdTableCommand(), tablePrefix, options,
+				strategy instanceof GlobalTemporaryTableBulkIdStrategy));
+	}
+
+	private TableSyntax syntaxOf(SessionFactoryImplementor factory) {
+		var dialect = factory.getJdbcServices().getDialect();
+		return syntaxByDialect.computeIfAbsent(dialect, TemporaryTableTransport::tableSyntax)
+				.orElseThrow(() -> new FlatFetcherException("The dialect " + dialect.getClass().getSimpleName()
+						+ " does not support temporary tables. Use another key set transport, for example "
+						+ "KeySetTransport.arrayParameter()."));
+	}
+
+	@Override
+	protected String keySetClause(SessionFactoryImplementor factory, KeyColumn keyColumn) {
+		return "join " + syntaxOf(factory).tableName(keyColumn) + " k on k.k = " + keyColumn.getQualifiedName();
+	}
+
+	@Override
+	protected void prepareKeys(SharedSessionContractImplementor session, KeyColumn keyColumn, List<?> keys) {
+		var syntax = syntaxOf(session.getFactory());
+		var tableName = syntax.tableName(keyColumn);
+		if (syntax.isGlobal()) {
+			createGlobalTable(session, syntax.createTableStatement(keyColumn), tableName);
+		}
+		else {
+			createLocalTable(session, syntax.createTableStatement(keyColumn), tableName);
+		}
+		var distinctKeys = keys.stream().filter(Objects::nonNull).distinct().toArray();
+		executeUpdate(session, "delete from " + tableName);
+		var insertSql = "insert into " + tableName + " (k) values (?)";
+		var insert = session.getJdbcCoordinator().getStatementPreparer().prepareStatement(insertSql);
+		try {
+			for (var key : distinctKeys) {
+				keyColumn.getType().nullSafeSet(insert, key, 1, session);
+				insert.addBatch();
+			}
+			insert.executeBatch();
+		}
+		catch (SQLException e) {
+			throw session.getJdbcServices().getSqlExceptionHelper().convert(e, "Could not insert keys", insertSql);
+		}
+		finally {
+			release(session, insert);
+		}
+	}
+
+	/**
+	 * Creates a global temporary table once per session factory. The DDL commits the current transaction on some databases
+	 * (e.g., Oracle), so it runs on a connection of its own.
+	 */
+	private void createGlobalTable(SharedSessionContractImplementor session, String createSql, String tableName) {
+		var tables = globalTablesByFactory.computeIfAbsent(session.getFactory(), f -> ConcurrentHashMap.newKeySet());
+		if (tables.contains(tableName)) {
+			return;
+		}
+		synchronized (tables) {
+			if (tables.contains(tableName)) {
+				return;
+			}
+			session.getTransactionCoordinator().createIsolationDelegate().delegateWork(new AbstractWork() {
+				@Override
+				public void execute(Connection connection) throws SQLException {
+					createUnlessExists(connection, createSql, tableName);
+				}
+			}, false);
+			tables.add(tableName);
+		}
+	}
+
+	/**
+	 * Creates a local temporary table once per connection. A connection that has been seen before can come back behind a
+	 * new pool wrapper, in which case it is treated like a new connection: the table already exists and is used as is.
+	 */
+	private void createLocalTable(SharedSessionContractImplementor session, String createSql, String tableName) {
+		var connection = session.getJdbcCoordinator().getLogicalConnection().getPhysicalConnection();
+		var tables = tablesByConnection.computeIfAbsent(physicalConnection(connection),
+				c -> ConcurrentHashMap.newKeySet());
+		if (!tables.add(tableName)) {
+			return;
+		}
+		boolean transactionalDdl;
+		try {
+			transactionalDdl = createUnlessExists(connection, createSql, tableName);
+		}
+		catch (SQLException e) {
+			tables.remove(tableName);
+			throw session.getJdbcServices().getSqlExceptionHelper().convert(e, "Could not create temporary table",
+					createSql);
+		}
+		if (transactionalDdl && session.isTransactionInProgress()) {
+			session.getTransactionCoordinator().getLocalSynchronizations().registerSynchronization(
+					new ForgetOnRollback(tables, tableName));
+		}
+	}
+
+	/**
+	 * Runs {@code createSql} directly on the connection, not through Hibernate, so that an "already exists" error is
+	 * neither logged nor turned into an exception. The DDL is therefore invisible to statement inspectors. Inside a
+	 * transaction, the statement runs under a savepoint, because some databases (e.g., PostgreSQL) refuse to continue a
+	 * transaction after a failed statement.
+	 * @return Whether the database rolls back DDL together with the transaction.
+	 * @throws SQLException If the table could not be created and doesn't exist either.
+	 */
+	static boolean createUnlessExists(Connection connection, String createSql, String tableName) throws SQLException {
+		var transactionalDdl = !connection.getAutoCommit()
+				&& connection.getMetaData().supportsDataDefinitionAndDataManipulationTransactions();
+		var savepoint = connection.getAutoCommit() ? null : setSavepoint(connection);
+		try (var statement = connection.createStatement()) {
+			statement.execute(createSql);
+		}
+		catch (SQLException e) {
+			if (savepoint != null) {
+				connection.rollback(savepoint);
+			}
+			if (!exists(connection, tableName)) {
+				throw e;
+			}
+			return transactionalDdl;
+		}
+		if (savepoint != null) {
+			releaseSavepoint(connection, savepoint);
+		}
+		return transactionalDdl;
+	}
+
+	private static boolean exists(Connection connection, String tableName) {
+		try (var statement = connection.createStatement()) {
+			statement.executeQuery("select k from " + tableName + " where 1 = 0").close();
+			return true;
+		}
+		catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private static Savepoint setSavepoint(Connection connection) {
+		try {
+			return connection.setSavepoint();
+		}
+		catch (SQLException e) {
+			// no savepoints; a failed DDL then fails the fetch on databases that abort the transaction
+			return null;
+		}
+	}
+
+	private static void releaseSavepoint(Connection connection, Savepoint savepoint) {
+		try {
+			connection.releaseSavepoint(savepoint);
+		}
+		catch (SQLException e) {
+			// e.g. Oracle doesn't release savepoints explicitly; they end with the transaction
+		}
+	}
+
+	private static void executeUpdate(SharedSessionContractImplementor session, String sql) {
+		var jdbcCoordinator = session.getJdbcCoordinator();
+		var statement = jdbcCoordinator.getStatementPreparer().prepareStatement(sql);
+		try {
+			jdbcCoordinator.getResultSetReturn().executeUpdate(statement);
+		}
+		finally {
+			release(session, statement);
+		}
+	}
+
+	private static void release(SharedSessionContractImplementor session, PreparedStatement statement) {
+		var jdbcCoordinator = session.getJdbcCoordinator();
+		jdbcCoordinator.getLogicalConnection().getResourceRegistry().release(statement);
+		jdbcCoordinator.afterStatementExecution();
+	}
+
+	/**
+	 * The connection behind the proxy of a connection pool, which hands out a new proxy for every checkout.
+	 */
+	private static Connection physicalConnection(Connection connection) {
+		try {
+			return connection.isWrapperFor(Connection.class) ? connection.unwrap(Connection.class) : connection;
+		}
+		catch (SQLException e) {
+			return connection;
+		}
+	}
+
+	/**
+	 * Forgets that a table has been created if the transaction that created it is rolled back. Only registered on
+	 * databases with transactional DDL, which drop the table again.
+	 */
+	@RequiredArgsConstructor
+	private static class ForgetOnRollback implements Synchronization {
+		final Set<String> tables;
+		final String tableName;
+
+		@Override
+		public void beforeCompletion() {
+			// nothing to do
+		}
+
+		@Override
+		public void afterCompletion(int status) {
+			if (status != Status.STATUS_COMMITTED) {
+				tables.remove(tableName);
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "temporaryTable";
+	}
+}
@@ -0,0 +1,104 @@
+// Copyright 2020 Christian Klauser
+//
+// Licensed under the Apache License,Version2.0(the"License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,software
+// distributed under the License is distributed on an"AS IS"BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package link.klauser.flatfetcher;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import javax.persistence.OneToOne;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.PluralAttribute;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+
+/**
+ * <p>
+ * Fetches a unidirectional {@code @OneToMany}, with either a {@code @JoinColumn} in the table of the targets or a join
+ * table. The targets have no attribute that refers back to their root, so each chunk query selects the targets together
+ * with the key of their root: {@code select r.key, t from Root r join r.attribute t where r.key in (:keys)}. Hibernate
+ * renders the join via the foreign key column or the join table. The table of the roots is only joined on its key.
+ * </p>
+ * <p>
+ *     That is one query per chunk of roots. Each target belongs to a single root, so there is nothing to gain from loading
+ *     the targets separately.
+ * </p>
+ * <p>
+ *     The {@code mappedBy} side of a one-to-one association of the targets is resolved right away (see
+ *     {@link #targetPlans()}). Hibernate can't tell whether such an association is {@code null} without a query, so it
+ *     would otherwise resolve it one target at a time, when the targets are loaded or flushed.
+ * </p>
+ */
+class UnidirectionalOneToManyPlan<X, C extends Collection<A>, A> extends CollectionTablePlan<X, C, A> {
+
+	final EntityType<A> targetType;
+	final Accessor<? super A, ?> targetIdAccessor;
+
+	final String linkJpql;
+
+	final List<OneToOneOppositePlan<A, ?, ?>> inverseOneToOnes = new ArrayList<>();
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	UnidirectionalOneToManyPlan(EntityType<X> rootType, PluralAttribute<? super X, C, A> fetchAttr,
+			SessionFactoryImplementor factory) {
+		super(rootType, fetchAttr, factory);
+		targetType = (EntityType<A>) fetchAttr.getElementType();
+		targetIdAccessor = Accessor.forPrimaryKeyOf(targetType);
+		linkJpql = joinJpql(rootType, fetchAttr);
+		for (var attr : targetType.getSingularAttributes()) {
+			// Hibernate reports one-to-ones as MANY_TO_ONE, only the annotation tells them apart.
+			var mapping = AttributeMapping.of(attr);
+			if (attr.isAssociation() && mapping.is(OneToOne.class) && !mapping.mappedBy(OneToOne.class).isBlank()) {
+				inverseOneToOnes.add(new OneToOneOppositePlan(targetType, attr, mapping.mappedBy(OneToOne.class)));
+			}
+		}
+	}
+
+	@Override
+	public boolean loadsTargetsWithLinks() {
+		return true;
+	}
+
+	@Override
+	public EntityType<A> targetType() {
+		return targetType;
+	}
+
+	@Override
+	public Accessor<? super A, ?> keyAccessor() {
+		return targetIdAccessor;
+	}
+
+	@Override
+	public Map<KeySetTransport, KeySetQuery<A>> keySetQueries() {
+		return Map.of();
+	}
+
+	@Override
+	public List<Link> loadLinks(SharedSessionContractImplementor session, List<?> rootKeys, FetchOptions options) {
+		return loadJoined(session, linkJpql, rootKeys, options);
+	}
+
+	@Override
+	public List<OneToOneOppositePlan<A, ?, ?>> targetPlans() {
+		return inverseOneToOnes;
+	}
+
+	@Override
+	Map<Object, List<A>> targetsByRootKey(Collection<A> loaded, List<Link> links) {
+		return joinedTargetsByRootKey(links);
+	}
+}
@@ -0,0 +1,142 @@
+// Copyright 2020 Christian Klauser
+//
+// Licensed under the Apache License,Version2.0(the"License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,software
+// distributed under the License is distributed on an"AS IS"BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package link.klauser.flatfetcher;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.FlushMode;
+import org.hibernate.LockOptions;
+import org.hibernate.Session;
+import org.hibernate.StatelessSession;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.internal.SessionImpl;
+
+/**
+ * Runs loads on short-lived "worker" sessions and moves the results back into the persistence context of the caller.
+ */
+final class WorkerSessions {
+
+	private WorkerSessions() {
+		throw new IllegalStateException("Cannot construct instance of utility class");
+	}
+
+	/**
+	 * <p>
+	 * Applies {@code work} to a fresh, read-only {@link EntityManager} created from {@code emf} inside of a resource-local
+	 * transaction.
+	 * </p>
+	 * <p>
+	 *     The transaction is always rolled back. Entities returned by {@code work} are detached before this method returns
+	 *     and can be re-attached to a different persistence context via {@link #reattach(EntityManager, Collection)}.
+	 * </p>
+	 */
+	static <T> T readOnly(EntityManagerFactory emf, Function<EntityManager, T> work) {
+		var workerEm = emf.createEntityManager();
+		try {
+			var session = workerEm.unwrap(Session.class);
+			session.setDefaultReadOnly(true);
+			session.setHibernateFlushMode(FlushMode.MANUAL);
+			var tx = workerEm.getTransaction();
+			tx.begin();
+			try {
+				return work.apply(workerEm);
+			}
+			finally {
+				// Detach everything while the session is still open, so that collections and lazy attribute interceptors
+				// let go of the worker session.
+				workerEm.clear();
+				tx.rollback();
+			}
+		}
+		finally {
+			workerEm.close();
+		}
+	}
+
+	/**
+	 * Applies {@code work} to a fresh {@link StatelessSession} opened from {@code factory} inside of a transaction that is
+	 * always rolled back. Entities returned by {@code work} are detached by definition.
+	 */
+	static <T> T stateless(SessionFactoryImplementor factory, Function<SharedSessionContractImplementor, T> work) {
+		var session = (SharedSessionContractImplementor) factory.openStatelessSession();
+		try {
+			var tx = session.getTransaction();
+			tx.begin();
+			try {
+				return work.apply(session);
+			}
+			finally {
+				tx.rollback();
+			}
+		}
+		finally {
+			session.close();
+		}
+	}
+
+	/**
+	 * <p>
+	 * Associates entities that have been loaded by a different (now closed) {@link EntityManager} with the persistence context
+	 * of {@code em}.
+	 * </p>
+	 * <p>
+	 *     If the persistence context already contains an entity with the same identity, that instance is used instead of the
+	 *     detached one. The entities are re-attached without querying the database, they are assumed to be unmodified.
+	 * </p>
+	 * @return The managed instances, in the same order as {@code detached}.
+	 */
+	@SuppressWarnings("unchecked")
+	static <A> List<A> reattach(EntityManager em, Collection<A> detached) {
+		var session = (SessionImpl) em.getDelegate();
+		var persistenceContext = session.getPersistenceContext();
+		var managed = new ArrayList<A>(detached.size());
+		for (var entity : detached) {
+			var persister = session.getEntityPersister(null, entity);
+			var entityKey = session.generateEntityKey(persister.getIdentifier(entity, session), persister);
+			var existing = persistenceContext.getEntity(entityKey);
+			if (existing == null) {
+				session.buildLockRequest(LockOptions.NONE).lock(entity);
+				managed.add(entity);
+			}
+			else {
+				managed.add((A) existing);
+			}
+		}
+		return managed;
+	}
+
+	/**
+	 * Like {@link CompletableFuture#join()} but re-throws runtime exceptions thrown by the computation without wrapping them.
+	 */
+	static <T> T join(CompletableFuture<T> future) {
+		try {
+			return future.join();
+		}
+		catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,414 @@
+// Copyright 2020 Christian Klauser
+//
+// Licensed under the Apache License,Version2.0(the"License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+// http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing,software
+// distributed under the License is distributed on an"AS IS"BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package link.klauser.flatfetcher.processor;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedOptions;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.MirroredTypeException;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.persistence.Access;
+import javax.persistence.AccessType;
+import javax.persistence.ElementCollection;
+import javax.persistence.EmbeddedId;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToMany;
+import javax.persistence.ManyToOne;
+import javax.persistence.MappedSuperclass;
+import javax.persistence.NamedAttributeNode;
+import javax.persistence.NamedEntityGraph;
+import javax.persistence.NamedSubgraph;
+import javax.persistence.OneToMany;
+import javax.persistence.OneToOne;
+import javax.persistence.Transient;
+import javax.tools.Diagnostic;
+import javax.tools.StandardLocation;
+
+/**
+ * <p>
+ * Generates a {@code Foo_Accessors} class (a {@link link.klauser.flatfetcher.GeneratedAccessors}) next to every
+ * {@code @}{@link Entity} and {@code @}{@link MappedSuperclass} {@code Foo}, and registers them all in
+ * {@code META-INF/services}. {@link link.klauser.flatfetcher.FlatFetcher} picks them up at runtime and builds its fetch
+ * plans without reflection on the entity classes.
+ * </p>
+ * <p>
+ *     The processor is opt-in. The main jar doesn't register it, so javac doesn't pick it up from the compile classpath.
+ *     Put the {@code processor} jar (classifier {@code processor}) on the annotation processor path, next to
+ *     {@code hibernate-jpamodelgen}: {@code annotationProcessor("link.klauser.flat-fetcher:flat-fetcher:<version>:processor")}
+ *     with Gradle, {@code <annotationProcessorPaths>} of the {@code maven-compiler-plugin} with Maven. Alternatively, name
+ *     it explicitly with {@code javac -processor link.klauser.flatfetcher.processor.AccessorProcessor}.
+ * </p>
+ * <p>
+ *     Attributes with property access are accessed through their JavaBean getter and setter. Attributes with field access
+ *     are read and written directly, like Hibernate does. Going through the getter and setter instead would go through the
+ *     lazy loading and dirty tracking of bytecode enhanced entities. Private fields can't be reached from the generated
+ *     class, so they are skipped and left to introspection at runtime.
+ * </p>
+ * <p>
+ *     The processor also checks the {@code @}{@link NamedEntityGraph}s and warns about attribute nodes that don't name
+ *     an attribute of their entity, about unknown subgraphs and about {@code XxxToOne} attribute nodes without the id
+ *     "companion" attribute. With {@code -A}{@value #STRICT_ENTITY_GRAPHS}{@code =true}, unknown attributes and subgraphs
+ *     are errors.
+ * </p>
+ */
+@SupportedAnnotationTypes({ "javax.persistence.Entity", "javax.persistence.MappedSuperclass" })
+@SupportedOptions(AccessorProcessor.STRICT_ENTITY_GRAPHS)
+public class AccessorProcessor extends AbstractProcessor {
+
+	static final String STRICT_ENTITY_GRAPHS = "flatfetcher.strictEntityGraphs";
+
+	static final String SUFFIX = "_Accessors";
+	static final String SERVICE_FILE = "META-INF/services/link.klauser.flatfetcher.GeneratedAccessors";
+
+	private static final List<Class<? extends java.lang.annotation.Annotation>> ASSOCIATIONS = List.of(ManyToOne.class,
+			OneToOne.class, OneToMany.class, ManyToMany.class, ElementCollection.class);
+
+	private final Set<String> generated = new LinkedHashSet<>();
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		var types = new LinkedHashSet<TypeElement>();
+		types.addAll(ElementFilter.typesIn(roundEnv.getElementsAnnotatedWith(Entity.class)));
+		types.addAll(ElementFilter.typesIn(roundEnv.getElementsAnnotatedWith(MappedSuperclass.class)));
+		for (var type : types) {
+			generateAccessors(type);
+			for (var graph : type.getAnnotationsByType(NamedEntityGraph.class)) {
+				checkNodes(type, graph.name(), type, graph.attributeNodes(), graph.subgraphs(), new HashSet<>());
+			}
+		}
+		if (roundEnv.processingOver() && !generated.isEmpty()) {
+			writeServiceFile();
+		}
+		return false;
+	}
+
+	// ---------------------------------------------------------------------------------------------------------------------
+	// Accessors
+	// ---------------------------------------------------------------------------------------------------------------------
+
+	private void generateAccessors(TypeElement type) {
+		var packageName = processingEnv.getElementUtils().getPackageOf(type).getQualifiedName().toString();
+		var className = accessorsClassName(type);
+		var qualifiedName = packageName.isEmpty() ? className : packageName + "." + className;
+		var entityName = processingEnv.getTypeUtils().erasure(type.asType()).toString();
+		var attributes = new ArrayList<String>();
+		for (var field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+			if (isPersistent(field)) {
+				var attribute = attribute(type, entityName, field);
+				if (attribute != null) {
+					attributes.add(attribute);
+				}
+			}
+		}
+		try (var out = new PrintWriter(processingEnv.getFiler().createSourceFile(qualifiedName, type).openWriter())) {
+			if (!packageName.isEmpty()) {
+				out.println("package " + packageName + ";");
+				out.println();
+			}
+			if (processingEnv.getElementUtils().getTypeElement("javax.annotation.processing.Generated") != null) {
+				out.println("@javax.annotation.processing.Generated(\"" + AccessorProcessor.class.getName() + "\")");
+			}
+			out.println("public final class " + className + " implements link.klauser.flatfetcher.GeneratedAccessors {");
+			out.println();
+			out.println("\t@Override");
+			out.println("\tpublic Class<?> entityClass() {");
+			out.println("\t\treturn " + entityName + ".class;");
+			out.println("\t}");
+			out.println();
+			out.println("\t@Override");
+			out.println("\t@SuppressWarnings({ \"unchecked\", \"rawtypes\" })");
+			out.println("\tpublic java.util.List<link.klauser.flatfetcher.GeneratedAttribute> attributes() {");
+			out.println("\t\treturn java.util.List.of(" + (attributes.isEmpty() ? "" : "\n\t\t\t\t")
+					+ String.join(",\n\t\t\t\t", attributes) + ");");
+			out.println("\t}");
+			out.println("}");
+		}
+		catch (IOException e) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+					"Cannot write " + qualifiedName + ": " + e.getMessage(), type);
+			return;
+		}
+		generated.add(qualifiedName);
+	}
+
+	/**
+	 * {@code Foo_Accessors}, or {@code Outer_Foo_Accessors} for nested classes.
+	 */
+	private static String accessorsClassName(TypeElement type) {
+		var name = new StringBuilder(type.getSimpleName());
+		for (var enclosing = type.getEnclosingElement(); enclosing instanceof TypeElement;
+				enclosing = enclosing.getEnclosingElement()) {
+			name.insert(0, enclosing.getSimpleName() + "_");
+		}
+		return name + SUFFIX;
+	}
+
+	private static boolean isPersistent(VariableElement field) {
+		return !field.getModifiers().contains(Modifier.STATIC) && !field.getModifiers().contains(Modifier.TRANSIENT)
+				&& field.getAnnotation(Transient.class) == null;
+	}
+
+	/**
+	 * The {@code GeneratedAttribute} expression for {@code field}, or {@code null} if the field can't be accessed from the
+	 * generated class.
+	 */
+	private String attribute(TypeElement type, String entityName, VariableElement field) {
+		var name = field.getSimpleName().toString();
+		var valueType = processingEnv.getTypeUtils().erasure(field.asType()).toString();
+		var owner = "((" + entityName + ") owner)";
+		String getter;
+		String setter;
+		if (accessType(type, field) == AccessType.PROPERTY) {
+			getter = owner + "." + getterName(type, field) + "()";
+			setter = owner + "." + "set" + capitalize(name) + "((" + valueType + ") value)";
+		}
+		else if (field.getModifiers().contains(Modifier.PRIVATE)) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, "Private field " + name
+					+ " is not accessible from " + accessorsClassName(type) + ", leaving it to introspection at runtime",
+					field);
+			return null;
+		}
+		else {
+			getter = owner + "." + name;
+			setter = owner + "." + name + " = (" + valueType + ") value";
+		}
+		var lambdas = "owner -> " + getter + ", (owner, value) -> " + setter;
+		var association = associationOf(type, field);
+		if (association == null) {
+			return "link.klauser.flatfetcher.GeneratedAttribute.basic(\"" + name + "\", " + lambdas + ")";
+		}
+		var joinColumn = annotation(type, field, JoinColumn.class);
+		return "link.klauser.flatfetcher.GeneratedAttribute.association(\"" + name + "\", "
+				+ association.annotationType().getName() + ".class, \"" + mappedByOf(association) + "\", "
+				+ (joinColumn == null ? "null" : "\"" + joinColumn.referencedColumnName() + "\"") + ", " + lambdas + ")";
+	}
+
+	private AccessType accessType(TypeElement type, VariableElement field) {
+		var fieldAccess = field.getAnnotation(Access.class);
+		if (fieldAccess != null) {
+			return fieldAccess.value();
+		}
+		for (Element current = type; current instanceof TypeElement; current = superclassOf((TypeElement) current)) {
+			var typeAccess = current.getAnnotation(Access.class);
+			if (typeAccess != null) {
+				return typeAccess.value();
+			}
+			// Without @Access, the placement of the id decides.
+			for (var member : current.getEnclosedElements()) {
+				if (member.getAnnotation(Id.class) != null || member.getAnnotation(EmbeddedId.class) != null) {
+					return member.getKind() == ElementKind.METHOD ? AccessType.PROPERTY : AccessType.FIELD;
+				}
+			}
+		}
+		return AccessType.FIELD;
+	}
+
+	private String getterName(TypeElement type, VariableElement field) {
+		var capitalized = capitalize(field.getSimpleName().toString());
+		if (hasMethod(type, "is" + capitalized, 0)) {
+			return "is" + capitalized;
+		}
+		if (hasMethod(type, "get" + capitalized, 0)) {
+			return "get" + capitalized;
+		}
+		return (field.asType().getKind() == TypeKind.BOOLEAN ? "is" : "get") + capitalized;
+	}
+
+	private static boolean hasMethod(TypeElement type, String name, int parameterCount) {
+		return ElementFilter.methodsIn(type.getEnclosedElements()).stream()
+				.anyMatch(method -> method.getSimpleName().contentEquals(name)
+						&& method.getParameters().size() == parameterCount);
+	}
+
+	private java.lang.annotation.Annotation associationOf(TypeElement type, VariableElement field) {
+		for (var associationClass : ASSOCIATIONS) {
+			var association = annotation(type, field, associationClass);
+			if (association != null) {
+				return association;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * The annotation on the field, or else on its getter (for property access with annotated getters).
+	 */
+	private <A extends java.lang.annotation.Annotation> A annotation(TypeElement type, VariableElement field,
+			Class<A> annotationClass) {
+		var annotation = field.getAnnotation(annotationClass);
+		if (annotation != null) {
+			return annotation;
+		}
+		var getterName = getterName(type, field);
+		return ElementFilter.methodsIn(type.getEnclosedElements()).stream()
+				.filter(method -> method.getSimpleName().contentEquals(getterName) && method.getParameters().isEmpty())
+				.map(method -> method.getAnnotation(annotationClass))
+				.filter(a -> a != null)
+				.findFirst()
+				.orElse(null);
+	}
+
+	private static String mappedByOf(java.lang.annotation.Annotation association) {
+		if (association instanceof OneToMany) {
+			return ((OneToMany) association).mappedBy();
+		}
+		if (association instanceof OneToOne) {
+			return ((OneToOne) association).mappedBy();
+		}
+		if (association instanceof ManyToMany) {
+			return ((ManyToMany) association).mappedBy();
+		}
+		return "";
+	}
+
+	private void writeServiceFile() {
+		try (Writer out = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", SERVICE_FILE)
+				.openWriter()) {
+			for (var name : generated) {
+				out.write(name);
+				out.write('\n');
+			}
+		}
+		catch (IOException e) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Cannot write " + SERVICE_FILE + ": "
+					+ e.getMessage());
+		}
+	}
+
+	// ---------------------------------------------------------------------------------------------------------------------
+	// Entity graph checks
+	// ---------------------------------------------------------------------------------------------------------------------
+
+	private void checkNodes(TypeElement entity, String graphName, TypeElement type, NamedAttributeNode[] attributeNodes,
+			NamedSubgraph[] subgraphs, Set<String> visitedSubgraphs) {
+		for (var attributeNode : attributeNodes) {
+			var field = findField(type, attributeNode.value());
+			if (field == null) {
+				processingEnv.getMessager().printMessage(entityGraphErrorKind(), "Entity graph " + graphName + ": "
+						+ type.getSimpleName() + " has no attribute " + attributeNode.value(), entity);
+				continue;
+			}
+			var declaringType = (TypeElement) field.getEnclosingElement();
+			var association = associationOf(declaringType, field);
+			if ((association instanceof ManyToOne || association instanceof OneToOne && mappedByOf(association).isBlank())
+					&& findField(type, attributeNode.value() + "Id") == null) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "Entity graph " + graphName + ": "
+						+ "flat fetcher needs the id attribute " + type.getSimpleName() + "#" + attributeNode.value()
+						+ "Id to fetch " + attributeNode.value(), entity);
+			}
+			if (attributeNode.subgraph().isEmpty() || !visitedSubgraphs.add(attributeNode.subgraph())) {
+				continue;
+			}
+			var subgraph = findSubgraph(subgraphs, attributeNode.subgraph());
+			if (subgraph == null) {
+				processingEnv.getMessager().printMessage(entityGraphErrorKind(), "Entity graph " + graphName
+						+ ": there is no subgraph " + attributeNode.subgraph(), entity);
+				continue;
+			}
+			var subgraphType = subgraphType(subgraph, field);
+			if (subgraphType != null) {
+				checkNodes(entity, graphName, subgraphType, subgraph.attributeNodes(), subgraphs, visitedSubgraphs);
+			}
+		}
+	}
+
+	/**
+	 * Broken entity graphs only fail the build if asked to, as the processor may run on entities that it has not been
+	 * set up for.
+	 */
+	private Diagnostic.Kind entityGraphErrorKind() {
+		return Boolean.parseBoolean(processingEnv.getOptions().get(STRICT_ENTITY_GRAPHS))
+				? Diagnostic.Kind.ERROR
+				: Diagnostic.Kind.WARNING;
+	}
+
+	private static NamedSubgraph findSubgraph(NamedSubgraph[] subgraphs, String name) {
+		for (var subgraph : subgraphs) {
+			if (subgraph.name().equals(name)) {
+				return subgraph;
+			}
+		}
+		return null;
+	}
+
+	private VariableElement findField(TypeElement type, String name) {
+		for (var current = type; current != null; current = superclassOf(current)) {
+			for (var field : ElementFilter.fieldsIn(current.getEnclosedElements())) {
+				if (field.getSimpleName().contentEquals(name) && isPersistent(field)) {
+					return field;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * The explicit type of the subgraph, or else the (element) type of the association. {@code null} if unknown.
+	 */
+	private TypeElement subgraphType(NamedSubgraph subgraph, VariableElement field) {
+		TypeMirror explicitType;
+		try {
+			var type = subgraph.type();
+			explicitType = type == void.class ? null
+					: processingEnv.getElementUtils().getTypeElement(type.getCanonicalName()).asType();
+		}
+		catch (MirroredTypeException e) {
+			explicitType = e.getTypeMirror();
+		}
+		if (explicitType != null && explicitType.getKind() == TypeKind.DECLARED) {
+			return (TypeElement) ((DeclaredType) explicitType).asElement();
+		}
+		if (field.asType().getKind() != TypeKind.DECLARED) {
+			return null;
+		}
+		var fieldType = (DeclaredType) field.asType();
+		var typeArguments = fieldType.getTypeArguments();
+		var associated = typeArguments.isEmpty() ? fieldType : typeArguments.get(typeArguments.size() - 1);
+		return associated.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) associated).asElement() : null;
+	}
+
+	private static TypeElement superclassOf(TypeElement type) {
+		var superclass = type.getSuperclass();
+		return superclass.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) superclass).asElement() : null;
+	}
+
+	private static String capitalize(String name) {
+		return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+	}
+}
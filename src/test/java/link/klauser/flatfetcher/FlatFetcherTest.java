@@ -15,20 +15,50 @@
 package link.klauser.flatfetcher;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.springframework.transaction.annotation.Propagation.NOT_SUPPORTED;
 
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import javax.persistence.EntityManager;
+import javax.persistence.OneToMany;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import link.klauser.flatfetcher.model.Car;
 import link.klauser.flatfetcher.model.Door;
+import link.klauser.flatfetcher.model.Driver;
 import link.klauser.flatfetcher.model.Engine;
+import link.klauser.flatfetcher.model.Manufacturer;
+import link.klauser.flatfetcher.model.Mirror;
+import link.klauser.flatfetcher.model.ServiceVisit;
 import link.klauser.flatfetcher.model.Wheel;
 import lombok.extern.slf4j.Slf4j;
 import org.assertj.core.api.SoftAssertions;
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.ActiveProfiles;
@@ -62,8 +92,14 @@ public class FlatFetcherTest {
 		rwTx.executeWithoutResult(s -> {
 			deleteAll(Door.class);
 			deleteAll(Wheel.class);
+			deleteAll(Mirror.class);
+			// Bulk deletes only clear the join tables of the deleted entities, not their collection tables.
+			em.createNativeQuery("delete from car_tag").executeUpdate();
+			em.createNativeQuery("delete from car_service_visit").executeUpdate();
 			deleteAll(Car.class);
+			deleteAll(Driver.class);
 			deleteAll(Engine.class);
+			deleteAll(Manufacturer.class);
 		});
 	}
 
@@ -124,6 +160,241 @@ public class FlatFetcherTest {
 
 	}
 
+	@Test
+	void fetchFullCarConcurrently() {
+		///// GIVEN ////
+		testData1();
+		var rootCars = rwTx.execute(status ->
+				em.createQuery("select c from Car c", Car.class).getResultList()
+		);
+		assertThat(rootCars).as("rootCars").isNotNull();
+		var executor = Executors.newFixedThreadPool(3);
+		var concurrentFetcher = new FlatFetcher(em);
+		concurrentFetcher.setExecutor(executor);
+
+		///// WHEN /////
+		statementInterceptor.reset();
+		try {
+			rwTx.executeWithoutResult(status -> {
+				concurrentFetcher.fetch(Car.class, rootCars, "full");
+
+				///// THEN /////
+				assertThat(rootCars).allSatisfy(rootCar -> {
+					assertThat(rootCar.getDoors()).isNotEmpty().hasSizeLessThanOrEqualTo(5)
+							.allSatisfy(door -> assertThat(em.contains(door)).as("door is managed").isTrue());
+					assertThat(rootCar.getWheels()).isNotEmpty().hasSizeLessThanOrEqualTo(4)
+							.allSatisfy(wheel -> assertThat(wheel.getCar()).isSameAs(rootCar));
+					assertThat(rootCar.getEngine()).isNotNull();
+					assertThat(em.contains(rootCar.getEngine())).as("engine is managed").isTrue();
+				});
+			});
+		}
+		finally {
+			executor.shutdown();
+		}
+		assertThat(statementInterceptor.getPreparedStatements()).as("SQL statements to fetch graph")
+				.hasSize(3);
+	}
+
+	@Test
+	void fetchFullCarInConcurrentChunks() {
+		///// GIVEN ////
+		testData1();
+		var rootCars = rwTx.execute(status ->
+				em.createQuery("select c from Car c", Car.class).getResultList()
+		);
+		assertThat(rootCars).as("rootCars").isNotNull();
+		var executor = Executors.newFixedThreadPool(2);
+		var options = flatFetcher.getDefaultOptions()
+				.withExecutor(executor)
+				.withParallelism(2)
+				.withBatchSize(1);
+
+		///// WHEN /////
+		statementInterceptor.reset();
+		try {
+			rwTx.executeWithoutResult(status -> {
+				flatFetcher.fetch(Car.class, rootCars, "full", options);
+			});
+		}
+		finally {
+			executor.shutdown();
+		}
+		var fetchStmts = statementInterceptor.getPreparedStatements();
+
+		///// THEN /////
+		assertThat(rootCars).allSatisfy(rootCar -> {
+			assertThat(rootCar.getDoors()).isNotEmpty().hasSizeLessThanOrEqualTo(5)
+					.allSatisfy(door -> assertThat(door.getCar()).isSameAs(rootCar));
+			assertThat(rootCar.getWheels()).isNotEmpty().hasSizeLessThanOrEqualTo(4);
+			assertThat(rootCar.getEngine()).isNotNull();
+		});
+		assertThat(fetchStmts).as("SQL statements to fetch graph (one per car and attribute)")
+				.hasSize(6);
+	}
+
+	static Stream<Arguments> keySetTransports() {
+		return Stream.of(
+				Arguments.of(KeySetTransport.inList(), " in ("),
+				Arguments.of(KeySetTransport.arrayParameter(), "array_contains("),
+				Arguments.of(KeySetTransport.temporaryTable(), "join " + TemporaryTableTransport.TABLE_PREFIX));
+	}
+
+	@ParameterizedTest
+	@MethodSource("keySetTransports")
+	void fetchFullGraphFromEnginesViaTransport(KeySetTransport transport, String keySetSql) {
+		///// GIVEN ////
+		testData1();
+		var rootEngines = rwTx.execute(status ->
+				em.createQuery("select e from Engine e", Engine.class).getResultList()
+		);
+		assertThat(rootEngines).as("rootEngines").isNotNull();
+		var options = flatFetcher.getDefaultOptions().withKeySetTransport(transport);
+
+		///// WHEN /////
+		statementInterceptor.reset();
+		roTx.executeWithoutResult(status -> {
+			flatFetcher.fetch(Engine.class, rootEngines, "EngineEntity.full", options);
+		});
+		var fetchStmts = statementInterceptor.getPreparedStatements();
+
+		///// THEN /////
+		assertThat(rootEngines).allSatisfy(rootEngine -> {
+			assertThat(rootEngine.getCar()).isNotNull();
+			var car = rootEngine.getCar();
+			assertThat(car.getDoors()).isNotEmpty().hasSizeLessThanOrEqualTo(5);
+			assertThat(car.getWheels()).isNotEmpty().hasSizeLessThanOrEqualTo(4);
+		});
+		// Hibernate loads the cars along with the engines (inverse @OneToOne), so they are not queried again.
+		assertThat(fetchStmts).filteredOn(sql -> sql.startsWith("select"))
+				.as("queries to fetch graph (doors and wheels)")
+				.hasSize(2)
+				.allSatisfy(sql -> assertThat(sql).containsIgnoringCase(keySetSql));
+		var keyTableStmts = fetchStmts.stream()
+				.filter(sql -> sql.contains(TemporaryTableTransport.TABLE_PREFIX) && !sql.startsWith("select"))
+				.collect(Collectors.toList());
+		if (transport == KeySetTransport.temporaryTable()) {
+			// Doors and wheels are both queried by car id and share a table, which is emptied before each chunk. The DDL
+			// runs directly on the connection and doesn't reach the interceptor.
+			SoftAssertions.assertSoftly(s -> {
+				s.assertThat(keyTableStmts).filteredOn(sql -> sql.startsWith("create")).as("key table DDL")
+						.isEmpty();
+				s.assertThat(keyTableStmts).filteredOn(sql -> sql.startsWith("delete")).as("key table deletes")
+						.hasSize(2);
+				s.assertThat(keyTableStmts).filteredOn(sql -> sql.startsWith("insert")).as("key table inserts")
+						.hasSize(2);
+			});
+		}
+		else {
+			assertThat(keyTableStmts).as("key table statements").isEmpty();
+		}
+	}
+
+	@Test
+	void equalTransportsShareCompiledQueries() {
+		///// GIVEN ////
+		testData1();
+		var fetcher = new FlatFetcher(em);
+
+		///// WHEN /////
+		for (var i = 0; i < 2; i++) {
+			// a new, but equal, transport for every call
+			var options = fetcher.getDefaultOptions()
+					.withKeySetTransport(KeySetTransport.arrayParameter("array_contains(?, {key})"));
+			roTx.executeWithoutResult(status -> fetcher.fetch(Engine.class,
+					em.createQuery("select e from Engine e", Engine.class).getResultList(), "EngineEntity.full", options));
+		}
+
+		///// THEN /////
+		var keySetQueries = new ArrayList<Map<KeySetTransport, ?>>();
+		var nodes = new ArrayDeque<GraphPlan.Node<?>>(List.of(fetcher.graphPlanFor(Engine.class, "EngineEntity.full").root));
+		while (!nodes.isEmpty()) {
+			for (var edge : nodes.remove().edges) {
+				keySetQueries.add(edge.plan.keySetQueries());
+				nodes.addAll(edge.subgraphs);
+			}
+		}
+		assertThat(keySetQueries).as("compiled queries per plan")
+				.allSatisfy(queries -> assertThat(queries).hasSizeLessThanOrEqualTo(1))
+				.anySatisfy(queries -> assertThat(queries).hasSize(1));
+	}
+
+	@Test
+	void temporaryTableOnSamePooledConnectionTwice() {
+		///// GIVEN ////
+		testData1();
+		var transport = new TemporaryTableTransport();
+		var dialect = em.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class).getJdbcServices().getDialect();
+		// like on PostgreSQL and SQL Server, creating a table that exists fails
+		transport.syntaxByDialect.put(dialect, Optional.of(new TemporaryTableTransport.TableSyntax(
+				"create local temporary table", "", "transactional", false)));
+		var options = flatFetcher.getDefaultOptions().withKeySetTransport(transport);
+
+		for (var checkout = 0; checkout < 2; checkout++) {
+			///// WHEN /////
+			// as if the pool had handed out a new wrapper around the same connection
+			transport.tablesByConnection.clear();
+			var rootEngines = roTx.execute(status -> {
+				var engines = em.createQuery("select e from Engine e", Engine.class).getResultList();
+				flatFetcher.fetch(Engine.class, engines, "EngineEntity.full", options);
+				return engines;
+			});
+
+			///// THEN /////
+			assertThat(rootEngines).as("rootEngines").isNotEmpty().allSatisfy(rootEngine -> {
+				assertThat(rootEngine.getCar().getDoors()).isNotEmpty().hasSizeLessThanOrEqualTo(5);
+				assertThat(rootEngine.getCar().getWheels()).isNotEmpty().hasSizeLessThanOrEqualTo(4);
+			});
+		}
+	}
+
+	@Test
+	void inListPaddingReusesStatements() {
+		///// GIVEN ////
+		testData1();
+		testData1();
+		var unpadded = new FlatFetcher(em);
+		unpadded.setBatchSize(4);
+		var padded = new FlatFetcher(em);
+		padded.setDefaultOptions(padded.getDefaultOptions().withBatchSize(4).withInListPadding(true));
+
+		///// WHEN /////
+		List<Car> rootCars = List.of();
+		var distinctInListSql = new ArrayList<Set<String>>();
+		for (var fetcher : List.of(unpadded, padded)) {
+			statementInterceptor.reset();
+			// fresh roots in separate transactions, so that the second fetch neither finds the engines of the first in the
+			// persistence context nor associations that the first has already initialized
+			roTx.executeWithoutResult(status -> fetcher.fetch(Car.class,
+					em.createQuery("select c from Car c", Car.class).getResultList().subList(0, 3), "full"));
+			rootCars = roTx.execute(status -> {
+				var cars = em.createQuery("select c from Car c", Car.class).getResultList();
+				fetcher.fetch(Car.class, cars, "full");
+				return cars;
+			});
+			distinctInListSql.add(statementInterceptor.getPreparedStatements().stream()
+					.filter(sql -> sql.contains(" in (")).collect(Collectors.toSet()));
+		}
+
+		///// THEN /////
+		assertThat(rootCars).as("rootCars").hasSize(4).allSatisfy(rootCar -> {
+			assertThat(rootCar.getDoors()).isNotEmpty().hasSizeLessThanOrEqualTo(5);
+			assertThat(rootCar.getWheels()).isNotEmpty().hasSizeLessThanOrEqualTo(4);
+			assertThat(rootCar.getEngine()).isNotNull();
+		});
+		SoftAssertions.assertSoftly(s -> {
+			s.assertThat(unpadded.getStatistics().getChunkQueries()).as("unpadded chunk queries").isEqualTo(6);
+			s.assertThat(unpadded.getStatistics().getDistinctStatements()).as("unpadded distinct statements").isEqualTo(6);
+			s.assertThat(unpadded.getStatistics().getReusedStatements()).as("unpadded reused statements").isEqualTo(0);
+			s.assertThat(padded.getStatistics().getChunkQueries()).as("padded chunk queries").isEqualTo(6);
+			s.assertThat(padded.getStatistics().getDistinctStatements()).as("padded distinct statements").isEqualTo(3);
+			s.assertThat(padded.getStatistics().getReusedStatements()).as("padded reused statements").isEqualTo(3);
+			// the SQL that Hibernate actually prepared, independent of the statement shapes behind the statistics
+			s.assertThat(distinctInListSql.get(0)).as("unpadded distinct SQL texts").hasSize(6);
+			s.assertThat(distinctInListSql.get(1)).as("padded distinct SQL texts").hasSize(3);
+		});
+	}
+
 	@Test
 	void fetchFullGraphFromEngines() {
 		///// GIVEN ////
@@ -165,6 +436,757 @@ public class FlatFetcherTest {
 		});
 	}
 
+	@Test
+	void batchSizeOverridePerAttribute() {
+		///// GIVEN ////
+		testData1();
+		testData1();
+		var options = flatFetcher.getDefaultOptions().withBatchSizeOverride("Car.doors", 1);
+
+		///// WHEN /////
+		var fetchStmts = roTx.execute(status -> {
+			var rootCars = em.createQuery("select c from Car c", Car.class).getResultList();
+			statementInterceptor.reset();
+			flatFetcher.fetch(Car.class, rootCars, "full", options);
+			assertThat(rootCars).allSatisfy(rootCar -> assertThat(rootCar.getDoors()).isNotEmpty());
+			return statementInterceptor.getPreparedStatements();
+		});
+
+		///// THEN /////
+		assertThat(fetchStmts).as("SQL statements to fetch graph").hasSize(6);
+		assertThat(fetchStmts).as("SQL statements to fetch doors").filteredOn(sql -> sql.contains("from door"))
+				.hasSize(4);
+	}
+
+	@Test
+	void adaptiveBatchSizeFollowsRowsPerKey() {
+		///// GIVEN ////
+		testData1();
+		testData1();
+		var fetcher = new FlatFetcher(em);
+		fetcher.setDefaultOptions(fetcher.getDefaultOptions().withAdaptiveBatchSize(true).withAdaptiveTargetRows(4)
+				.withAdaptiveTargetLatency(Duration.ofMinutes(1)));
+
+		///// WHEN /////
+		var chunkQueries = new ArrayList<Long>();
+		for (var i = 0; i < 2; i++) {
+			roTx.executeWithoutResult(status -> fetcher.fetch(Car.class,
+					em.createQuery("select c from Car c", Car.class).getResultList(), "full"));
+			chunkQueries.add(fetcher.getStatistics().getChunkQueries());
+		}
+
+		///// THEN /////
+		// First fetch: one chunk per attribute. Afterwards, doors and wheels (3.5 rows per key) get one car per chunk,
+		// while the engines (1 row per key) still fit into a single chunk.
+		assertThat(chunkQueries).containsExactly(3L, 3L + 4 + 4 + 1);
+	}
+
+	@Test
+	void fetchFullCarReadOnlyWithoutAutoFlush() {
+		///// GIVEN ////
+		testData1();
+
+		///// WHEN /////
+		var fetchStmts = rwTx.execute(status -> {
+			status.setRollbackOnly();
+			var rootCars = em.createQuery("select c from Car c", Car.class).getResultList();
+			// A pending change on the table of one of the chunk queries. Auto flush would write it before the doors are loaded.
+			em.createQuery("select d from Door d", Door.class).getResultList().forEach(door -> door.setOpen(!door.isOpen()));
+			statementInterceptor.reset();
+			flatFetcher.fetch(Car.class, rootCars, "full", FetchOptions.READ_ONLY);
+			var stmts = statementInterceptor.getPreparedStatements();
+
+			///// THEN /////
+			var session = em.unwrap(Session.class);
+			assertThat(rootCars).allSatisfy(rootCar -> {
+				assertThat(rootCar.getWheels()).isNotEmpty().allSatisfy(wheel -> assertThat(session.isReadOnly(wheel)).isTrue());
+				assertThat(rootCar.getEngine()).isNotNull().satisfies(engine -> assertThat(session.isReadOnly(engine)).isTrue());
+				assertThat(rootCar.getDoors()).isNotEmpty();
+			});
+			return stmts;
+		});
+		assertThat(fetchStmts).as("SQL statements to fetch graph").hasSize(3)
+				.noneMatch(sql -> sql.startsWith("update"));
+	}
+
+	@Test
+	void fetchFullCarSkipsManagedEntities() {
+		///// GIVEN ////
+		testData1();
+		var fetcher = new FlatFetcher(em);
+
+		///// WHEN /////
+		var fetchStmts = roTx.execute(status -> {
+			var rootCars = em.createQuery("select c from Car c", Car.class).getResultList();
+			var engines = em.createQuery("select e from Engine e", Engine.class).getResultList();
+			assertThat(engines).as("engines").hasSize(2);
+			statementInterceptor.reset();
+			fetcher.fetch(Car.class, rootCars, "full");
+			var stmts = statementInterceptor.getPreparedStatements();
+
+			///// THEN /////
+			assertThat(rootCars).allSatisfy(rootCar -> {
+				assertThat(rootCar.getEngine()).isNotNull().isIn(engines);
+				assertThat(rootCar.getDoors()).isNotEmpty();
+				assertThat(rootCar.getWheels()).isNotEmpty();
+			});
+			return stmts;
+		});
+		SoftAssertions.assertSoftly(s -> {
+			s.assertThat(fetchStmts).as("SQL statements to fetch graph (wheels and doors only)").hasSize(2);
+			s.assertThat(fetcher.getStatistics().getPersistenceContextHits()).as("persistence context hits").isEqualTo(2);
+		});
+	}
+
+	@Test
+	void fetchManyToManyViaJoinTable() {
+		///// GIVEN ////
+		testData1();
+		rwTx.executeWithoutResult(status -> {
+			var alice = new Driver("alice");
+			var bob = new Driver("bob");
+			var carol = new Driver("carol");
+			Stream.of(alice, bob, carol).forEach(em::persist);
+			em.createQuery("select c from Car c", Car.class).getResultList().forEach(car ->
+					car.setDrivers("limousine".equals(car.getName()) ? Set.of(alice, bob) : Set.of(alice, carol)));
+		});
+
+		///// WHEN /////
+		var fetchStmts = rwTx.execute(status -> {
+			var rootCars = em.createQuery("select c from Car c", Car.class).getResultList();
+			statementInterceptor.reset();
+			flatFetcher.fetch(Car.class, rootCars, "Car.drivers");
+			var stmts = statementInterceptor.getPreparedStatements();
+
+			///// THEN /////
+			assertThat(rootCars).allSatisfy(rootCar -> {
+				var limousine = "limousine".equals(rootCar.getName());
+				assertThat(rootCar.getDrivers()).extracting(Driver::getName)
+						.containsExactlyInAnyOrder("alice", limousine ? "bob" : "carol");
+				assertThat(rootCar.getDrivers()).allSatisfy(driver -> assertThat(driver.getCars()).contains(rootCar));
+			});
+			assertThat(rootCars.get(0).getDrivers()).filteredOn(driver -> "alice".equals(driver.getName()))
+					.allSatisfy(alice -> assertThat(alice.getCars()).containsExactlyInAnyOrderElementsOf(rootCars));
+			statementInterceptor.reset();
+			em.flush();
+			assertThat(statementInterceptor.getPreparedStatements()).as("SQL statements to flush").isEmpty();
+			return stmts;
+		});
+		assertThat(fetchStmts).as("SQL statements to fetch graph (two join table queries, one for the drivers)")
+				.hasSize(3);
+	}
+
+	@Test
+	void fetchManyToManyLoadsOppositeSideCompletely() {
+		///// GIVEN ////
+		testData1();
+		rwTx.executeWithoutResult(status -> {
+			var alice = new Driver("alice");
+			em.persist(alice);
+			em.createQuery("select c from Car c", Car.class).getResultList().forEach(car -> car.setDrivers(Set.of(alice)));
+		});
+
+		///// WHEN /////
+		roTx.executeWithoutResult(status -> {
+			var limousine = em.createQuery("select c from Car c where c.name = 'limousine'", Car.class).getSingleResult();
+			flatFetcher.fetch(Car.class, List.of(limousine), "Car.drivers");
+
+			///// THEN /////
+			assertThat(limousine.getDrivers()).extracting(Driver::getName).containsExactly("alice");
+			var alice = limousine.getDrivers().iterator().next();
+			assertThat(alice.getCars()).as("cars of alice, not only the roots of the fetch").hasSize(2).contains(limousine);
+		});
+	}
+
+	@Test
+	void fetchUnidirectionalOneToMany() {
+		///// GIVEN ////
+		testData1();
+		rwTx.executeWithoutResult(status -> {
+			em.createQuery("select c from Car c", Car.class).getResultList().forEach(car -> {
+				car.getMirrors().addAll(List.of(new Mirror("left"), new Mirror("right")));
+				var previousEngine = new Engine();
+				previousEngine.setPower(car.getEngine().getPower() / 2);
+				em.persist(previousEngine);
+				car.getPreviousEngines().add(previousEngine);
+			});
+		});
+
+		var fetcher = new FlatFetcher(em);
+		// one previous engine per query, so that each car gets a query of its own for Engine#car
+		fetcher.setDefaultOptions(fetcher.getDefaultOptions().withBatchSizeOverride("Engine.car", 1));
+		var chunks = new CopyOnWriteArrayList<FetchListener.ChunkQuery>();
+		fetcher.addFetchListener(new FetchListener() {
+			@Override
+			public void chunkQueried(ChunkQuery chunk) {
+				chunks.add(chunk);
+			}
+		});
+
+		///// WHEN /////
+		var fetchStmts = rwTx.execute(status -> {
+			var rootCars = em.createQuery("select c from Car c", Car.class).getResultList();
+			statementInterceptor.reset();
+			fetcher.fetch(Car.class, rootCars, "Car.mirrorsAndPreviousEngines");
+			var stmts = statementInterceptor.getPreparedStatements();
+
+			///// THEN /////
+			assertThat(rootCars).allSatisfy(rootCar -> {
+				assertThat(rootCar.getMirrors()).extracting(Mirror::getSide).containsExactlyInAnyOrder("left", "right");
+				assertThat(rootCar.getPreviousEngines()).hasSize(1)
+						.allSatisfy(engine -> assertThat(engine.getCar()).as("car of previous engine").isNull());
+			});
+			assertThat(statementInterceptor.getPreparedStatements()).as("SQL statements after fetch").isEqualTo(stmts);
+			assertThat(rootCars).flatExtracting(Car::getMirrors).doesNotHaveDuplicates();
+			statementInterceptor.reset();
+			em.flush();
+			assertThat(statementInterceptor.getPreparedStatements()).as("SQL statements to flush").isEmpty();
+			return stmts;
+		});
+		assertThat(fetchStmts)
+				.as("SQL statements to fetch graph (one join query per attribute, one per car for Engine#car)")
+				.hasSize(4);
+		assertThat(fetcher.getStatistics().getChunkQueries()).as("chunk queries").isEqualTo(4);
+		assertThat(chunks).extracting(FetchListener.ChunkQuery::getAttribute)
+				.containsExactlyInAnyOrder("Car.mirrors", "Car.previousEngines", "Engine.car", "Engine.car");
+	}
+
+	@Test
+	void fetchElementCollections() {
+		///// GIVEN ////
+		testData1();
+		rwTx.executeWithoutResult(status -> {
+			em.createQuery("select c from Car c", Car.class).getResultList().forEach(car -> {
+				car.getTags().addAll(List.of(car.getName(), "fleet"));
+				car.getServiceHistory().addAll(List.of(new ServiceVisit("north", 1000), new ServiceVisit("north", 1000),
+						new ServiceVisit("south", 2000)));
+			});
+		});
+
+		///// WHEN /////
+		var fetchStmts = rwTx.execute(status -> {
+			var rootCars = em.createQuery("select c from Car c", Car.class).getResultList();
+			statementInterceptor.reset();
+			flatFetcher.fetch(Car.class, rootCars, "Car.serviceRecord");
+			var stmts = statementInterceptor.getPreparedStatements();
+
+			///// THEN /////
+			assertThat(rootCars).allSatisfy(rootCar -> {
+				assertThat(rootCar.getTags()).containsExactlyInAnyOrder(rootCar.getName(), "fleet");
+				assertThat(rootCar.getServiceHistory()).extracting(ServiceVisit::getWorkshop, ServiceVisit::getMileage)
+						.containsExactlyInAnyOrder(tuple("north", 1000), tuple("north", 1000), tuple("south", 2000));
+			});
+			statementInterceptor.reset();
+			em.flush();
+			assertThat(statementInterceptor.getPreparedStatements()).as("SQL statements to flush").isEmpty();
+			return stmts;
+		});
+		assertThat(fetchStmts).as("SQL statements to fetch graph (one collection table query per attribute)").hasSize(2);
+	}
+
+	@Test
+	void fetchFullCarWindowed() {
+		///// GIVEN ////
+		testData1();
+		testData1();
+		var fetcher = new FlatFetcher(em);
+		var windows = new ArrayList<List<Car>>();
+
+		///// WHEN /////
+		roTx.executeWithoutResult(status -> {
+			try (var rootCars = em.createQuery("select c from Car c", Car.class).getResultStream()) {
+				fetcher.fetchWindowed(Car.class, rootCars, "full", 3, window -> {
+					assertThat(window).allSatisfy(rootCar -> {
+						assertThat(em.contains(rootCar)).as("managed").isTrue();
+						assertThat(rootCar.getDoors()).isNotEmpty().hasSizeLessThanOrEqualTo(5);
+						assertThat(rootCar.getWheels()).isNotEmpty().hasSizeLessThanOrEqualTo(4);
+						assertThat(rootCar.getEngine()).isNotNull();
+					});
+					windows.add(window);
+				});
+			}
+
+			///// THEN /////
+			assertThat(windows).flatExtracting(window -> window).as("detached roots")
+					.hasSize(4).noneMatch(em::contains);
+		});
+		SoftAssertions.assertSoftly(s -> {
+			s.assertThat(windows).extracting(List::size).as("window sizes").containsExactly(3, 1);
+			s.assertThat(fetcher.getStatistics().getChunkQueries()).as("chunk queries (one per window and attribute)")
+					.isEqualTo(6);
+		});
+	}
+
+	@Test
+	void fetchWindowedRefusesToDiscardUnflushedChanges() {
+		///// GIVEN ////
+		testData1();
+		var fetcher = new FlatFetcher(em);
+		var windows = new ArrayList<List<Car>>();
+
+		///// WHEN /////
+		rwTx.executeWithoutResult(status -> {
+			try (var rootCars = em.createQuery("select c from Car c", Car.class).getResultStream()) {
+				///// THEN /////
+				assertThatThrownBy(() -> fetcher.fetchWindowed(Car.class, rootCars, "Car.drivers", 1, window -> {
+					windows.add(window);
+					if (windows.size() == 2) {
+						window.get(0).setName("renamed");
+					}
+				})).isInstanceOf(FlatFetcherException.class).hasMessageContaining("not been flushed");
+			}
+			status.setRollbackOnly();
+		});
+		assertThat(windows).as("windows up to the one with the change").hasSize(2);
+	}
+
+	@Test
+	void fetchOverlappingGraphsIncrementally() {
+		///// GIVEN ////
+		testData1();
+		var fetcher = new FlatFetcher(em);
+
+		///// WHEN /////
+		roTx.executeWithoutResult(status -> {
+			var rootCars = em.createQuery("select c from Car c", Car.class).getResultList();
+			statementInterceptor.reset();
+			fetcher.fetch(Car.class, rootCars, "Car.cached");
+			var cachedStmts = statementInterceptor.getPreparedStatements();
+			var doorsByCar = rootCars.stream().collect(Collectors.toMap(car -> car, Car::getDoors));
+
+			statementInterceptor.reset();
+			fetcher.fetch(Car.class, rootCars, "full");
+			var fullStmts = statementInterceptor.getPreparedStatements();
+
+			var engines = rootCars.stream().map(Car::getEngine).collect(Collectors.toList());
+			statementInterceptor.reset();
+			fetcher.fetch(Engine.class, engines, "EngineEntity.full");
+			var engineStmts = statementInterceptor.getPreparedStatements();
+
+			///// THEN /////
+			assertThat(rootCars).allSatisfy(rootCar -> {
+				assertThat(rootCar.getDoors()).as("doors").isSameAs(doorsByCar.get(rootCar));
+				assertThat(rootCar.getWheels()).isNotEmpty();
+				assertThat(rootCar.getEngine()).isNotNull().extracting(Engine::getCar).isSameAs(rootCar);
+			});
+			SoftAssertions.assertSoftly(s -> {
+				s.assertThat(cachedStmts).as("SQL statements to fetch Car.cached (doors only, no manufacturers)").hasSize(1);
+				s.assertThat(fullStmts).as("SQL statements to fetch full (wheels and engine only)").hasSize(2);
+				s.assertThat(engineStmts).as("SQL statements to fetch EngineEntity.full").isEmpty();
+			});
+		});
+	}
+
+	@Test
+	void fetchFromSecondLevelCache() {
+		///// GIVEN ////
+		testData1();
+		rwTx.executeWithoutResult(status -> {
+			var manufacturer = new Manufacturer("ACME");
+			em.persist(manufacturer);
+			em.createQuery("select c from Car c", Car.class).getResultList().forEach(car -> car.setManufacturer(manufacturer));
+		});
+		// Start from an empty cache so that the cached doors are loaded (and not inserted) entities.
+		em.getEntityManagerFactory().getCache().evictAll();
+		// Lazy loading puts the manufacturer into the entity cache and the doors collections into the collection cache.
+		roTx.executeWithoutResult(status ->
+				em.createQuery("select c from Car c", Car.class).getResultList().forEach(car -> {
+					car.getManufacturer().getName();
+					car.getDoors().size();
+				})
+		);
+		var rootCars = rwTx.execute(status ->
+				em.createQuery("select c from Car c", Car.class).getResultList()
+		);
+		assertThat(rootCars).as("rootCars").hasSize(2);
+		var fetcher = new FlatFetcher(em);
+
+		///// WHEN /////
+		statementInterceptor.reset();
+		roTx.executeWithoutResult(status -> fetcher.fetch(Car.class, rootCars, "Car.cached"));
+		var fetchStmts = statementInterceptor.getPreparedStatements();
+
+		///// THEN /////
+		assertThat(rootCars).allSatisfy(rootCar -> {
+			assertThat(rootCar.getManufacturer()).isNotNull().extracting(Manufacturer::getName).isEqualTo("ACME");
+			assertThat(rootCar.getDoors()).isNotEmpty().hasSizeLessThanOrEqualTo(5)
+					.allSatisfy(door -> assertThat(door.getCar()).isSameAs(rootCar));
+		});
+		SoftAssertions.assertSoftly(s -> {
+			s.assertThat(fetchStmts).as("SQL statements to fetch graph").isEmpty();
+			s.assertThat(fetcher.getStatistics().getSecondLevelCacheHits()).as("second-level cache hits (1 manufacturer, 2 collections)")
+					.isEqualTo(3);
+		});
+	}
+
+	@Test
+	void detectLazyLoadsOutsideOfGraph() {
+		///// GIVEN ////
+		testData1();
+		rwTx.executeWithoutResult(status -> {
+			var manufacturer = new Manufacturer("ACME");
+			em.persist(manufacturer);
+			em.createQuery("select c from Car c", Car.class).getResultList().forEach(car -> car.setManufacturer(manufacturer));
+		});
+		var lazyLoads = new CopyOnWriteArrayList<LazyLoadDetector.LazyLoad>();
+		var fetcher = new FlatFetcher(em);
+		fetcher.setLazyLoadDetector(new LazyLoadDetector(1, lazyLoads::add));
+
+		///// WHEN /////
+		roTx.executeWithoutResult(status -> {
+			var rootCars = em.createQuery("select c from Car c", Car.class).getResultList();
+			fetcher.fetch(Car.class, rootCars, "Car.summary");
+			rootCars.forEach(car -> {
+				car.getDoors().size();
+				car.getManufacturer().getName();
+			});
+		});
+
+		///// THEN /////
+		assertThat(lazyLoads).as("lazy loads (doors are part of the graph, the manufacturer is shared by both cars)")
+				.extracting(LazyLoadDetector.LazyLoad::getAttributeName)
+				.containsExactlyInAnyOrder("manufacturer");
+		assertThat(lazyLoads).allSatisfy(lazyLoad -> {
+			assertThat(lazyLoad.getEntityGraphName()).isEqualTo("Car.summary");
+			assertThat(lazyLoad.getEntityType()).isEqualTo(Car.class);
+			assertThat(lazyLoad.getCallSite()).isNotNull()
+					.extracting(StackTraceElement::getClassName).asString().startsWith(FlatFetcherTest.class.getName());
+		});
+	}
+
+	@Test
+	void lazyLoadDetectorForgetsClearedWindows() {
+		///// GIVEN ////
+		testData1();
+		var fetcher = new FlatFetcher(em);
+		var detector = new LazyLoadDetector(1, lazyLoad -> { });
+		fetcher.setLazyLoadDetector(detector);
+		var trackedDuringWindow = new ArrayList<Boolean>();
+
+		///// WHEN /////
+		roTx.executeWithoutResult(status -> {
+			var session = em.unwrap(SessionImplementor.class);
+			try (var rootCars = em.createQuery("select c from Car c", Car.class).getResultStream()) {
+				fetcher.fetchWindowed(Car.class, rootCars, "full", 1,
+						window -> trackedDuringWindow.add(detector.isTracking(session)));
+			}
+
+			///// THEN /////
+			assertThat(detector.isTracking(session)).as("tracking after the last window").isFalse();
+		});
+		assertThat(trackedDuringWindow).as("tracking during each window").hasSize(2).containsOnly(true);
+	}
+
+	@Test
+	void replacedLazyLoadDetectorIsUninstalled() {
+		///// GIVEN ////
+		testData1();
+		var fetcher = new FlatFetcher(em);
+		var replaced = new LazyLoadDetector(1, lazyLoad -> { });
+		fetcher.setLazyLoadDetector(replaced);
+		roTx.executeWithoutResult(status -> {
+			var rootCars = em.createQuery("select c from Car c", Car.class).getResultList();
+			fetcher.fetch(Car.class, rootCars, "Car.summary");
+		});
+		var dispatcher = LazyLoadDetector.Dispatcher.of(em.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class));
+		assertThat(dispatcher.detectors).as("detectors before replacement").contains(replaced);
+
+		///// WHEN /////
+		fetcher.setLazyLoadDetector(new LazyLoadDetector(1, lazyLoad -> { }));
+
+		///// THEN /////
+		assertThat(dispatcher.detectors).as("detectors after replacement").doesNotContain(replaced);
+		assertThat(LazyLoadDetector.Dispatcher.of(em.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class)))
+				.as("dispatcher of the session factory").isSameAs(dispatcher);
+	}
+
+	@Test
+	void fetchListenersReportStepsAndMeters() {
+		///// GIVEN ////
+		testData1();
+		var fetches = new CopyOnWriteArrayList<FetchListener.Fetch>();
+		var nodes = new CopyOnWriteArrayList<FetchListener.NodeFetch>();
+		var attributes = new CopyOnWriteArrayList<FetchListener.AttributeFetch>();
+		var chunks = new CopyOnWriteArrayList<FetchListener.ChunkQuery>();
+		var compilations = new CopyOnWriteArrayList<FetchListener.PlanCompilation>();
+		var registry = new SimpleMeterRegistry();
+		var fetcher = new FlatFetcher(em);
+		fetcher.addFetchListener(new FetchListener() {
+			@Override
+			public void fetchFinished(Fetch fetch, long nanos, Throwable failure) {
+				assertThat(failure).isNull();
+				fetches.add(fetch);
+			}
+
+			@Override
+			public void nodeStarted(NodeFetch node) {
+				nodes.add(node);
+			}
+
+			@Override
+			public void attributeFetched(AttributeFetch attribute) {
+				attributes.add(attribute);
+			}
+
+			@Override
+			public void chunkQueried(ChunkQuery chunk) {
+				chunks.add(chunk);
+			}
+
+			@Override
+			public void planCompiled(PlanCompilation compilation) {
+				compilations.add(compilation);
+			}
+		});
+		fetcher.addFetchListener(new MicrometerFetchListener(registry));
+
+		///// WHEN /////
+		roTx.executeWithoutResult(status -> fetcher.fetch(Car.class,
+				em.createQuery("select c from Car c", Car.class).getResultList(), "full"));
+
+		///// THEN /////
+		assertThat(fetches).containsExactly(new FetchListener.Fetch(Car.class, "full", 2));
+		assertThat(nodes).extracting(FetchListener.NodeFetch::getNodeName).containsExactly("full");
+		assertThat(compilations).extracting(FetchListener.PlanCompilation::getName)
+				.containsExactlyInAnyOrder("full", "Car.wheels", "Car.doors", "Car.engine");
+		assertThat(attributes).extracting(FetchListener.AttributeFetch::getAttribute)
+				.containsExactlyInAnyOrder("Car.wheels", "Car.doors", "Car.engine");
+		assertThat(attributes).filteredOn(attribute -> attribute.getAttribute().equals("Car.doors")).hasSize(1)
+				.allSatisfy(doors -> {
+					assertThat(doors.getKeys()).as("keys").isEqualTo(2);
+					assertThat(doors.getChunkQueries()).as("chunk queries").isEqualTo(1);
+					assertThat(doors.getRows()).as("rows").isEqualTo(7);
+					assertThat(doors.getStitched()).as("stitched").isEqualTo(7);
+				});
+		assertThat(chunks).hasSize(3).allSatisfy(chunk -> assertThat(chunk.getKeys()).isEqualTo(2));
+		assertThat(registry.get("flatfetcher.attribute").tags("root", "Car", "graph", "full", "attribute", "Car.doors")
+				.timer().count()).isEqualTo(1);
+		assertThat(registry.get("flatfetcher.chunk.keys").tag("attribute", "Car.engine").summary().totalAmount())
+				.isEqualTo(2);
+		assertThat(registry.get("flatfetcher.fetch").tag("outcome", "success").timer().count()).isEqualTo(1);
+	}
+
+	@Test
+	void fetchFullCarDetached() {
+		///// GIVEN ////
+		testData1();
+		var sessionFactory = em.getEntityManagerFactory().unwrap(SessionFactory.class);
+		var session = sessionFactory.openStatelessSession();
+		try {
+			var tx = session.beginTransaction();
+			var rootCars = session.createQuery("select c from Car c", Car.class).getResultList();
+			assertThat(rootCars).as("rootCars").hasSize(2);
+
+			///// WHEN /////
+			statementInterceptor.reset();
+			flatFetcher.fetchDetached(session, Car.class, rootCars, "full");
+			var fetchStmts = statementInterceptor.getPreparedStatements();
+			tx.rollback();
+
+			///// THEN /////
+			assertThat(rootCars).allSatisfy(rootCar -> {
+				assertThat(rootCar.getDoors()).isNotEmpty().hasSizeLessThanOrEqualTo(5)
+						.allSatisfy(door -> assertThat(door.getCar()).isSameAs(rootCar));
+				assertThat(rootCar.getWheels()).isNotEmpty().hasSizeLessThanOrEqualTo(4)
+						.allSatisfy(wheel -> assertThat(wheel.getCar()).isSameAs(rootCar));
+				assertThat(rootCar.getEngine()).isNotNull();
+				assertThat(rootCar.getEngine().getCar()).isSameAs(rootCar);
+			});
+			assertThat(fetchStmts).as("SQL statements to fetch graph").hasSize(3);
+		}
+		finally {
+			session.close();
+		}
+	}
+
+	@Test
+	void fetchFullCarAsync() throws Exception {
+		///// GIVEN ////
+		testData1();
+		var carIds = rwTx.execute(status ->
+				em.createQuery("select c.id from Car c", UUID.class).getResultList()
+		);
+		var executor = Executors.newFixedThreadPool(2);
+		try {
+			///// WHEN /////
+			statementInterceptor.reset();
+			var rootCars = flatFetcher.fetchAsync(Car.class, carIds, "full", executor).get(10, TimeUnit.SECONDS);
+			var fetchStmts = statementInterceptor.getPreparedStatements();
+
+			///// THEN /////
+			assertThat(rootCars).as("rootCars").hasSize(2).allSatisfy(rootCar -> {
+				assertThat(rootCar.getDoors()).isNotEmpty().hasSizeLessThanOrEqualTo(5)
+						.allSatisfy(door -> assertThat(door.getCar()).isSameAs(rootCar));
+				assertThat(rootCar.getWheels()).isNotEmpty().hasSizeLessThanOrEqualTo(4);
+				assertThat(rootCar.getEngine()).isNotNull();
+			});
+			assertThat(fetchStmts).as("SQL statements to fetch roots and graph").hasSize(4);
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	void publishFullCarsInWindows() throws Exception {
+		///// GIVEN ////
+		testData1();
+		testData1();
+		var carIds = rwTx.execute(status ->
+				em.createQuery("select c.id from Car c", UUID.class).getResultList()
+		);
+		var executor = Executors.newFixedThreadPool(2);
+		try {
+			var published = new CopyOnWriteArrayList<Car>();
+			var done = new CompletableFuture<Void>();
+
+			///// WHEN /////
+			flatFetcher.fetchPublisher(Car.class, carIds, "full", 3, executor).subscribe(new Flow.Subscriber<>() {
+				@Override
+				public void onSubscribe(Flow.Subscription subscription) {
+					subscription.request(Long.MAX_VALUE);
+				}
+
+				@Override
+				public void onNext(Car item) {
+					published.add(item);
+				}
+
+				@Override
+				public void onError(Throwable throwable) {
+					done.completeExceptionally(throwable);
+				}
+
+				@Override
+				public void onComplete() {
+					done.complete(null);
+				}
+			});
+			done.get(10, TimeUnit.SECONDS);
+
+			///// THEN /////
+			assertThat(published).as("published").hasSize(4).allSatisfy(rootCar -> {
+				assertThat(rootCar.getDoors()).isNotEmpty().hasSizeLessThanOrEqualTo(5);
+				assertThat(rootCar.getWheels()).isNotEmpty().hasSizeLessThanOrEqualTo(4);
+				assertThat(rootCar.getEngine()).isNotNull();
+			});
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	void warmUpCompilesNamedEntityGraphs() {
+		///// GIVEN ////
+		testData1();
+		var rootCars = rwTx.execute(status ->
+				em.createQuery("select c from Car c", Car.class).getResultList()
+		);
+		var fetcher = new FlatFetcher(em);
+
+		///// WHEN /////
+		var compiled = fetcher.warmUp();
+		var compiledPlans = fetcher.attributePlanCache.size();
+		roTx.executeWithoutResult(status -> fetcher.fetch(Car.class, rootCars, "full"));
+
+		///// THEN /////
+		assertThat(compiled).as("compiled entity graphs").isEqualTo(7);
+		assertThat(fetcher.graphPlanCache.keySet()).contains(
+				new FlatFetcher.GraphKey(Car.class, "full"),
+				new FlatFetcher.GraphKey(Car.class, "Car.summary"),
+				new FlatFetcher.GraphKey(Car.class, "Car.cached"),
+				new FlatFetcher.GraphKey(Car.class, "Car.drivers"),
+				new FlatFetcher.GraphKey(Car.class, "Car.mirrorsAndPreviousEngines"),
+				new FlatFetcher.GraphKey(Car.class, "Car.serviceRecord"),
+				new FlatFetcher.GraphKey(Engine.class, "EngineEntity.full"));
+		assertThat(fetcher.graphPlanCache).as("graph plans after fetch").hasSize(7);
+		assertThat(fetcher.attributePlanCache).as("attribute plans after fetch").hasSize(compiledPlans);
+		assertThat(rootCars).allSatisfy(rootCar -> assertThat(rootCar.getDoors()).isNotEmpty());
+	}
+
+	@Test
+	void plansUseGeneratedAccessors() {
+		///// GIVEN ////
+		var carType = em.getMetamodel().entity(Car.class);
+		var doorType = em.getMetamodel().entity(Door.class);
+
+		///// WHEN /////
+		var doors = Accessor.of(carType.getAttribute("doors"));
+		var carId = Accessor.of(doorType.getSingularAttribute("carId", UUID.class));
+		var id = Accessor.forPrimaryKeyOf(carType);
+		var door = new Door(true);
+		carId.set(null, door, UUID.randomUUID());
+
+		///// THEN /////
+		assertThat(List.of(doors, carId, id)).extracting(Object::toString).containsExactly(
+				"generatedAccessor(Car#doors)", "generatedAccessor(Door#carId)", "generatedAccessor(BaseEntity#id)");
+		assertThat(door.getCarId()).isNotNull();
+		assertThat(AttributeMapping.of(carType.getAttribute("doors")))
+				.returns(OneToMany.class, AttributeMapping::getAssociation)
+				.returns("car", AttributeMapping::getMappedBy);
+	}
+
+	@Test
+	void generatedAccessorsBypassEnhancedGettersAndSetters() {
+		///// GIVEN ////
+		testData1();
+		var doorCarId = Accessor.of(em.getMetamodel().entity(Door.class).getSingularAttribute("carId", UUID.class));
+		var engineId = Accessor.of(em.getMetamodel().entity(Car.class).getSingularAttribute("engineId", UUID.class));
+
+		///// WHEN /////
+		var accessStmts = rwTx.execute(status -> {
+			var car = em.createQuery("select c from Car c", Car.class).setMaxResults(1).getSingleResult();
+			// A door of another car, so that its car is not in the persistence context.
+			var door = em.createQuery("select d from Door d where d.carId <> :carId", Door.class)
+					.setParameter("carId", car.getId()).setMaxResults(1).getSingleResult();
+			statementInterceptor.reset();
+			doorCarId.set(em, door, doorCarId.get(door));
+			engineId.set(em, car, engineId.get(car));
+			var stmts = statementInterceptor.getPreparedStatements();
+
+			///// THEN /////
+			assertThat(Hibernate.isPropertyInitialized(door, "car")).as("Door#car initialized").isFalse();
+			assertThat(Hibernate.isPropertyInitialized(car, "engine")).as("Car#engine initialized").isFalse();
+			assertThat(em.unwrap(Session.class).isDirty()).as("session dirty").isFalse();
+			return stmts;
+		});
+		assertThat(List.of(doorCarId, engineId)).extracting(Object::toString)
+				.as("package-private field generated, private field left to introspection")
+				.containsExactly("generatedAccessor(Door#carId)", "accessor(Car#engineId)");
+		assertThat(accessStmts).as("SQL statements to access columns").isEmpty();
+	}
+
+	@Test
+	void fetchCarSummaryProjection() {
+		///// GIVEN ////
+		testData1();
+		var carIds = rwTx.execute(status ->
+				em.createQuery("select c.id from Car c", UUID.class).getResultList()
+		);
+		assertThat(carIds).as("carIds").hasSize(2);
+
+		///// WHEN /////
+		statementInterceptor.reset();
+		var summaries = roTx.execute(status -> {
+			var result = flatFetcher.fetchProjection(Car.class, carIds, "Car.summary");
+			assertThat(em.unwrap(SessionImplementor.class).getPersistenceContext().getNumberOfManagedEntities())
+					.as("managed entities").isZero();
+			return result;
+		});
+		var fetchStmts = statementInterceptor.getPreparedStatements();
+
+		///// THEN /////
+		assertThat(summaries).extracting(row -> row.get("name")).containsExactlyInAnyOrder("limousine", "trike");
+		assertThat(summaries).allSatisfy(summary -> {
+			var limousine = "limousine".equals(summary.get("name"));
+			assertThat(summary.getMany("doors")).hasSize(limousine ? 5 : 2)
+					.allSatisfy(door -> assertThat(door.get("open")).isEqualTo(limousine));
+			assertThat(summary.getOne("engine").get("power")).isEqualTo(limousine ? 207 : 71);
+		});
+		assertThat(fetchStmts).as("SQL statements to fetch projection").hasSize(3);
+	}
+
 	private void testData1() {
 		rwTx.executeWithoutResult(status -> {
 			var car1 = new Car("limousine");
@@ -39,6 +39,8 @@ public class FlatFetcherTestApplication {
 
 	@Bean
 	public FlatFetcher flatFetcher(EntityManager em) {
-		return new FlatFetcher(em);
+		var flatFetcher = new FlatFetcher(em);
+		flatFetcher.warmUp();
+		return flatFetcher;
 	}
 }
@@ -14,17 +14,24 @@
 
 package link.klauser.flatfetcher.model;
 
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 import javax.persistence.Access;
 import javax.persistence.AccessType;
 import javax.persistence.CascadeType;
+import javax.persistence.CollectionTable;
 import javax.persistence.Column;
+import javax.persistence.ElementCollection;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.JoinColumn;
+import javax.persistence.JoinTable;
+import javax.persistence.ManyToMany;
+import javax.persistence.ManyToOne;
 import javax.persistence.NamedAttributeNode;
 import javax.persistence.NamedEntityGraph;
+import javax.persistence.NamedSubgraph;
 import javax.persistence.OneToMany;
 import javax.persistence.OneToOne;
 
@@ -32,18 +39,45 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import lombok.ToString;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.LazyGroup;
 import org.hibernate.annotations.LazyToOne;
 import org.hibernate.annotations.LazyToOneOption;
 
 @Entity
 @Getter
 @Setter
-@ToString(exclude = {"wheels", "doors", "engine"})
+@ToString(exclude = {"wheels", "doors", "engine", "manufacturer", "drivers", "mirrors", "previousEngines", "tags",
+        "serviceHistory"})
 @NamedEntityGraph(name = "full", attributeNodes = {
         @NamedAttributeNode("wheels"),
         @NamedAttributeNode("doors"),
         @NamedAttributeNode("engine")
 })
+@NamedEntityGraph(name = "Car.summary", attributeNodes = {
+        @NamedAttributeNode("name"),
+        @NamedAttributeNode(value = "doors", subgraph = "doorSummary"),
+        @NamedAttributeNode(value = "engine", subgraph = "engineSummary")
+}, subgraphs = {
+        @NamedSubgraph(name = "doorSummary", attributeNodes = @NamedAttributeNode("open")),
+        @NamedSubgraph(name = "engineSummary", attributeNodes = @NamedAttributeNode("power"))
+})
+@NamedEntityGraph(name = "Car.cached", attributeNodes = {
+        @NamedAttributeNode("manufacturer"),
+        @NamedAttributeNode("doors")
+})
+@NamedEntityGraph(name = "Car.drivers", attributeNodes = {
+        @NamedAttributeNode(value = "drivers", subgraph = "driverCars")
+}, subgraphs = @NamedSubgraph(name = "driverCars", attributeNodes = @NamedAttributeNode("cars")))
+@NamedEntityGraph(name = "Car.mirrorsAndPreviousEngines", attributeNodes = {
+        @NamedAttributeNode("mirrors"),
+        @NamedAttributeNode("previousEngines")
+})
+@NamedEntityGraph(name = "Car.serviceRecord", attributeNodes = {
+        @NamedAttributeNode("tags"),
+        @NamedAttributeNode("serviceHistory")
+})
 @NoArgsConstructor
 public class Car extends BaseEntity {
 
@@ -60,6 +94,7 @@ public class Car extends BaseEntity {
 
     @OneToMany(cascade = CascadeType.ALL, orphanRemoval = true, mappedBy = "car")
     @Access(AccessType.PROPERTY)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     private Set<Door> doors;
 
 
@@ -72,4 +107,42 @@ public class Car extends BaseEntity {
     @Column(name = "engineId", updatable = false, insertable = false)
     private UUID engineId;
 
+    @JoinColumn(name = "manufacturerId")
+    @ManyToOne(cascade = CascadeType.PERSIST, fetch = FetchType.LAZY)
+    @LazyToOne(LazyToOneOption.NO_PROXY)
+    @LazyGroup("manufacturer")
+    @Access(AccessType.PROPERTY)
+    private Manufacturer manufacturer;
+
+    @Column(name = "manufacturerId", updatable = false, insertable = false)
+    private UUID manufacturerId;
+
+    @ManyToMany
+    @JoinTable(name = "car_driver", joinColumns = @JoinColumn(name = "carId"),
+            inverseJoinColumns = @JoinColumn(name = "driverId"))
+    @Access(AccessType.PROPERTY)
+    private Set<Driver> drivers;
+
+    @OneToMany(cascade = CascadeType.ALL, orphanRemoval = true)
+    @JoinColumn(name = "carId")
+    @Access(AccessType.PROPERTY)
+    private Set<Mirror> mirrors;
+
+    @OneToMany
+    @JoinTable(name = "car_previous_engine", joinColumns = @JoinColumn(name = "carId"),
+            inverseJoinColumns = @JoinColumn(name = "engineId"))
+    @Access(AccessType.PROPERTY)
+    private Set<Engine> previousEngines;
+
+    @ElementCollection
+    @CollectionTable(name = "car_tag", joinColumns = @JoinColumn(name = "carId"))
+    @Column(name = "tag")
+    @Access(AccessType.PROPERTY)
+    private Set<String> tags;
+
+    @ElementCollection
+    @CollectionTable(name = "car_service_visit", joinColumns = @JoinColumn(name = "carId"))
+    @Access(AccessType.PROPERTY)
+    private List<ServiceVisit> serviceHistory;
+
 }